@@ -0,0 +1,125 @@
+package com.bpd.student.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.bpd.student.ClassStanding;
+import com.bpd.student.Student;
+import com.bpd.student.StudentCodec;
+
+/**
+ * Compares writing and reading a batch of students through Java serialization with doing the same
+ * through {@link StudentCodec}. The scores are per batch; the GC profiler reports the allocation
+ * rate of each.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StudentCodecBenchmark {
+
+  /** The number of students in a batch. */
+  @Param({ "1000", "100000" })
+  public int count;
+
+  private Student[] students;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private byte[] serialized;
+  private byte[] encoded;
+  private final StudentCodec codec = new StudentCodec(StudentCodec.V2);
+
+  /**
+   * Creates the students and writes them in both formats for the read benchmarks.
+   * 
+   * @throws IOException If the students could not be written.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    ClassStanding[] standings = ClassStanding.values();
+    students = new Student[count];
+    for (int i = 0; i < count; i++) {
+      students[i] = new Student("Student " + i, standings[i % standings.length]);
+    }
+    serialized = serialize();
+    encoded = encode();
+  }
+
+  /**
+   * @return The students written through Java serialization.
+   * @throws IOException If the students could not be written.
+   */
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    out.reset();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      for (Student student : students) {
+        oos.writeObject(student);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @return The students written through the codec.
+   * @throws IOException If the students could not be written.
+   */
+  @Benchmark
+  public byte[] encode() throws IOException {
+    out.reset();
+    codec.writeHeader(out);
+    for (Student student : students) {
+      codec.write(student, out);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Reads the students through Java serialization.
+   * 
+   * @param blackhole Consumes the students.
+   * @throws Exception If the students could not be read.
+   */
+  @Benchmark
+  public void deserialize(Blackhole blackhole) throws Exception {
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+      for (int i = 0; i < count; i++) {
+        blackhole.consume(ois.readObject());
+      }
+    }
+  }
+
+  /**
+   * Reads the students through the codec.
+   * 
+   * @param blackhole Consumes the students.
+   * @throws IOException If the students could not be read.
+   */
+  @Benchmark
+  public void decode(Blackhole blackhole) throws IOException {
+    ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+    StudentCodec reader = StudentCodec.readHeader(in);
+    for (Student student = reader.read(in); student != null; student = reader.read(in)) {
+      blackhole.consume(student);
+    }
+  }
+
+}
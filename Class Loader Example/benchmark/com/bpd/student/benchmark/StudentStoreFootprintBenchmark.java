@@ -0,0 +1,87 @@
+package com.bpd.student.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bpd.student.ClassStanding;
+import com.bpd.student.Student;
+import com.bpd.student.StudentStore;
+
+/**
+ * Compares the heap taken up by students held in a {@link List} of {@link Student} objects with
+ * the heap taken up by the same students held in a {@link StudentStore}. Both collections are
+ * created with room for every student up front, so that nothing but the collection itself is
+ * allocated while it is filled; the <code>gc.alloc.rate.norm</code> of the GC profiler, in bytes
+ * per operation, is therefore the size of the collection.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StudentStoreFootprintBenchmark {
+
+  /** The number of students. */
+  @Param({ "1000", "100000" })
+  public int count;
+
+  /** The characters of the name of each student, copied into a new string for each list. */
+  private char[][] names;
+  private ClassStanding[] standings;
+  private Student[] students;
+  private int nameLength;
+
+  /** Creates the names and class standings of the students. */
+  @Setup
+  public void setUp() {
+    ClassStanding[] values = ClassStanding.values();
+    names = new char[count][];
+    standings = new ClassStanding[count];
+    students = new Student[count];
+    nameLength = 0;
+    for (int i = 0; i < count; i++) {
+      names[i] = ("Student " + i).toCharArray();
+      standings[i] = values[i % values.length];
+      students[i] = new Student(new String(names[i]), standings[i]);
+      nameLength += names[i].length;
+    }
+  }
+
+  /** @return A list of new students, each with its own name. */
+  @Benchmark
+  public List<Student> list() {
+    List<Student> list = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      list.add(new Student(new String(names[i]), standings[i]));
+    }
+    return list;
+  }
+
+  /**
+   * @return A store that holds the students. Their names are ASCII, so adding them allocates
+   * nothing.
+   */
+  @Benchmark
+  public StudentStore store() {
+    StudentStore store = new StudentStore(count, nameLength);
+    for (Student student : students) {
+      store.add(student);
+    }
+    return store;
+  }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * A package that contains JMH benchmarks for reading and writing students.
+ */
+package com.bpd.student.benchmark;
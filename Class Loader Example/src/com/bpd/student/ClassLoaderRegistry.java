@@ -0,0 +1,451 @@
+package com.bpd.student;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Maps serialization versions to class loaders that load that version of {@link Student}. Each
+ * version is registered with the URL of a JAR file or directory that holds its classes; the class
+ * loader for a version searches that URL first and then a list of URLs shared by every version,
+ * without delegating to the application class loader. A class loader is created the first time
+ * that it is asked for and is reused until it is released, so the classes of a version are loaded
+ * once no matter how many archives are read with them.
+ * <p>
+ * Unlike {@link java.net.URLClassLoader}, which opens its own handle to every JAR file on its path,
+ * the class loaders of a registry read classes through one handle per JAR file that they all share.
+ * The handles are opened when they are first needed and are closed when the registry is closed.
+ * Only <code>file:</code> URLs are supported.
+ * <p>
+ * The class loaders are parallel capable, so different classes can be loaded by different threads
+ * at the same time. A registry is thread safe.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class ClassLoaderRegistry implements Closeable {
+
+  private final List<ClassPathEntry> sharedEntries = new ArrayList<>();
+  private final ConcurrentMap<Integer, ClassPathEntry> versionEntries = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Integer, VersionClassLoader> loaders = new ConcurrentHashMap<>();
+  private final AtomicLong createdCount = new AtomicLong();
+  private final AtomicLong releasedCount = new AtomicLong();
+  private volatile boolean isClosed;
+
+  /**
+   * Creates a new ClassLoaderRegistry.
+   * 
+   * @param sharedUrls The URLs searched by the class loader of every version after the URL of the
+   * version itself.
+   */
+  public ClassLoaderRegistry(List<URL> sharedUrls) {
+    Validator.checkNull(sharedUrls);
+    for (URL url : sharedUrls) {
+      sharedEntries.add(new ClassPathEntry(url));
+    }
+  }
+
+  /**
+   * Registers the JAR file or directory that holds the classes of the given version.
+   * 
+   * @param version The serialization version.
+   * @param url The URL of the JAR file or directory.
+   * @throws IllegalStateException If the version is already registered with a different URL.
+   */
+  public void register(int version, URL url) {
+    ClassPathEntry entry = new ClassPathEntry(url);
+    ClassPathEntry existing = versionEntries.putIfAbsent(version, entry);
+    if (existing != null && !existing.url.toString().equals(url.toString())) {
+      throw new IllegalStateException("Version " + version + " is already registered with "
+          + existing.url);
+    }
+  }
+
+  /**
+   * Returns the class loader for the given version, creating it if there is none.
+   * 
+   * @param version The serialization version.
+   * @return The class loader.
+   * @throws IllegalArgumentException If the version is not registered.
+   * @throws IllegalStateException If this registry is closed.
+   */
+  public ClassLoader getClassLoader(int version) {
+    checkOpen();
+    VersionClassLoader loader = loaders.get(version);
+    if (loader != null) {
+      return loader;
+    }
+    // Creating a class loader is cheap since it opens no files, so a thread that loses the race
+    // simply drops its own.
+    loader = createClassLoader(version);
+    VersionClassLoader existing = loaders.putIfAbsent(version, loader);
+    if (existing != null) {
+      return existing;
+    }
+    createdCount.incrementAndGet();
+    return loader;
+  }
+
+  /**
+   * Creates a class loader for the given version that is not cached, so that the classes it loads
+   * are not shared with anyone else. It still reads classes through the JAR file handles of this
+   * registry.
+   * 
+   * @param version The serialization version.
+   * @return The class loader.
+   * @throws IllegalArgumentException If the version is not registered.
+   * @throws IllegalStateException If this registry is closed.
+   */
+  public ClassLoader newClassLoader(int version) {
+    checkOpen();
+    return createClassLoader(version);
+  }
+
+  /**
+   * Creates a class loader for the given version.
+   * 
+   * @param version The serialization version.
+   * @return The class loader.
+   * @throws IllegalArgumentException If the version is not registered.
+   */
+  private VersionClassLoader createClassLoader(int version) {
+    ClassPathEntry versionEntry = versionEntries.get(version);
+    if (versionEntry == null) {
+      throw new IllegalArgumentException("Version " + version + " is not registered");
+    }
+    List<ClassPathEntry> entries = new ArrayList<>(sharedEntries.size() + 1);
+    entries.add(versionEntry);
+    entries.addAll(sharedEntries);
+    return new VersionClassLoader(version, entries);
+  }
+
+  /**
+   * Releases the class loader for the given version, if there is one. Its classes can be garbage
+   * collected once nothing else refers to them; the next request for the version creates a new
+   * class loader. The JAR files stay open until this registry is closed.
+   * 
+   * @param version The serialization version.
+   * @return True if a class loader was released, false otherwise.
+   */
+  public boolean release(int version) {
+    if (loaders.remove(version) == null) {
+      return false;
+    }
+    releasedCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Returns the statistics of the class loader for the given version.
+   * 
+   * @param version The serialization version.
+   * @return The statistics, or null if there is no class loader for the version.
+   */
+  public ClassLoaderStatistics getStatistics(int version) {
+    VersionClassLoader loader = loaders.get(version);
+    return loader == null ? null : loader.getStatistics();
+  }
+
+  /** @return The number of cached class loaders created. */
+  public long getCreatedCount() {
+    return createdCount.get();
+  }
+
+  /** @return The number of cached class loaders released. */
+  public long getReleasedCount() {
+    return releasedCount.get();
+  }
+
+  /**
+   * Releases every class loader and closes the JAR files. No class loaders can be created
+   * afterwards, and the released ones can no longer load classes.
+   * 
+   * @throws IOException If there are problems closing a JAR file.
+   */
+  @Override
+  public void close() throws IOException {
+    isClosed = true;
+    releasedCount.addAndGet(loaders.size());
+    loaders.clear();
+    IOException exception = null;
+    List<ClassPathEntry> entries = new ArrayList<>(sharedEntries);
+    entries.addAll(versionEntries.values());
+    for (ClassPathEntry entry : entries) {
+      try {
+        entry.close();
+      }
+      catch (IOException e) {
+        exception = e;
+      }
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Throws an exception if this registry is closed.
+   * 
+   * @throws IllegalStateException If this registry is closed.
+   */
+  private void checkOpen() {
+    if (isClosed) {
+      throw new IllegalStateException("Registry is closed");
+    }
+  }
+
+  /**
+   * A JAR file or directory on the path of a class loader. The handle to a JAR file is opened the
+   * first time that a class or resource is read from it.
+   */
+  private final class ClassPathEntry {
+
+    private final URL url;
+    private final File file;
+    private final CodeSource codeSource;
+    /** The JAR file, or null if it has not been opened yet or the entry is a directory. */
+    private JarFile jar;
+
+    /**
+     * Creates a new ClassPathEntry.
+     * 
+     * @param url The URL of the JAR file or directory.
+     * @throws IllegalArgumentException If the URL is not a <code>file:</code> URL.
+     */
+    ClassPathEntry(URL url) {
+      Validator.checkNull(url);
+      if (!"file".equals(url.getProtocol())) {
+        throw new IllegalArgumentException("Not a file URL: " + url);
+      }
+      try {
+        this.file = new File(url.toURI());
+      }
+      catch (URISyntaxException e) {
+        throw new IllegalArgumentException("Invalid URL: " + url, e);
+      }
+      this.url = url;
+      this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+    }
+
+    /**
+     * Returns the JAR file, opening it if necessary.
+     * 
+     * @return The JAR file, or null if this entry is a directory.
+     * @throws IOException If the JAR file could not be opened.
+     */
+    private synchronized JarFile getJarFile() throws IOException {
+      if (jar == null && !file.isDirectory()) {
+        if (isClosed) {
+          throw new IOException("Registry is closed");
+        }
+        jar = new JarFile(file);
+      }
+      return jar;
+    }
+
+    /**
+     * Reads the given resource.
+     * 
+     * @param name The name of the resource.
+     * @return The contents of the resource, or null if this entry does not have it.
+     * @throws IOException If the resource could not be read.
+     */
+    byte[] read(String name) throws IOException {
+      JarFile jarFile = getJarFile();
+      if (jarFile == null) {
+        File resource = new File(file, name);
+        return resource.isFile() ? Files.readAllBytes(resource.toPath()) : null;
+      }
+      JarEntry entry = jarFile.getJarEntry(name);
+      if (entry == null) {
+        return null;
+      }
+      try (InputStream in = jarFile.getInputStream(entry)) {
+        long size = entry.getSize();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size < 0 ? 4096 : (int) size);
+        byte[] buffer = new byte[4096];
+        int count = in.read(buffer);
+        while (count >= 0) {
+          out.write(buffer, 0, count);
+          count = in.read(buffer);
+        }
+        return out.toByteArray();
+      }
+    }
+
+    /**
+     * Returns the URL of the given resource.
+     * 
+     * @param name The name of the resource.
+     * @return The URL, or null if this entry does not have the resource.
+     * @throws IOException If the JAR file could not be opened.
+     */
+    URL find(String name) throws IOException {
+      JarFile jarFile = getJarFile();
+      if (jarFile == null) {
+        File resource = new File(file, name);
+        return resource.exists() ? resource.toURI().toURL() : null;
+      }
+      if (jarFile.getJarEntry(name) == null) {
+        return null;
+      }
+      try {
+        return new URL("jar:" + url + "!/" + name);
+      }
+      catch (MalformedURLException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Closes the JAR file if it is open.
+     * 
+     * @throws IOException If the JAR file could not be closed.
+     */
+    synchronized void close() throws IOException {
+      if (jar != null) {
+        jar.close();
+        jar = null;
+      }
+    }
+
+  }
+
+  /**
+   * Loads the classes of one version of {@link Student} and the classes that use them from a list
+   * of {@link ClassPathEntry}, without delegating to the application class loader.
+   */
+  private static final class VersionClassLoader extends SecureClassLoader {
+
+    static {
+      registerAsParallelCapable();
+    }
+
+    private final int version;
+    private final List<ClassPathEntry> entries;
+    private final AtomicLong classCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * Creates a new VersionClassLoader.
+     * 
+     * @param version The serialization version.
+     * @param entries The JAR files and directories to search, in order.
+     */
+    VersionClassLoader(int version, List<ClassPathEntry> entries) {
+      super(null);
+      this.version = version;
+      this.entries = entries;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      long start = System.nanoTime();
+      String resourceName = name.replace('.', '/') + ".class";
+      try {
+        for (ClassPathEntry entry : entries) {
+          byte[] bytes = entry.read(resourceName);
+          if (bytes != null) {
+            definePackageOf(name);
+            Class<?> clazz = defineClass(name, bytes, 0, bytes.length, entry.codeSource);
+            classCount.incrementAndGet();
+            byteCount.addAndGet(bytes.length);
+            return clazz;
+          }
+        }
+      }
+      catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+      finally {
+        loadNanos.addAndGet(System.nanoTime() - start);
+      }
+      throw new ClassNotFoundException(name);
+    }
+
+    /**
+     * Defines the package of the given class if it has not been defined yet.
+     * 
+     * @param className The name of the class.
+     */
+    private void definePackageOf(String className) {
+      int dot = className.lastIndexOf('.');
+      if (dot < 0) {
+        return;
+      }
+      String packageName = className.substring(0, dot);
+      if (getPackage(packageName) == null) {
+        try {
+          definePackage(packageName, null, null, null, null, null, null, null);
+        }
+        catch (IllegalArgumentException e) {
+          // Another thread defined the package first.
+          return;
+        }
+      }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected URL findResource(String name) {
+      for (ClassPathEntry entry : entries) {
+        try {
+          URL url = entry.find(name);
+          if (url != null) {
+            return url;
+          }
+        }
+        catch (IOException e) {
+          continue;
+        }
+      }
+      return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Enumeration<URL> findResources(String name) throws IOException {
+      List<URL> urls = new ArrayList<>();
+      for (ClassPathEntry entry : entries) {
+        URL url = entry.find(name);
+        if (url != null) {
+          urls.add(url);
+        }
+      }
+      return Collections.enumeration(urls);
+    }
+
+    /** @return The statistics of this class loader. */
+    ClassLoaderStatistics getStatistics() {
+      return new ClassLoaderStatistics(version, classCount.get(), byteCount.get(), loadNanos.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return "VersionClassLoader=[version=" + version + "]";
+    }
+
+  }
+
+}
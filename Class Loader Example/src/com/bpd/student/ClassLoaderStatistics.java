@@ -0,0 +1,57 @@
+package com.bpd.student;
+
+/**
+ * A snapshot of how much work a class loader in a {@link ClassLoaderRegistry} has done.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class ClassLoaderStatistics {
+
+  private final int version;
+  private final long classCount;
+  private final long byteCount;
+  private final long loadNanos;
+
+  /**
+   * Creates a new ClassLoaderStatistics.
+   * 
+   * @param version The serialization version of the classes that the class loader loads.
+   * @param classCount The number of classes that the class loader defined.
+   * @param byteCount The number of bytes of class files that the class loader read.
+   * @param loadNanos The time that the class loader spent finding, reading, and defining classes.
+   */
+  public ClassLoaderStatistics(int version, long classCount, long byteCount, long loadNanos) {
+    this.version = version;
+    this.classCount = classCount;
+    this.byteCount = byteCount;
+    this.loadNanos = loadNanos;
+  }
+
+  /** @return The serialization version of the classes that the class loader loads. */
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return The number of classes that the class loader defined. */
+  public long getClassCount() {
+    return classCount;
+  }
+
+  /** @return The number of bytes of class files that the class loader read. */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  /** @return The time in nanoseconds that the class loader spent loading classes. */
+  public long getLoadNanos() {
+    return loadNanos;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "ClassLoaderStatistics=[version=" + version + ", classCount=" + classCount
+        + ", byteCount=" + byteCount + ", loadMicros=" + loadNanos / 1000 + "]";
+  }
+
+}
@@ -0,0 +1,250 @@
+package com.bpd.student;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Indexes students by class standing, so that the number of students with a class standing is
+ * known without a scan, and the students with one class standing can be iterated over without
+ * looking at any others. The index is kept up to date as students are added and removed, including
+ * while they are being read from an archive through {@link #indexing(Iterator)}.
+ * <p>
+ * Each class standing, and the null class standing, has its own bucket in an {@link EnumMap} that
+ * is filled in when the index is created and never changes afterwards. A bucket is a concurrent set
+ * and a counter, so threads that update different class standings never contend with each other,
+ * and threads that update the same class standing only contend for the striped locks of its set.
+ * Students are compared by {@link Object#equals(Object)}, which is identity for {@link Student}, so
+ * the same student is counted once no matter how many times it is added.
+ * <p>
+ * A student must not change its class standing while it is in the index, or it could not be found
+ * in its bucket again. For that reason, {@link StudentStore.View} objects are rejected: a view is
+ * moved from one student to another, and a store hands out a new view for the same student every
+ * time, so it would be counted again. Copy views into new {@link Student} objects to index them.
+ * <p>
+ * Counts and iterations are weakly consistent while students are being added or removed: each one
+ * reflects every update that finished before it started and may or may not reflect the others.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ * @param <T> The type of students in this index.
+ */
+public final class ClassStandingIndex<T extends Student> {
+
+  private final Map<ClassStanding, Bucket<T>> buckets = new EnumMap<>(ClassStanding.class);
+  /** The bucket for students whose class standing is null. */
+  private final Bucket<T> nullBucket = new Bucket<>();
+
+  /** Creates a new ClassStandingIndex. */
+  public ClassStandingIndex() {
+    for (ClassStanding standing : ClassStanding.values()) {
+      buckets.put(standing, new Bucket<T>());
+    }
+  }
+
+  /**
+   * Returns the bucket for the given class standing.
+   * 
+   * @param standing The class standing, which may be null.
+   * @return The bucket.
+   */
+  private Bucket<T> getBucket(ClassStanding standing) {
+    return standing == null ? nullBucket : buckets.get(standing);
+  }
+
+  /**
+   * Adds the given student to the index.
+   * 
+   * @param student The student.
+   * @return True if the student was added, false if it was already in the index.
+   * @throws IllegalArgumentException If the student is a {@link StudentStore.View}.
+   */
+  public boolean add(T student) {
+    checkStudent(student);
+    return getBucket(student.getClassStanding()).add(student);
+  }
+
+  /**
+   * Adds every student from the given iterator to the index.
+   * 
+   * @param students The students.
+   * @return The number of students that were added.
+   */
+  public int addAll(Iterator<? extends T> students) {
+    Validator.checkNull(students);
+    int count = 0;
+    while (students.hasNext()) {
+      if (add(students.next())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Removes the given student from the index.
+   * 
+   * @param student The student.
+   * @return True if the student was removed, false if it was not in the index.
+   * @throws IllegalArgumentException If the student is a {@link StudentStore.View}.
+   */
+  public boolean remove(T student) {
+    checkStudent(student);
+    return getBucket(student.getClassStanding()).remove(student);
+  }
+
+  /**
+   * Throws an exception if the given student cannot be indexed.
+   * 
+   * @param student The student.
+   * @throws IllegalArgumentException If the student is a {@link StudentStore.View}.
+   */
+  private static void checkStudent(Student student) {
+    Validator.checkNull(student);
+    if (student instanceof StudentStore.View) {
+      throw new IllegalArgumentException("Views cannot be indexed: " + student);
+    }
+  }
+
+  /**
+   * Returns an iterator that adds each student from the given iterator to this index as it is
+   * returned, so that an archive is indexed while it is being read. For example:
+   * 
+   * <pre>
+   * Iterator&lt;Student&gt; students = index.indexing(new StudentReader(in));
+   * </pre>
+   * 
+   * @param students The students.
+   * @return The iterator.
+   */
+  public Iterator<T> indexing(final Iterator<T> students) {
+    Validator.checkNull(students);
+    return new Iterator<T>() {
+
+      @Override
+      public boolean hasNext() {
+        return students.hasNext();
+      }
+
+      @Override
+      public T next() {
+        T student = students.next();
+        add(student);
+        return student;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+    };
+  }
+
+  /**
+   * Returns the number of students with the given class standing.
+   * 
+   * @param standing The class standing, which may be null.
+   * @return The number of students.
+   */
+  public int count(ClassStanding standing) {
+    return getBucket(standing).count.get();
+  }
+
+  /**
+   * Returns the number of students with each class standing, including those with no students.
+   * Students whose class standing is null are not included.
+   * 
+   * @return The number of students with each class standing.
+   */
+  public Map<ClassStanding, Integer> counts() {
+    Map<ClassStanding, Integer> counts = new EnumMap<>(ClassStanding.class);
+    for (Map.Entry<ClassStanding, Bucket<T>> entry : buckets.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().count.get());
+    }
+    return counts;
+  }
+
+  /** @return The number of students in this index. */
+  public int size() {
+    int size = nullBucket.count.get();
+    for (Bucket<T> bucket : buckets.values()) {
+      size += bucket.count.get();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the students with the given class standing, in no particular order. The set cannot be
+   * modified, but it changes as students are added to and removed from the index.
+   * 
+   * @param standing The class standing, which may be null.
+   * @return The students.
+   */
+  public Set<T> get(ClassStanding standing) {
+    return Collections.unmodifiableSet(getBucket(standing).students);
+  }
+
+  /** Removes every student from the index. */
+  public void clear() {
+    nullBucket.clear();
+    for (Bucket<T> bucket : buckets.values()) {
+      bucket.clear();
+    }
+  }
+
+  /**
+   * The students with one class standing, and how many there are.
+   * 
+   * @param <T> The type of students.
+   */
+  private static final class Bucket<T> {
+
+    private final Set<T> students = Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    /** Kept apart from the set since the size of a concurrent set is not constant time. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Adds the given student.
+     * 
+     * @param student The student.
+     * @return True if the student was added, false if it was already in this bucket.
+     */
+    boolean add(T student) {
+      if (!students.add(student)) {
+        return false;
+      }
+      count.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Removes the given student.
+     * 
+     * @param student The student.
+     * @return True if the student was removed, false if it was not in this bucket.
+     */
+    boolean remove(T student) {
+      if (!students.remove(student)) {
+        return false;
+      }
+      count.decrementAndGet();
+      return true;
+    }
+
+    /** Removes every student. */
+    void clear() {
+      // Only the students that this thread removes are counted, in case others are removing them
+      // too.
+      for (T student : students) {
+        remove(student);
+      }
+    }
+
+  }
+
+}
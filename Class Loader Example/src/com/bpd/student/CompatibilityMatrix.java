@@ -0,0 +1,151 @@
+package com.bpd.student;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.collections15.Factory;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Checks that every version of {@link Student} can read every archive of students. Each cell of the
+ * matrix, that is, each pair of a version and an archive, is run as a separate task on a thread
+ * pool in its own class loader from a {@link ClassLoaderRegistry}, so that cells neither wait for
+ * nor share classes with each other. The archive is read with the {@link StudentReader} of that
+ * class loader, and the number of students, the time taken, and the longest time taken by one
+ * student are reported for each cell.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class CompatibilityMatrix {
+
+  private final ClassLoaderRegistry registry;
+  private final SortedSet<Integer> versions = new TreeSet<>();
+  private final Map<String, Factory<InputStream>> archives = new LinkedHashMap<>();
+
+  /**
+   * Creates a new CompatibilityMatrix.
+   * 
+   * @param registry The registry in which the versions are registered.
+   */
+  public CompatibilityMatrix(ClassLoaderRegistry registry) {
+    Validator.checkNull(registry);
+    this.registry = registry;
+  }
+
+  /**
+   * Adds a row for the given version.
+   * 
+   * @param version The serialization version, which must be registered in the registry.
+   */
+  public void addVersion(int version) {
+    versions.add(version);
+  }
+
+  /**
+   * Adds a column for the given archive.
+   * 
+   * @param name The name of the archive.
+   * @param source The factory that opens a new stream over the archive for each cell.
+   */
+  public void addArchive(String name, Factory<InputStream> source) {
+    Validator.checkNull(name);
+    Validator.checkNull(source);
+    archives.put(name, source);
+  }
+
+  /**
+   * Runs every cell of the matrix and waits for them to finish.
+   * 
+   * @param threads The number of cells to run at the same time.
+   * @return The result of each cell, by version and then by archive in the order that they were
+   * added.
+   * @throws InterruptedException If the current thread was interrupted while waiting.
+   */
+  public List<CompatibilityResult> run(int threads) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<CompatibilityResult>> futures = new ArrayList<>();
+      for (final int version : versions) {
+        for (final Map.Entry<String, Factory<InputStream>> archive : archives.entrySet()) {
+          futures.add(executor.submit(new Callable<CompatibilityResult>() {
+
+            @Override
+            public CompatibilityResult call() {
+              return runCell(version, archive.getKey(), archive.getValue());
+            }
+
+          }));
+        }
+      }
+      List<CompatibilityResult> results = new ArrayList<>(futures.size());
+      for (Future<CompatibilityResult> future : futures) {
+        try {
+          results.add(future.get());
+        }
+        catch (ExecutionException e) {
+          // runCell reports failures in its result.
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+      return results;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads the given archive with the given version of {@link Student} in a new class loader.
+   * 
+   * @param version The serialization version.
+   * @param archiveName The name of the archive.
+   * @param source The factory that opens a stream over the archive.
+   * @return The result.
+   */
+  private CompatibilityResult runCell(int version, String archiveName,
+      Factory<InputStream> source) {
+    long start = System.nanoTime();
+    long count = 0;
+    long maxRecordNanos = 0;
+    Throwable failure = null;
+    try {
+      ClassLoader loader = registry.newClassLoader(version);
+      Constructor<?> constructor =
+          loader.loadClass(StudentReader.class.getName()).getConstructor(InputStream.class);
+      try (InputStream in = source.create();
+          Closeable reader = (Closeable) constructor.newInstance(in)) {
+        Iterator<?> students = (Iterator<?>) reader;
+        long last = System.nanoTime();
+        while (students.hasNext()) {
+          students.next();
+          long now = System.nanoTime();
+          maxRecordNanos = Math.max(maxRecordNanos, now - last);
+          last = now;
+          count++;
+        }
+      }
+    }
+    catch (InvocationTargetException e) {
+      failure = e.getCause();
+    }
+    catch (Exception | LinkageError e) {
+      failure = e;
+    }
+    return new CompatibilityResult(version, archiveName, count, System.nanoTime() - start,
+        maxRecordNanos, failure);
+  }
+
+}
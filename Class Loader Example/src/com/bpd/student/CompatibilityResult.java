@@ -0,0 +1,91 @@
+package com.bpd.student;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of reading one archive of students with one version of {@link Student} in a
+ * {@link CompatibilityMatrix}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class CompatibilityResult {
+
+  private final int version;
+  private final String archiveName;
+  private final long recordCount;
+  private final long elapsedNanos;
+  private final long maxRecordNanos;
+  private final Throwable failure;
+
+  /**
+   * Creates a new CompatibilityResult.
+   * 
+   * @param version The serialization version of the classes that read the archive.
+   * @param archiveName The name of the archive.
+   * @param recordCount The number of students read before the archive ended or reading failed.
+   * @param elapsedNanos The time that it took to load the classes and read the archive.
+   * @param maxRecordNanos The longest time that it took to read one student.
+   * @param failure Why the archive could not be read, or null if it was read to the end.
+   */
+  public CompatibilityResult(int version, String archiveName, long recordCount, long elapsedNanos,
+      long maxRecordNanos, Throwable failure) {
+    this.version = version;
+    this.archiveName = archiveName;
+    this.recordCount = recordCount;
+    this.elapsedNanos = elapsedNanos;
+    this.maxRecordNanos = maxRecordNanos;
+    this.failure = failure;
+  }
+
+  /** @return The serialization version of the classes that read the archive. */
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return The name of the archive. */
+  public String getArchiveName() {
+    return archiveName;
+  }
+
+  /** @return The number of students read before the archive ended or reading failed. */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /** @return The time in nanoseconds that it took to load the classes and read the archive. */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /** @return The longest time in nanoseconds that it took to read one student. */
+  public long getMaxRecordNanos() {
+    return maxRecordNanos;
+  }
+
+  /** @return The number of students read per second. */
+  public double getRecordsPerSecond() {
+    if (elapsedNanos == 0) {
+      return 0;
+    }
+    return recordCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /** @return Why the archive could not be read, or null if it was read to the end. */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /** @return True if the archive was read to the end, false otherwise. */
+  public boolean isCompatible() {
+    return failure == null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("Version %d reading %s: %s, %d records in %.3f ms (%.0f records/s, "
+        + "max %.3f ms per record)", version, archiveName, failure == null ? "OK" : "FAILED "
+        + failure, recordCount, elapsedNanos / 1e6, getRecordsPerSecond(), maxRecordNanos / 1e6);
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.bpd.student;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of how far a {@link StudentMigration} has got.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class MigrationProgress {
+
+  private final long recordCount;
+  private final long elapsedNanos;
+  private final boolean isDone;
+
+  /**
+   * Creates a new MigrationProgress.
+   * 
+   * @param recordCount The number of students written so far.
+   * @param elapsedNanos The time since the migration started.
+   * @param isDone True if every student has been written, false otherwise.
+   */
+  public MigrationProgress(long recordCount, long elapsedNanos, boolean isDone) {
+    this.recordCount = recordCount;
+    this.elapsedNanos = elapsedNanos;
+    this.isDone = isDone;
+  }
+
+  /** @return The number of students written so far. */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /** @return The time in nanoseconds since the migration started. */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /** @return True if every student has been written, false otherwise. */
+  public boolean isDone() {
+    return isDone;
+  }
+
+  /** @return The number of students written per second. */
+  public double getRecordsPerSecond() {
+    if (elapsedNanos == 0) {
+      return 0;
+    }
+    return recordCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("MigrationProgress=[recordCount=%d, elapsedMillis=%d, "
+        + "recordsPerSecond=%.0f, isDone=%b]", recordCount,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getRecordsPerSecond(), isDone);
+  }
+
+}
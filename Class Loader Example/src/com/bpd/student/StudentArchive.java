@@ -0,0 +1,370 @@
+package com.bpd.student;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Reads an archive of students written by a {@link StudentArchiveWriter}. Unlike a stream, which
+ * can only be read from the start, an archive is split into blocks that can be read on their own:
+ * <ul>
+ * <li>A header of {@value #HEADER_LENGTH} bytes: {@link #MAGIC}, the layout of the records as a
+ * {@link StudentCodec} version, the size of a block, and four reserved bytes.</li>
+ * <li>The blocks, each exactly as long as the block size. A block holds whole records in the layout
+ * of {@link StudentCodec}, without a header, followed by zeros.</li>
+ * <li>The index, with one entry of {@value #INDEX_ENTRY_LENGTH} bytes per block: the number of the
+ * first record in the block, the number of records in it, and the number of bytes that they take
+ * up.</li>
+ * <li>A trailer of {@value #TRAILER_LENGTH} bytes: where the index starts, the number of blocks,
+ * the number of records, and {@link #TRAILER_MAGIC}.</li>
+ * </ul>
+ * The file is mapped into memory, so blocks are decoded straight from the page cache without being
+ * read into buffers first. Since each block is decoded through its own view of the mapping, any
+ * number of threads can decode blocks at the same time, which
+ * {@link #forEachBlock(int, BlockHandler)} does on a thread pool. The index also makes it possible
+ * to read any one record without decoding the others.
+ * <p>
+ * Archives of Java serialized students, from any version of {@link Student}, are converted with
+ * {@link StudentArchiveWriter#importArchive(java.io.InputStream, java.io.OutputStream, int)}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentArchive implements Closeable {
+
+  /** The first four bytes of an archive, "STBA" in ASCII. */
+  public static final int MAGIC = 0x53544241;
+
+  /** The last four bytes of an archive, "STBE" in ASCII. */
+  public static final int TRAILER_MAGIC = 0x53544245;
+
+  /** The number of bytes in the header of an archive. */
+  public static final int HEADER_LENGTH = 16;
+
+  /** The number of bytes in each entry of the index of an archive. */
+  public static final int INDEX_ENTRY_LENGTH = 16;
+
+  /** The number of bytes in the trailer of an archive. */
+  public static final int TRAILER_LENGTH = 24;
+
+  /** Handles the students in one block of an archive. */
+  public interface BlockHandler {
+
+    /**
+     * Handles the students in the given block. This method may be called by several threads at
+     * the same time, for different blocks, in any order.
+     * 
+     * @param block The number of the block.
+     * @param students The students in the block, in order.
+     * @throws IOException If the students could not be handled.
+     */
+    void handle(int block, List<Student> students) throws IOException;
+
+  }
+
+  private final FileChannel channel;
+  private final int version;
+  private final int blockSize;
+  private final int blockCount;
+  private final long recordCount;
+  /** The number of the first record in each block. */
+  private final long[] firstRecords;
+  /** The number of records in each block. */
+  private final int[] recordCounts;
+  /** The number of bytes that the records in each block take up. */
+  private final int[] usedLengths;
+  /** Mappings of consecutive blocks, since one mapping cannot be larger than 2 GB. */
+  private final MappedByteBuffer[] regions;
+  private final int blocksPerRegion;
+
+  /**
+   * Creates a new StudentArchive.
+   * 
+   * @param channel The channel of the archive file.
+   * @throws IOException If the archive could not be read, or if it is not valid.
+   */
+  private StudentArchive(FileChannel channel) throws IOException {
+    this.channel = channel;
+    long size = channel.size();
+    if (size < HEADER_LENGTH + TRAILER_LENGTH) {
+      throw new StreamCorruptedException("Not an archive of students");
+    }
+    ByteBuffer header = read(0, HEADER_LENGTH);
+    if (header.getInt() != MAGIC) {
+      throw new StreamCorruptedException("Not an archive of students");
+    }
+    version = header.getInt();
+    blockSize = header.getInt();
+    if (version != StudentCodec.V1 && version != StudentCodec.V2) {
+      throw new StreamCorruptedException("Unsupported version: " + version);
+    }
+    if (blockSize < StudentArchiveWriter.MIN_BLOCK_SIZE) {
+      throw new StreamCorruptedException("Invalid block size: " + blockSize);
+    }
+
+    ByteBuffer trailer = read(size - TRAILER_LENGTH, TRAILER_LENGTH);
+    long indexOffset = trailer.getLong();
+    blockCount = trailer.getInt();
+    recordCount = trailer.getLong();
+    if (trailer.getInt() != TRAILER_MAGIC || blockCount < 0
+        || indexOffset != HEADER_LENGTH + (long) blockCount * blockSize
+        || indexOffset + (long) blockCount * INDEX_ENTRY_LENGTH + TRAILER_LENGTH != size) {
+      throw new StreamCorruptedException("Invalid trailer");
+    }
+
+    firstRecords = new long[blockCount];
+    recordCounts = new int[blockCount];
+    usedLengths = new int[blockCount];
+    ByteBuffer index = read(indexOffset, blockCount * INDEX_ENTRY_LENGTH);
+    long nextRecord = 0;
+    for (int i = 0; i < blockCount; i++) {
+      firstRecords[i] = index.getLong();
+      recordCounts[i] = index.getInt();
+      usedLengths[i] = index.getInt();
+      if (firstRecords[i] != nextRecord || recordCounts[i] <= 0 || usedLengths[i] <= 0
+          || usedLengths[i] > blockSize) {
+        throw new StreamCorruptedException("Invalid index entry for block " + i);
+      }
+      nextRecord += recordCounts[i];
+    }
+    if (nextRecord != recordCount) {
+      throw new StreamCorruptedException("Index has " + nextRecord + " records, not "
+          + recordCount);
+    }
+
+    blocksPerRegion = Math.max(1, Integer.MAX_VALUE / blockSize);
+    regions = new MappedByteBuffer[(blockCount + blocksPerRegion - 1) / blocksPerRegion];
+    for (int i = 0; i < regions.length; i++) {
+      int blocks = Math.min(blocksPerRegion, blockCount - i * blocksPerRegion);
+      long offset = HEADER_LENGTH + (long) i * blocksPerRegion * blockSize;
+      regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) blocks * blockSize);
+    }
+  }
+
+  /**
+   * Opens the given archive.
+   * 
+   * @param file The archive file.
+   * @return The archive.
+   * @throws IOException If the archive could not be read, or if it is not valid.
+   */
+  public static StudentArchive open(Path file) throws IOException {
+    Validator.checkNull(file);
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return new StudentArchive(channel);
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the given part of the archive file.
+   * 
+   * @param position The position of the first byte to read.
+   * @param length The number of bytes to read.
+   * @return A buffer with the bytes, ready to be read.
+   * @throws IOException If the bytes could not be read.
+   */
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Archive ended unexpectedly");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /** @return The layout of the records, as a {@link StudentCodec} version. */
+  public int getVersion() {
+    return version;
+  }
+
+  /** @return The number of bytes in each block. */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /** @return The number of blocks. */
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  /** @return The number of students. */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Returns the number of students in the given block.
+   * 
+   * @param block The number of the block.
+   * @return The number of students.
+   */
+  public int getRecordCount(int block) {
+    checkBlock(block);
+    return recordCounts[block];
+  }
+
+  /**
+   * Returns a view of the records in the given block, which no other thread uses.
+   * 
+   * @param block The number of the block.
+   * @return The view, from the first record to the end of the last one.
+   */
+  private ByteBuffer getBlock(int block) {
+    ByteBuffer region = regions[block / blocksPerRegion].duplicate();
+    int offset = (block % blocksPerRegion) * blockSize;
+    region.limit(offset + usedLengths[block]).position(offset);
+    return region.slice();
+  }
+
+  /**
+   * Decodes the students in the given block.
+   * 
+   * @param block The number of the block.
+   * @return The students, in order.
+   * @throws IOException If the block is not valid.
+   */
+  public List<Student> readBlock(int block) throws IOException {
+    checkBlock(block);
+    ByteBuffer records = getBlock(block);
+    StudentCodec codec = new StudentCodec(version);
+    List<Student> students = new ArrayList<>(recordCounts[block]);
+    for (int i = 0; i < recordCounts[block]; i++) {
+      Student student = codec.read(records);
+      if (student == null) {
+        throw new StreamCorruptedException("Block " + block + " has too few records");
+      }
+      students.add(student);
+    }
+    return students;
+  }
+
+  /**
+   * Decodes the student with the given number, skipping the records in front of it in its block.
+   * 
+   * @param record The number of the student, from 0.
+   * @return The student.
+   * @throws IOException If the block of the student is not valid.
+   */
+  public Student get(long record) throws IOException {
+    if (record < 0 || record >= recordCount) {
+      throw new IndexOutOfBoundsException("Record: " + record + ", count: " + recordCount);
+    }
+    int block = Arrays.binarySearch(firstRecords, record);
+    if (block < 0) {
+      // The block before the insertion point.
+      block = -block - 2;
+    }
+    ByteBuffer records = getBlock(block);
+    for (long i = firstRecords[block]; i < record; i++) {
+      StudentCodec.skip(records);
+    }
+    Student student = new StudentCodec(version).read(records);
+    if (student == null) {
+      throw new StreamCorruptedException("Block " + block + " has too few records");
+    }
+    return student;
+  }
+
+  /**
+   * Decodes every block on the given number of threads and hands the students in each block to
+   * the given handler. Blocks are handed out to the threads as they become free, so a thread that
+   * gets small blocks does not sit idle.
+   * 
+   * @param threads The number of threads.
+   * @param handler The handler.
+   * @throws IOException If a block is not valid, or if the handler failed.
+   * @throws InterruptedException If the current thread was interrupted.
+   */
+  public void forEachBlock(int threads, final BlockHandler handler) throws IOException,
+      InterruptedException {
+    Validator.checkNull(handler);
+    final AtomicInteger nextBlock = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+
+          @Override
+          public Void call() throws IOException {
+            for (int block = nextBlock.getAndIncrement(); block < blockCount; block =
+                nextBlock.getAndIncrement()) {
+              handler.handle(block, readBlock(block));
+            }
+            return null;
+          }
+
+        }));
+      }
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          // Stop the other threads from taking more blocks.
+          nextBlock.set(blockCount);
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new IllegalStateException(cause);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Throws an exception if there is no block with the given number.
+   * 
+   * @param block The number of a block.
+   * @throws IndexOutOfBoundsException If there is no block with the given number.
+   */
+  private void checkBlock(int block) {
+    if (block < 0 || block >= blockCount) {
+      throw new IndexOutOfBoundsException("Block: " + block + ", count: " + blockCount);
+    }
+  }
+
+  /**
+   * Closes the archive file. The memory that it is mapped to is released once the mappings are
+   * garbage collected.
+   * 
+   * @throws IOException If there are problems closing the file.
+   */
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
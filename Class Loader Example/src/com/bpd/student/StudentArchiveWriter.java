@@ -0,0 +1,234 @@
+package com.bpd.student;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Writes an archive of students that can be read in blocks, in parallel and out of order, by a
+ * {@link StudentArchive}. Students are encoded in the current layout of {@link StudentCodec} and
+ * collected in a block until the next one does not fit, at which point the block is padded with
+ * zeros and written out. The index of the blocks is kept in memory and written after the last
+ * block, together with the trailer, when the writer is closed. A writer that is aborted instead
+ * leaves an archive without a trailer, which {@link StudentArchive} refuses to open.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentArchiveWriter implements Closeable {
+
+  /** The number of bytes in each block by default. */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+  /** The smallest number of bytes in a block. */
+  public static final int MIN_BLOCK_SIZE = 64;
+
+  private final DataOutputStream out;
+  private final StudentCodec codec = new StudentCodec(StudentCodec.V2);
+  private final ByteBuffer block;
+  /** The number of students in the current block. */
+  private int blockRecordCount;
+  private long recordCount;
+  /** The number of students in each block written so far. */
+  private int[] recordCounts = new int[16];
+  /** The number of bytes used in each block written so far. */
+  private int[] usedLengths = new int[16];
+  private int blockCount;
+  private boolean isClosed;
+
+  /**
+   * Creates a new StudentArchiveWriter with blocks of {@value #DEFAULT_BLOCK_SIZE} bytes, and
+   * writes the header of the archive.
+   * 
+   * @param out The output stream, which is closed when this writer is closed.
+   * @throws IOException If the header could not be written.
+   */
+  public StudentArchiveWriter(OutputStream out) throws IOException {
+    this(out, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a new StudentArchiveWriter, and writes the header of the archive.
+   * 
+   * @param out The output stream, which is closed when this writer is closed.
+   * @param blockSize The number of bytes in each block. Every student must fit in one block.
+   * @throws IOException If the header could not be written.
+   */
+  public StudentArchiveWriter(OutputStream out, int blockSize) throws IOException {
+    Validator.checkNull(out);
+    if (blockSize < MIN_BLOCK_SIZE) {
+      throw new IllegalArgumentException("Block size must be at least " + MIN_BLOCK_SIZE + ": "
+          + blockSize);
+    }
+    this.out = new DataOutputStream(new BufferedOutputStream(out, blockSize));
+    block = ByteBuffer.allocate(blockSize);
+    this.out.writeInt(StudentArchive.MAGIC);
+    this.out.writeInt(codec.getVersion());
+    this.out.writeInt(blockSize);
+    // Reserved.
+    this.out.writeInt(0);
+  }
+
+  /**
+   * Converts the archive in the given input stream to an archive with blocks.
+   * 
+   * @param in The input stream, in any format that {@link StudentReader} reads, which includes Java
+   * serialized students from every version of {@link Student}. The stream is not closed.
+   * @param out The output stream, which is closed. If the import fails, the archive in it is left
+   * without a trailer, as by {@link #abort()}.
+   * @param blockSize The number of bytes in each block.
+   * @return The number of students written.
+   * @throws IOException If there are problems reading or writing an archive.
+   */
+  public static long importArchive(InputStream in, OutputStream out, int blockSize)
+      throws IOException {
+    Validator.checkNull(in);
+    StudentArchiveWriter writer = new StudentArchiveWriter(out, blockSize);
+    boolean isWritten = false;
+    try {
+      // The reader is not closed since that would close the input stream.
+      long count = writer.writeAll(new StudentReader(in));
+      isWritten = true;
+      return count;
+    }
+    catch (IllegalStateException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+    finally {
+      // A failed import must not leave an archive that opens with only some of the students.
+      if (isWritten) {
+        writer.close();
+      }
+      else {
+        writer.abort();
+      }
+    }
+  }
+
+  /**
+   * Writes the given student.
+   * 
+   * @param student The student.
+   * @throws IOException If the student does not fit in a block, or if a block could not be
+   * written.
+   */
+  public void write(Student student) throws IOException {
+    if (isClosed) {
+      throw new IOException("Writer is closed");
+    }
+    try {
+      codec.write(student, block);
+    }
+    catch (BufferOverflowException e) {
+      if (blockRecordCount == 0) {
+        throw new IOException("Student does not fit in a block of " + block.capacity()
+            + " bytes: " + student, e);
+      }
+      writeBlock();
+      write(student);
+      return;
+    }
+    blockRecordCount++;
+    recordCount++;
+  }
+
+  /**
+   * Writes every student from the given iterator.
+   * 
+   * @param students The students.
+   * @return The number of students written.
+   * @throws IOException If a student does not fit in a block, or if a block could not be written.
+   */
+  public long writeAll(Iterator<? extends Student> students) throws IOException {
+    Validator.checkNull(students);
+    long count = 0;
+    while (students.hasNext()) {
+      write(students.next());
+      count++;
+    }
+    return count;
+  }
+
+  /** @return The number of students written so far. */
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Pads the current block with zeros, writes it, and adds it to the index.
+   * 
+   * @throws IOException If the block could not be written.
+   */
+  private void writeBlock() throws IOException {
+    if (blockCount == recordCounts.length) {
+      recordCounts = Arrays.copyOf(recordCounts, blockCount * 2);
+      usedLengths = Arrays.copyOf(usedLengths, blockCount * 2);
+    }
+    recordCounts[blockCount] = blockRecordCount;
+    usedLengths[blockCount] = block.position();
+    blockCount++;
+    Arrays.fill(block.array(), block.position(), block.capacity(), (byte) 0);
+    out.write(block.array(), 0, block.capacity());
+    block.clear();
+    blockRecordCount = 0;
+  }
+
+  /**
+   * Closes the output stream without writing the last block, the index, or the trailer, so that
+   * the archive cannot be opened. Used when the students could not all be written, so that a
+   * partial archive is not mistaken for a complete one.
+   * 
+   * @throws IOException If the output stream could not be closed.
+   */
+  public void abort() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    out.close();
+  }
+
+  /**
+   * Writes the last block, the index, and the trailer, and closes the output stream.
+   * 
+   * @throws IOException If there are problems writing the archive.
+   */
+  @Override
+  public void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      if (blockRecordCount > 0) {
+        writeBlock();
+      }
+      long indexOffset = StudentArchive.HEADER_LENGTH + (long) blockCount * block.capacity();
+      long firstRecord = 0;
+      for (int i = 0; i < blockCount; i++) {
+        out.writeLong(firstRecord);
+        out.writeInt(recordCounts[i]);
+        out.writeInt(usedLengths[i]);
+        firstRecord += recordCounts[i];
+      }
+      out.writeLong(indexOffset);
+      out.writeInt(blockCount);
+      out.writeLong(recordCount);
+      out.writeInt(StudentArchive.TRAILER_MAGIC);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
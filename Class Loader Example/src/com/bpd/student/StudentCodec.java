@@ -0,0 +1,532 @@
+package com.bpd.student;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Reads and writes {@link Student} records in a compact binary format instead of through Java
+ * serialization. A stream starts with a header that holds a magic number and the layout version,
+ * followed by one length-prefixed record per student:
+ * <ul>
+ * <li>Version 1: the class standing as a byte, then the first and last names.</li>
+ * <li>Version 2: the same as version 1 plus a byte of flags for graduate and unclassified students,
+ * which version 1 of {@link ClassStanding} does not have, right after the class standing.</li>
+ * </ul>
+ * Names are written as a length followed by UTF-8 bytes. Students are mapped to and from the fields
+ * of each layout exactly as {@link Student} maps them for Java serialization, so a student written
+ * in either format is read back the same way. In particular, graduate and unclassified students are
+ * written as freshmen in the version 1 layout, which is how version 1 of {@link Student} sees them.
+ * A record takes up at most {@value #MAX_RECORD_LENGTH} bytes, so that a corrupt length is noticed
+ * before a buffer is allocated for it.
+ * <p>
+ * A codec reuses its buffers from one record to the next, so it must not be shared between threads.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentCodec {
+
+  /** The first four bytes of a stream, "STUD" in ASCII. */
+  public static final int MAGIC = 0x53545544;
+
+  /** The number of bytes in the header of a stream. */
+  public static final int HEADER_LENGTH = 5;
+
+  /** The layout of version 1 of {@link Student}. */
+  public static final int V1 = 1;
+
+  /** The layout of the current version of {@link Student}. */
+  public static final int V2 = Student.SERIALIZATION_VERSION_NUMBER;
+
+  private static final int GRADUATE_FLAG = 1;
+  private static final int UNCLASSIFIED_FLAG = 2;
+
+  /** Written in place of the ordinal of a null class standing. */
+  private static final int NULL_STANDING = 0xFF;
+
+  /** The largest number of bytes in a record, without its length. */
+  public static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+  /** The largest number of bytes that a varint for an int takes up. */
+  private static final int MAX_VARINT_LENGTH = 5;
+
+  private static final ClassStanding[] STANDINGS = ClassStanding.values();
+
+  private final int version;
+  private byte[] buffer = new byte[128];
+  private char[] chars = new char[64];
+  /** The position of the next byte in buffer while a record is encoded or decoded. */
+  private int position;
+  /** The position in buffer of the first byte of the record encoded last. */
+  private int recordStart;
+
+  /**
+   * Creates a new StudentCodec.
+   * 
+   * @param version The layout to write, either {@link #V1} or {@link #V2}.
+   */
+  public StudentCodec(int version) {
+    if (version != V1 && version != V2) {
+      throw new IllegalArgumentException("Unsupported version: " + version);
+    }
+    this.version = version;
+  }
+
+  /** @return The layout that this codec reads and writes. */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Writes the header of a stream in the layout of this codec.
+   * 
+   * @param out The output stream.
+   * @throws IOException If there are problems writing to the stream.
+   */
+  public void writeHeader(OutputStream out) throws IOException {
+    Validator.checkNull(out);
+    out.write(new byte[] { (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8),
+        (byte) MAGIC, (byte) version });
+  }
+
+  /**
+   * Reads the header of a stream and returns a codec for the layout that it names.
+   * 
+   * @param in The input stream.
+   * @return A codec for the records in the stream.
+   * @throws IOException If there are problems reading from the stream, or if the stream does not
+   * start with a valid header.
+   */
+  public static StudentCodec readHeader(InputStream in) throws IOException {
+    Validator.checkNull(in);
+    byte[] header = new byte[HEADER_LENGTH];
+    readFully(in, header, 0, header.length);
+    return forHeader(ByteBuffer.wrap(header));
+  }
+
+  /**
+   * Reads the header of a stream from the given buffer and returns a codec for the layout that it
+   * names.
+   * 
+   * @param in The buffer, positioned at the header.
+   * @return A codec for the records in the buffer.
+   * @throws IOException If the buffer does not start with a valid header.
+   */
+  public static StudentCodec forHeader(ByteBuffer in) throws IOException {
+    Validator.checkNull(in);
+    if (in.remaining() < HEADER_LENGTH || in.getInt() != MAGIC) {
+      throw new StreamCorruptedException("Not a stream of students");
+    }
+    int version = in.get();
+    if (version != V1 && version != V2) {
+      throw new StreamCorruptedException("Unsupported version: " + version);
+    }
+    return new StudentCodec(version);
+  }
+
+  /**
+   * Writes the given student as one record.
+   * 
+   * @param student The student.
+   * @param out The output stream.
+   * @throws IOException If there are problems writing to the stream.
+   */
+  public void write(Student student, OutputStream out) throws IOException {
+    Validator.checkNull(out);
+    int length = encode(student);
+    out.write(buffer, recordStart, length);
+  }
+
+  /**
+   * Writes the given student as one record into the given buffer.
+   * 
+   * @param student The student.
+   * @param out The buffer.
+   * @throws java.nio.BufferOverflowException If the record does not fit in the buffer.
+   */
+  public void write(Student student, ByteBuffer out) {
+    Validator.checkNull(out);
+    int length = encode(student);
+    out.put(buffer, recordStart, length);
+  }
+
+  /**
+   * Encodes the given student as one record, length included, into the buffer of this codec,
+   * starting at {@link #recordStart}.
+   * 
+   * @param student The student.
+   * @return The number of bytes in the record.
+   */
+  private int encode(Student student) {
+    Validator.checkNull(student);
+    // Leave room for the length, which is only known at the end.
+    position = MAX_VARINT_LENGTH;
+    ClassStanding standing = student.getClassStanding();
+    int flags = 0;
+    if (standing == ClassStanding.GRADUATE) {
+      standing = ClassStanding.FRESHMAN;
+      flags = GRADUATE_FLAG;
+    }
+    else if (standing == ClassStanding.UNCLASSIFIED) {
+      standing = ClassStanding.FRESHMAN;
+      flags = UNCLASSIFIED_FLAG;
+    }
+    ensureCapacity(2);
+    buffer[position++] = (byte) (standing == null ? NULL_STANDING : standing.ordinal());
+    if (version == V2) {
+      buffer[position++] = (byte) flags;
+    }
+    putString(student.getName());
+    putString("");
+    int payloadLength = position - MAX_VARINT_LENGTH;
+    if (payloadLength > MAX_RECORD_LENGTH) {
+      throw new IllegalArgumentException("Record of " + payloadLength + " bytes is longer than "
+          + MAX_RECORD_LENGTH + " bytes");
+    }
+    recordStart = MAX_VARINT_LENGTH - varintLength(payloadLength);
+    position = recordStart;
+    putVarint(payloadLength);
+    return MAX_VARINT_LENGTH + payloadLength - recordStart;
+  }
+
+  /**
+   * Reads the next record.
+   * 
+   * @param in The input stream, positioned after the header or the previous record.
+   * @return The student, or null if the stream ended right after the previous record.
+   * @throws IOException If there are problems reading from the stream, or if the stream ends in
+   * the middle of a record.
+   */
+  public Student read(InputStream in) throws IOException {
+    return read(in, null);
+  }
+
+  /**
+   * Reads the next record of a student with one of the given class standings. The names in the
+   * records of other students are skipped without being decoded.
+   * 
+   * @param in The input stream, positioned after the header or the previous record.
+   * @param standings The class standings of the students to read, or null to read every student.
+   * @return The student, or null if the stream ended before another student with one of the given
+   * class standings.
+   * @throws IOException If there are problems reading from the stream, or if the stream ends in
+   * the middle of a record.
+   */
+  public Student read(InputStream in, Set<ClassStanding> standings) throws IOException {
+    Validator.checkNull(in);
+    int length = readRecord(in);
+    while (length >= 0 && standings != null && !standings.contains(decodeStanding(length))) {
+      length = readRecord(in);
+    }
+    return length < 0 ? null : decode(length);
+  }
+
+  /**
+   * Reads the next record, without its length, into the buffer of this codec.
+   * 
+   * @param in The input stream, positioned after the header or the previous record.
+   * @return The number of bytes in the record, or -1 if the stream ended right after the previous
+   * record.
+   * @throws IOException If there are problems reading from the stream, or if the stream ends in
+   * the middle of a record.
+   */
+  private int readRecord(InputStream in) throws IOException {
+    int first = in.read();
+    if (first < 0) {
+      return -1;
+    }
+    int length = first & 0x7F;
+    for (int shift = 7; (first & 0x80) != 0; shift += 7) {
+      first = in.read();
+      if (first < 0) {
+        throw new EOFException("Stream ended in the length of a record");
+      }
+      if (shift > 28) {
+        throw new StreamCorruptedException("Record length is too long");
+      }
+      length |= (first & 0x7F) << shift;
+    }
+    // The last byte of a varint can set the sign bit.
+    if (length < 0 || length > MAX_RECORD_LENGTH) {
+      throw new StreamCorruptedException("Invalid record length: " + length);
+    }
+    ensureLength(length);
+    readFully(in, buffer, 0, length);
+    return length;
+  }
+
+  /**
+   * Reads the next record from the given buffer.
+   * 
+   * @param in The buffer, positioned after the header or the previous record.
+   * @return The student, or null if there are no bytes left in the buffer.
+   * @throws IOException If the buffer ends in the middle of a record.
+   */
+  public Student read(ByteBuffer in) throws IOException {
+    Validator.checkNull(in);
+    if (!in.hasRemaining()) {
+      return null;
+    }
+    int length = readLength(in);
+    ensureLength(length);
+    in.get(buffer, 0, length);
+    return decode(length);
+  }
+
+  /**
+   * Skips the next record in the given buffer without decoding it.
+   * 
+   * @param in The buffer, positioned at the start of a record.
+   * @throws IOException If the buffer ends in the middle of the record.
+   */
+  public static void skip(ByteBuffer in) throws IOException {
+    Validator.checkNull(in);
+    int length = readLength(in);
+    in.position(in.position() + length);
+  }
+
+  /**
+   * Reads the length of the next record from the given buffer.
+   * 
+   * @param in The buffer, positioned at the start of a record.
+   * @return The number of bytes in the record, without its length.
+   * @throws IOException If the buffer ends in the middle of the record.
+   */
+  private static int readLength(ByteBuffer in) throws IOException {
+    int length = 0;
+    int b;
+    int shift = 0;
+    do {
+      if (!in.hasRemaining()) {
+        throw new EOFException("Buffer ended in the length of a record");
+      }
+      if (shift > 28) {
+        throw new StreamCorruptedException("Record length is too long");
+      }
+      b = in.get();
+      length |= (b & 0x7F) << shift;
+      shift += 7;
+    }
+    while ((b & 0x80) != 0);
+    if (length < 0 || length > in.remaining()) {
+      throw new EOFException("Buffer ended in the middle of a record");
+    }
+    return length;
+  }
+
+  /**
+   * Decodes the record in the first bytes of the buffer of this codec.
+   * 
+   * @param length The number of bytes in the record, without its length.
+   * @return The student.
+   * @throws IOException If the record is not valid.
+   */
+  private Student decode(int length) throws IOException {
+    ClassStanding standing = decodeStanding(length);
+    String name = getString(length);
+    String lastName = getString(length);
+    if (name != null && lastName != null && !lastName.isEmpty()) {
+      name += " " + lastName;
+    }
+    if (position != length) {
+      throw new StreamCorruptedException("Record has " + (length - position) + " extra bytes");
+    }
+    return new Student(name, standing);
+  }
+
+  /**
+   * Decodes the class standing of the record in the first bytes of the buffer of this codec and
+   * moves {@link #position} to the first name.
+   * 
+   * @param length The number of bytes in the record, without its length.
+   * @return The class standing, which may be null.
+   * @throws IOException If the record is not valid.
+   */
+  private ClassStanding decodeStanding(int length) throws IOException {
+    position = 0;
+    int fixedLength = version == V2 ? 2 : 1;
+    if (length < fixedLength) {
+      throw new StreamCorruptedException("Record is too short");
+    }
+    int ordinal = buffer[position++] & 0xFF;
+    int flags = version == V2 ? buffer[position++] : 0;
+    if ((flags & GRADUATE_FLAG) != 0) {
+      return ClassStanding.GRADUATE;
+    }
+    if ((flags & UNCLASSIFIED_FLAG) != 0) {
+      return ClassStanding.UNCLASSIFIED;
+    }
+    if (ordinal == NULL_STANDING) {
+      return null;
+    }
+    if (ordinal < STANDINGS.length) {
+      return STANDINGS[ordinal];
+    }
+    throw new StreamCorruptedException("Unknown class standing: " + ordinal);
+  }
+
+  /**
+   * Appends the given string, or null, to the buffer.
+   * 
+   * @param value The string.
+   */
+  private void putString(String value) {
+    if (value == null) {
+      ensureCapacity(1);
+      putVarint(0);
+      return;
+    }
+    int length = value.length();
+    ensureCapacity(MAX_VARINT_LENGTH + length);
+    // Most names are ASCII, which is encoded here without a temporary array.
+    int start = position;
+    putVarint(length + 1);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        position = start;
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(MAX_VARINT_LENGTH + bytes.length);
+        putVarint(bytes.length + 1);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return;
+      }
+      buffer[position++] = (byte) c;
+    }
+  }
+
+  /**
+   * Reads a string, or null, from the buffer.
+   * 
+   * @param limit The number of bytes in the record.
+   * @return The string.
+   * @throws IOException If the string does not fit in the record.
+   */
+  private String getString(int limit) throws IOException {
+    int length = getVarint(limit) - 1;
+    if (length < 0) {
+      return null;
+    }
+    if (length > limit - position) {
+      throw new StreamCorruptedException("Name does not fit in the record");
+    }
+    if (chars.length < length) {
+      chars = new char[Math.max(length, 2 * chars.length)];
+    }
+    for (int i = 0; i < length; i++) {
+      byte b = buffer[position + i];
+      if (b < 0) {
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+      }
+      chars[i] = (char) b;
+    }
+    position += length;
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Appends the given unsigned number to the buffer, seven bits per byte, lowest bits first.
+   * 
+   * @param value The number.
+   */
+  private void putVarint(int value) {
+    int rest = value;
+    while ((rest & ~0x7F) != 0) {
+      buffer[position++] = (byte) ((rest & 0x7F) | 0x80);
+      rest >>>= 7;
+    }
+    buffer[position++] = (byte) rest;
+  }
+
+  /**
+   * Reads an unsigned number written by {@link #putVarint(int)} from the buffer.
+   * 
+   * @param limit The number of bytes in the record.
+   * @return The number.
+   * @throws IOException If the number does not fit in the record.
+   */
+  private int getVarint(int limit) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      if (position >= limit) {
+        throw new StreamCorruptedException("Record is too short");
+      }
+      byte b = buffer[position++];
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Number is too long");
+  }
+
+  /**
+   * Returns the number of bytes that {@link #putVarint(int)} writes for the given number.
+   * 
+   * @param value The number.
+   * @return The number of bytes.
+   */
+  private static int varintLength(int value) {
+    int length = 1;
+    for (int rest = value >>> 7; rest != 0; rest >>>= 7) {
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Grows the buffer, keeping its contents, so that it has room for the given number of bytes after
+   * the current position.
+   * 
+   * @param count The number of bytes.
+   */
+  private void ensureCapacity(int count) {
+    if (position + count > buffer.length) {
+      byte[] larger = new byte[Math.max(position + count, 2 * buffer.length)];
+      System.arraycopy(buffer, 0, larger, 0, position);
+      buffer = larger;
+    }
+  }
+
+  /**
+   * Grows the buffer, discarding its contents, so that it holds at least the given number of bytes.
+   * 
+   * @param length The number of bytes.
+   */
+  private void ensureLength(int length) {
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, 2 * buffer.length)];
+    }
+  }
+
+  /**
+   * Reads exactly the given number of bytes from the stream.
+   * 
+   * @param in The input stream.
+   * @param bytes The array into which to read.
+   * @param offset The index of the first byte to read into.
+   * @param length The number of bytes.
+   * @throws IOException If there are problems reading from the stream, or if it ends too soon.
+   */
+  private static void readFully(InputStream in, byte[] bytes, int offset, int length)
+      throws IOException {
+    int done = 0;
+    while (done < length) {
+      int count = in.read(bytes, offset + done, length - done);
+      if (count < 0) {
+        throw new EOFException("Stream ended in the middle of a record");
+      }
+      done += count;
+    }
+  }
+
+}
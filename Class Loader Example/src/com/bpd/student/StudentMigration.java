@@ -0,0 +1,345 @@
+package com.bpd.student;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.collections15.Transformer;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Upgrades an archive of students to the current version of {@link Student}. The archive is read
+ * with a {@link StudentReader}, so it may have been written through Java serialization by any
+ * version of {@link Student}, or by a {@link StudentCodec} in either layout; older versions are
+ * upgraded by the current classes as they are read, so no versioned class loader is needed.
+ * <p>
+ * A migration runs as a pipeline of three stages, each in its own thread: decoding students from
+ * the input, transforming each student, and encoding them to the output. The stages hand students
+ * to each other in batches through bounded queues, so the pipeline itself does not hold on to more
+ * than a few batches. When the output is written through Java serialization, the stream is reset
+ * after every batch so that it does not hold on to the students that it has written.
+ * <p>
+ * Memory use only stays bounded for inputs that allow it, though. As described for
+ * {@link StudentReader}, an input written through Java serialization holds on to the names of the
+ * students that have been read unless its writer called {@link ObjectOutputStream#reset()} from
+ * time to time. Archives written by older versions of {@link Student}, such as the ones this class
+ * upgrades, usually were not reset, so migrating them takes memory in proportion to their size.
+ * <p>
+ * A migration can be run any number of times, but not by more than one thread at the same time.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentMigration {
+
+  /** The formats in which a migrated archive can be written. */
+  public enum Format {
+    /** Java serialization of the current version of {@link Student}. */
+    SERIALIZED,
+    /** The current layout of {@link StudentCodec}. */
+    CODEC
+  }
+
+  /** Receives the progress of a migration. */
+  public interface ProgressListener {
+
+    /**
+     * Called from the encoding stage every time that a number of students have been written, and
+     * once more at the end.
+     * 
+     * @param progress The progress so far.
+     */
+    void progress(MigrationProgress progress);
+
+  }
+
+  /** The number of students handed from one stage to the next at a time. */
+  public static final int BATCH_SIZE = 256;
+
+  /** The number of batches that can wait between two stages. */
+  public static final int QUEUE_CAPACITY = 16;
+
+  /** The number of students between two reports of progress by default. */
+  public static final long DEFAULT_PROGRESS_INTERVAL = 100000;
+
+  /** Put in a queue after the last batch. */
+  private static final List<Student> END = Collections.emptyList();
+
+  private final Format format;
+  private Transformer<Student, Student> transformer;
+  private ProgressListener listener;
+  private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+  /**
+   * Creates a new StudentMigration.
+   * 
+   * @param format The format in which to write the migrated archive.
+   */
+  public StudentMigration(Format format) {
+    Validator.checkNull(format);
+    this.format = format;
+  }
+
+  /**
+   * Sets the transformation applied to each student between decoding and encoding.
+   * 
+   * @param transformer The transformation, or null to write each student as it was read.
+   */
+  public void setTransformer(Transformer<Student, Student> transformer) {
+    this.transformer = transformer;
+  }
+
+  /**
+   * Sets the listener that receives the progress of a migration.
+   * 
+   * @param listener The listener, or null for none.
+   * @param interval The number of students between two reports of progress.
+   */
+  public void setProgressListener(ProgressListener listener, long interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive: " + interval);
+    }
+    this.listener = listener;
+    this.progressInterval = interval;
+  }
+
+  /**
+   * Migrates the archive in the given input stream to the given output stream. Neither stream is
+   * closed.
+   * 
+   * @param in The input stream, positioned at the start of the archive.
+   * @param out The output stream.
+   * @return The progress at the end of the migration.
+   * @throws IOException If there are problems reading or writing an archive.
+   * @throws InterruptedException If the current thread was interrupted.
+   */
+  public MigrationProgress migrate(InputStream in, OutputStream out) throws IOException,
+      InterruptedException {
+    Validator.checkNull(in);
+    Validator.checkNull(out);
+    long start = System.nanoTime();
+    BlockingQueue<List<Student>> decoded = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    BlockingQueue<List<Student>> transformed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> decoding = executor.submit(new DecodeStage(in, decoded));
+      Future<?> transforming = executor.submit(new TransformStage(decoded, transformed));
+      long count = encode(transformed, out, start);
+      // The transforming stage is done once it has handed over its last batch. If it failed, the
+      // decoding stage may be blocked on a full queue, and is interrupted when the executor is
+      // shut down.
+      await(transforming);
+      await(decoding);
+      MigrationProgress progress = new MigrationProgress(count, System.nanoTime() - start, true);
+      if (listener != null) {
+        listener.progress(progress);
+      }
+      return progress;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the encoding stage in the current thread until the last batch.
+   * 
+   * @param transformed The queue from which to take batches.
+   * @param out The output stream.
+   * @param start The time at which the migration started.
+   * @return The number of students written.
+   * @throws IOException If there are problems writing the archive.
+   * @throws InterruptedException If the current thread was interrupted.
+   */
+  private long encode(BlockingQueue<List<Student>> transformed, OutputStream out, long start)
+      throws IOException, InterruptedException {
+    BufferedOutputStream buffered = new BufferedOutputStream(out);
+    ObjectOutputStream objects = null;
+    StudentCodec codec = null;
+    if (format == Format.SERIALIZED) {
+      objects = new ObjectOutputStream(buffered);
+    }
+    else {
+      codec = new StudentCodec(StudentCodec.V2);
+      codec.writeHeader(buffered);
+    }
+    long count = 0;
+    long nextReport = progressInterval;
+    for (List<Student> batch = transformed.take(); batch != END; batch = transformed.take()) {
+      for (Student student : batch) {
+        if (objects == null) {
+          codec.write(student, buffered);
+        }
+        else {
+          objects.writeObject(student);
+        }
+      }
+      if (objects != null) {
+        objects.reset();
+      }
+      count += batch.size();
+      if (listener != null && count >= nextReport) {
+        listener.progress(new MigrationProgress(count, System.nanoTime() - start, false));
+        nextReport = (count / progressInterval + 1) * progressInterval;
+      }
+    }
+    if (objects != null) {
+      objects.flush();
+    }
+    buffered.flush();
+    return count;
+  }
+
+  /**
+   * Waits for the given stage and throws the exception that it threw, if any.
+   * 
+   * @param stage The stage.
+   * @throws IOException If the stage could not read the archive.
+   * @throws InterruptedException If the current thread was interrupted.
+   */
+  private static void await(Future<?> stage) throws IOException, InterruptedException {
+    try {
+      stage.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Puts the last batch in the given queue.
+   * 
+   * @param queue The queue.
+   */
+  private static void putEnd(BlockingQueue<List<Student>> queue) {
+    try {
+      queue.put(END);
+    }
+    catch (InterruptedException e) {
+      // The migration is being shut down because the next stage failed.
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Reads students from the archive and hands them to the transforming stage. */
+  private static final class DecodeStage implements Callable<Void> {
+
+    private final InputStream in;
+    private final BlockingQueue<List<Student>> decoded;
+
+    /**
+     * Creates a new DecodeStage.
+     * 
+     * @param in The input stream.
+     * @param decoded The queue in which to put batches.
+     */
+    DecodeStage(InputStream in, BlockingQueue<List<Student>> decoded) {
+      this.in = in;
+      this.decoded = decoded;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Void call() throws IOException, InterruptedException {
+      try {
+        // The reader is not closed since that would close the input stream.
+        StudentReader reader = new StudentReader(in);
+        List<Student> batch = new ArrayList<>(BATCH_SIZE);
+        while (hasNext(reader)) {
+          batch.add(reader.next());
+          if (batch.size() == BATCH_SIZE) {
+            decoded.put(batch);
+            batch = new ArrayList<>(BATCH_SIZE);
+          }
+        }
+        if (!batch.isEmpty()) {
+          decoded.put(batch);
+        }
+        return null;
+      }
+      finally {
+        putEnd(decoded);
+      }
+    }
+
+    /**
+     * Returns whether the given reader has another student.
+     * 
+     * @param reader The reader.
+     * @return True if there is another student, false otherwise.
+     * @throws IOException If the reader could not read the archive.
+     */
+    private static boolean hasNext(StudentReader reader) throws IOException {
+      try {
+        return reader.hasNext();
+      }
+      catch (IllegalStateException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw e;
+      }
+    }
+
+  }
+
+  /** Transforms the students from the decoding stage and hands them to the encoding stage. */
+  private final class TransformStage implements Callable<Void> {
+
+    private final BlockingQueue<List<Student>> decoded;
+    private final BlockingQueue<List<Student>> transformed;
+
+    /**
+     * Creates a new TransformStage.
+     * 
+     * @param decoded The queue from which to take batches.
+     * @param transformed The queue in which to put batches.
+     */
+    TransformStage(BlockingQueue<List<Student>> decoded,
+        BlockingQueue<List<Student>> transformed) {
+      this.decoded = decoded;
+      this.transformed = transformed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Void call() throws InterruptedException {
+      try {
+        for (List<Student> batch = decoded.take(); batch != END; batch = decoded.take()) {
+          if (transformer != null) {
+            for (int i = 0; i < batch.size(); i++) {
+              batch.set(i, transformer.transform(batch.get(i)));
+            }
+          }
+          transformed.put(batch);
+        }
+        return null;
+      }
+      finally {
+        putEnd(transformed);
+      }
+    }
+
+  }
+
+}
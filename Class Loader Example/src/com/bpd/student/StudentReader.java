@@ -0,0 +1,227 @@
+package com.bpd.student;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Reads the students in a stream one at a time, as they are asked for, so that an archive of any
+ * size can be scanned in bounded memory. The stream may have been written either through Java
+ * serialization or by a {@link StudentCodec}; the format is detected from the first bytes of the
+ * stream. The end of the stream is detected by looking ahead before each record rather than by
+ * waiting for {@link java.io.EOFException}, so an empty stream is an empty iteration.
+ * <p>
+ * Students can be filtered by class standing while they are read. For streams written by a
+ * {@link StudentCodec}, the names of the students that are filtered out are never decoded.
+ * <p>
+ * Students in a stream written through Java serialization are read with
+ * {@link ObjectInputStream#readUnshared()}, so the stream does not hold on to them once they are
+ * returned. It still holds on to their names, though, unless the writer called
+ * {@link java.io.ObjectOutputStream#reset()} from time to time.
+ * <p>
+ * Since {@link Iterator} cannot throw checked exceptions, problems reading the stream are thrown
+ * as an {@link IllegalStateException} that wraps the cause.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentReader implements Iterator<Student>, Closeable {
+
+  /** The number of bytes looked at to detect the format of a stream. */
+  private static final int MAGIC_LENGTH = 4;
+
+  private final PushbackInputStream in;
+  /** Reads a stream written through Java serialization, or null for other streams. */
+  private final ObjectInputStream objects;
+  /** Reads a stream written by a codec, or null for other streams. */
+  private final StudentCodec codec;
+  private final Set<ClassStanding> standings;
+
+  private Student next;
+  private boolean isDone;
+
+  /**
+   * Creates a new StudentReader that reads every student in the given stream.
+   * 
+   * @param in The input stream, positioned at its start.
+   * @throws IOException If there are problems reading from the stream, or if it is not a stream of
+   * students.
+   */
+  public StudentReader(InputStream in) throws IOException {
+    this(in, null);
+  }
+
+  /**
+   * Creates a new StudentReader that reads the students with the given class standings.
+   * 
+   * @param in The input stream, positioned at its start.
+   * @param standings The class standings of the students to read, or null to read every student.
+   * @throws IOException If there are problems reading from the stream, or if it is not a stream of
+   * students.
+   */
+  public StudentReader(InputStream in, Set<ClassStanding> standings) throws IOException {
+    Validator.checkNull(in);
+    this.in = new PushbackInputStream(new BufferedInputStream(in), MAGIC_LENGTH);
+    if (standings == null) {
+      this.standings = null;
+    }
+    else {
+      this.standings = EnumSet.noneOf(ClassStanding.class);
+      this.standings.addAll(standings);
+    }
+    byte[] magic = new byte[MAGIC_LENGTH];
+    int length = 0;
+    int count = 0;
+    while (count >= 0 && length < magic.length) {
+      count = this.in.read(magic, length, magic.length - length);
+      if (count > 0) {
+        length += count;
+      }
+    }
+    this.in.unread(magic, 0, length);
+    if (length == 0) {
+      objects = null;
+      codec = null;
+      isDone = true;
+    }
+    else if (length >= 2 && getShort(magic) == ObjectStreamConstants.STREAM_MAGIC) {
+      objects = new ObjectInputStream(this.in);
+      codec = null;
+    }
+    else {
+      objects = null;
+      codec = StudentCodec.readHeader(this.in);
+    }
+  }
+
+  /**
+   * Returns the first two bytes of the given array as a short.
+   * 
+   * @param bytes The bytes.
+   * @return The short.
+   */
+  private static short getShort(byte[] bytes) {
+    return (short) ((bytes[0] & 0xFF) << 8 | bytes[1] & 0xFF);
+  }
+
+  /**
+   * Returns whether there is another student to read, reading it from the stream if necessary.
+   * 
+   * @return True if there is another student to read, false otherwise.
+   * @throws IllegalStateException If there are problems reading from the stream.
+   */
+  @Override
+  public boolean hasNext() {
+    if (next == null && !isDone) {
+      try {
+        next = readNext();
+      }
+      catch (IOException | ClassNotFoundException e) {
+        throw new IllegalStateException("Could not read the next student", e);
+      }
+      isDone = next == null;
+    }
+    return next != null;
+  }
+
+  /**
+   * Returns the next student.
+   * 
+   * @return The next student.
+   * @throws NoSuchElementException If there are no more students.
+   * @throws IllegalStateException If there are problems reading from the stream.
+   */
+  @Override
+  public Student next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Student student = next;
+    next = null;
+    return student;
+  }
+
+  /**
+   * Reads the next student with one of the class standings of this reader.
+   * 
+   * @return The student, or null if there are no more students.
+   * @throws IOException If there are problems reading from the stream.
+   * @throws ClassNotFoundException If the class of an object in the stream cannot be found.
+   */
+  private Student readNext() throws IOException, ClassNotFoundException {
+    if (codec != null) {
+      return codec.read(in, standings);
+    }
+    while (!isAtEnd()) {
+      Object object = objects.readUnshared();
+      if (!(object instanceof Student)) {
+        String type = object == null ? "null" : object.getClass().getName();
+        throw new StreamCorruptedException("Not a student: " + type);
+      }
+      Student student = (Student) object;
+      if (standings == null || standings.contains(student.getClassStanding())) {
+        return student;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether a stream written through Java serialization has no more objects, by looking
+   * ahead without letting the object input stream see the end. A writer that resets its stream
+   * after the last object leaves a reset marker behind, so the markers are looked past. Since a
+   * reset only clears the objects that a stream has seen, any number of markers in a row has the
+   * same effect as one, and only one is left for the object input stream to read.
+   * 
+   * @return True if the stream has no more objects, false otherwise.
+   * @throws IOException If there are problems reading from the stream.
+   */
+  private boolean isAtEnd() throws IOException {
+    boolean isReset = false;
+    int b = in.read();
+    while (b == ObjectStreamConstants.TC_RESET) {
+      isReset = true;
+      b = in.read();
+    }
+    if (b < 0) {
+      return true;
+    }
+    in.unread(b);
+    if (isReset) {
+      in.unread(ObjectStreamConstants.TC_RESET);
+    }
+    return false;
+  }
+
+  /**
+   * Not supported.
+   * 
+   * @throws UnsupportedOperationException Always.
+   */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Closes the underlying stream. No more students are read afterwards.
+   * 
+   * @throws IOException If there are problems closing the stream.
+   */
+  @Override
+  public void close() throws IOException {
+    isDone = true;
+    next = null;
+    in.close();
+  }
+
+}
@@ -0,0 +1,356 @@
+package com.bpd.student;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import com.bpd.utils.validation.Validator;
+
+/**
+ * Holds a large number of students in columns instead of as {@link Student} objects. The class
+ * standing of each student is one byte in an array of ordinals, and the names of all students are
+ * UTF-8 bytes in one shared array, found through an array of offsets. A student therefore costs
+ * five bytes plus the bytes of its name, instead of a {@link Student}, a {@link String}, and the
+ * array of characters in the string.
+ * <p>
+ * Students are handed out as {@link View} objects, which are flyweights that read their name and
+ * class standing from the store when asked for them. A view can be moved from one student to
+ * another so that a scan over the store does not create any objects other than the names that it
+ * asks for.
+ * <p>
+ * A store is not thread safe. Once it is no longer changed, it can be read by any number of threads
+ * at the same time, provided that it was safely published to them.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public final class StudentStore implements Iterable<Student> {
+
+  /** Stored in place of the ordinal of a null class standing. */
+  private static final byte NULL_STANDING = -1;
+
+  /** The approximate number of bytes in the header of an array. */
+  private static final int ARRAY_HEADER_LENGTH = 16;
+
+  private static final ClassStanding[] STANDINGS = ClassStanding.values();
+
+  private byte[] standings;
+  /** The name of student i is in names from nameOffsets[i] to nameOffsets[i + 1]. */
+  private int[] nameOffsets;
+  private byte[] names;
+  /** The students whose names are null rather than empty. */
+  private final BitSet nullNames = new BitSet();
+  private int size;
+
+  /** Creates a new StudentStore. */
+  public StudentStore() {
+    this(16, 256);
+  }
+
+  /**
+   * Creates a new StudentStore with room for the given number of students and bytes of names
+   * before it has to grow.
+   * 
+   * @param capacity The number of students.
+   * @param nameCapacity The number of bytes of names.
+   */
+  public StudentStore(int capacity, int nameCapacity) {
+    Validator.checkNegative(capacity);
+    Validator.checkNegative(nameCapacity);
+    standings = new byte[capacity];
+    nameOffsets = new int[capacity + 1];
+    names = new byte[nameCapacity];
+  }
+
+  /**
+   * Reads every student in the given archive into a new store.
+   * 
+   * @param in The input stream, in any format that {@link StudentReader} reads.
+   * @return The store.
+   * @throws IOException If there are problems reading the archive.
+   */
+  public static StudentStore load(InputStream in) throws IOException {
+    return load(in, null);
+  }
+
+  /**
+   * Reads the students with the given class standings in the given archive into a new store.
+   * 
+   * @param in The input stream, in any format that {@link StudentReader} reads.
+   * @param standings The class standings of the students to read, or null to read every student.
+   * @return The store.
+   * @throws IOException If there are problems reading the archive.
+   */
+  public static StudentStore load(InputStream in, Set<ClassStanding> standings)
+      throws IOException {
+    StudentStore store = new StudentStore();
+    try (StudentReader reader = new StudentReader(in, standings)) {
+      store.addAll(reader);
+    }
+    catch (IllegalStateException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+    store.trimToSize();
+    return store;
+  }
+
+  /**
+   * Adds the given student.
+   * 
+   * @param student The student.
+   * @return The index of the student.
+   */
+  public int add(Student student) {
+    Validator.checkNull(student);
+    if (size == standings.length) {
+      int capacity = Math.max(16, size + (size >> 1));
+      standings = Arrays.copyOf(standings, capacity);
+      nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+    }
+    ClassStanding standing = student.getClassStanding();
+    standings[size] = standing == null ? NULL_STANDING : (byte) standing.ordinal();
+    String name = student.getName();
+    int offset = nameOffsets[size];
+    if (name == null) {
+      nullNames.set(size);
+    }
+    else {
+      offset = putName(name, offset);
+    }
+    nameOffsets[size + 1] = offset;
+    return size++;
+  }
+
+  /**
+   * Adds every student from the given iterator.
+   * 
+   * @param students The students.
+   * @return The number of students added.
+   */
+  public int addAll(Iterator<? extends Student> students) {
+    Validator.checkNull(students);
+    int count = 0;
+    while (students.hasNext()) {
+      add(students.next());
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Appends the given name to the array of names as UTF-8.
+   * 
+   * @param name The name.
+   * @param offset The position in the array at which to put the name.
+   * @return The position right after the name.
+   */
+  private int putName(String name, int offset) {
+    int length = name.length();
+    ensureNameCapacity(offset + length);
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      if (c >= 0x80) {
+        // Not ASCII, so let the charset take care of it.
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ensureNameCapacity(offset + bytes.length);
+        System.arraycopy(bytes, 0, names, offset, bytes.length);
+        return offset + bytes.length;
+      }
+      names[offset + i] = (byte) c;
+    }
+    return offset + length;
+  }
+
+  /**
+   * Grows the array of names if it cannot hold the given number of bytes.
+   * 
+   * @param capacity The number of bytes.
+   */
+  private void ensureNameCapacity(int capacity) {
+    if (capacity > names.length) {
+      names = Arrays.copyOf(names, Math.max(capacity, names.length + (names.length >> 1)));
+    }
+  }
+
+  /** Shrinks the arrays of this store to the students that it holds. */
+  public void trimToSize() {
+    standings = Arrays.copyOf(standings, size);
+    nameOffsets = Arrays.copyOf(nameOffsets, size + 1);
+    names = Arrays.copyOf(names, nameOffsets[size]);
+  }
+
+  /** @return The number of students in this store. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the class standing of the given student.
+   * 
+   * @param index The index of the student.
+   * @return The class standing, which may be null.
+   */
+  public ClassStanding getClassStanding(int index) {
+    checkIndex(index);
+    byte ordinal = standings[index];
+    return ordinal == NULL_STANDING ? null : STANDINGS[ordinal];
+  }
+
+  /**
+   * Returns the name of the given student.
+   * 
+   * @param index The index of the student.
+   * @return The name, which may be null.
+   */
+  public String getName(int index) {
+    checkIndex(index);
+    if (nullNames.get(index)) {
+      return null;
+    }
+    int offset = nameOffsets[index];
+    return new String(names, offset, nameOffsets[index + 1] - offset, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns a view of the given student.
+   * 
+   * @param index The index of the student.
+   * @return The view.
+   */
+  public View get(int index) {
+    checkIndex(index);
+    return new View(this, index);
+  }
+
+  /**
+   * Returns an iterator over the students in this store, from the first one added to the last. The
+   * iterator returns a new view for each student.
+   * 
+   * @return The iterator.
+   */
+  @Override
+  public Iterator<Student> iterator() {
+    return new Iterator<Student>() {
+
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public Student next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        return new View(StudentStore.this, next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+    };
+  }
+
+  /**
+   * Returns the approximate number of bytes used by the arrays of this store, including room that
+   * has not been used yet.
+   * 
+   * @return The approximate number of bytes used by this store.
+   */
+  public long getFootprintBytes() {
+    return ARRAY_HEADER_LENGTH + standings.length + ARRAY_HEADER_LENGTH + 4L * nameOffsets.length
+        + ARRAY_HEADER_LENGTH + names.length + ARRAY_HEADER_LENGTH + nullNames.size() / 8;
+  }
+
+  /**
+   * Throws an exception if there is no student with the given index.
+   * 
+   * @param index The index of a student.
+   * @throws IndexOutOfBoundsException If there is no student with the given index.
+   */
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+  }
+
+  /**
+   * A student in a {@link StudentStore}. A view holds nothing but the store and the index of the
+   * student; its name and class standing are read from the store every time that they are asked
+   * for. A view is serialized as an ordinary {@link Student}.
+   */
+  public static final class View extends Student {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient StudentStore store;
+    private transient int index;
+
+    /**
+     * Creates a new View.
+     * 
+     * @param store The store.
+     * @param index The index of the student.
+     */
+    View(StudentStore store, int index) {
+      super(null, null);
+      this.store = store;
+      this.index = index;
+    }
+
+    /** @return The index of the student in the store. */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Moves this view to another student in the same store.
+     * 
+     * @param index The index of the student.
+     * @throws IndexOutOfBoundsException If there is no student with the given index.
+     */
+    public void moveTo(int index) {
+      store.checkIndex(index);
+      this.index = index;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+      return store.getName(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ClassStanding getClassStanding() {
+      return store.getClassStanding(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return "Student=[name=" + getName() + ", classStanding=" + getClassStanding() + "]";
+    }
+
+    /**
+     * Replaces this view with a copy of the student when it is serialized.
+     * 
+     * @return The student.
+     */
+    private Object writeReplace() {
+      return new Student(getName(), getClassStanding());
+    }
+
+  }
+
+}
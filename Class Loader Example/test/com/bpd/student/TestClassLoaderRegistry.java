@@ -0,0 +1,163 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Tests {@link ClassLoaderRegistry}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestClassLoaderRegistry {
+
+  private static final int THREADS = 8;
+
+  /**
+   * Tests that the class loader of a version is created once, loads its own version of
+   * {@link Student}, and is replaced after it is released.
+   * 
+   * @throws Exception If a class could not be loaded.
+   */
+  @Test
+  public void testCachedLoader() throws Exception {
+    try (ClassLoaderRegistry registry = newRegistry()) {
+      assertNull(registry.getStatistics(1));
+      ClassLoader loader = registry.getClassLoader(1);
+      assertSame(loader, registry.getClassLoader(1));
+      assertEquals(1, registry.getCreatedCount());
+
+      Class<?> studentClass = loader.loadClass(Student.class.getName());
+      assertNotSame(Student.class, studentClass);
+      assertSame(loader, studentClass.getClassLoader());
+      try {
+        studentClass.getDeclaredField("SERIALIZATION_VERSION_NUMBER");
+        fail("Loaded the current version of Student");
+      }
+      catch (NoSuchFieldException e) {
+        // Expected: version 1 does not have the field.
+      }
+      assertSame(loader, loader.loadClass(TestStudent.class.getName()).getClassLoader());
+      assertTrue(loader.getResource("com/bpd/student/Student.class") != null);
+
+      ClassLoaderStatistics statistics = registry.getStatistics(1);
+      assertEquals(1, statistics.getVersion());
+      assertTrue(statistics.getClassCount() >= 2);
+      assertTrue(statistics.getByteCount() > 0);
+
+      assertTrue(registry.release(1));
+      assertFalse(registry.release(1));
+      ClassLoader newLoader = registry.getClassLoader(1);
+      assertNotSame(loader, newLoader);
+      assertNotSame(studentClass, newLoader.loadClass(Student.class.getName()));
+      assertEquals(2, registry.getCreatedCount());
+      assertEquals(1, registry.getReleasedCount());
+    }
+  }
+
+  /**
+   * Tests that threads that load the same classes at the same time share one class loader and get
+   * the same classes.
+   * 
+   * @throws Exception If a class could not be loaded.
+   */
+  @Test
+  public void testParallelLoading() throws Exception {
+    final String[] names =
+        { Student.class.getName(), ClassStanding.class.getName(), StudentCodec.class.getName(),
+            StudentReader.class.getName(), TestStudent.class.getName() };
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try (final ClassLoaderRegistry registry = newRegistry()) {
+      List<Future<List<Class<?>>>> futures = new ArrayList<>();
+      for (int i = 0; i < THREADS; i++) {
+        futures.add(executor.submit(new Callable<List<Class<?>>>() {
+
+          @Override
+          public List<Class<?>> call() throws Exception {
+            ClassLoader loader = registry.getClassLoader(1);
+            List<Class<?>> classes = new ArrayList<>();
+            for (String name : names) {
+              classes.add(Class.forName(name, true, loader));
+            }
+            return classes;
+          }
+
+        }));
+      }
+      List<Class<?>> expected = futures.get(0).get();
+      for (Future<List<Class<?>>> future : futures) {
+        assertEquals(expected, future.get());
+      }
+      assertEquals(1, registry.getCreatedCount());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Tests that unregistered versions, conflicting registrations, and closed registries are
+   * rejected.
+   * 
+   * @throws Exception If the registry could not be closed.
+   */
+  @Test
+  public void testInvalidUse() throws Exception {
+    ClassLoaderRegistry registry = newRegistry();
+    try {
+      registry.getClassLoader(2);
+      fail("Created a class loader for an unregistered version");
+    }
+    catch (IllegalArgumentException e) {
+      // Expected.
+    }
+    registry.register(1, getJar());
+    try {
+      registry.register(1, new URL("file:/other.jar"));
+      fail("Registered a version twice");
+    }
+    catch (IllegalStateException e) {
+      // Expected.
+    }
+    registry.close();
+    try {
+      registry.getClassLoader(1);
+      fail("Created a class loader after the registry was closed");
+    }
+    catch (IllegalStateException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Returns a registry that has version 1 of {@link Student} registered.
+   * 
+   * @return The registry.
+   */
+  private static ClassLoaderRegistry newRegistry() {
+    URLClassLoader cl = (URLClassLoader) TestClassLoaderRegistry.class.getClassLoader();
+    ClassLoaderRegistry registry = new ClassLoaderRegistry(Arrays.asList(cl.getURLs()));
+    registry.register(1, getJar());
+    return registry;
+  }
+
+  /** @return The URL of the JAR file with version 1 of {@link Student}. */
+  private static URL getJar() {
+    return TestClassLoaderRegistry.class.getResource("StudentV1.jar");
+  }
+
+}
@@ -0,0 +1,154 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Tests {@link ClassStandingIndex}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestClassStandingIndex {
+
+  private static final int THREADS = 8;
+  private static final int COUNT_PER_THREAD = 20000;
+
+  /** Tests that counts and iterations follow students as they are added and removed. */
+  @Test
+  public void testAddAndRemove() {
+    ClassStandingIndex<Student> index = new ClassStandingIndex<>();
+    Student graduate = new Student("Yumi Adachi", ClassStanding.GRADUATE);
+    Student senior = new Student("Rina Aizawa", ClassStanding.SENIOR);
+    Student unknown = new Student("Sayaka Aizome", null);
+    assertTrue(index.add(graduate));
+    assertFalse(index.add(graduate));
+    assertTrue(index.add(senior));
+    assertTrue(index.add(unknown));
+
+    assertEquals(1, index.count(ClassStanding.GRADUATE));
+    assertEquals(1, index.count(ClassStanding.SENIOR));
+    assertEquals(0, index.count(ClassStanding.FRESHMAN));
+    assertEquals(1, index.count(null));
+    assertEquals(3, index.size());
+    assertEquals(ClassStanding.values().length, index.counts().size());
+    assertSame(graduate, index.get(ClassStanding.GRADUATE).iterator().next());
+
+    assertTrue(index.remove(graduate));
+    assertFalse(index.remove(graduate));
+    assertEquals(0, index.count(ClassStanding.GRADUATE));
+    assertTrue(index.get(ClassStanding.GRADUATE).isEmpty());
+
+    index.clear();
+    assertEquals(0, index.size());
+
+    StudentStore store = new StudentStore();
+    store.add(graduate);
+    try {
+      index.add(store.get(0));
+      fail("Indexed a view");
+    }
+    catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Tests that an archive is indexed while it is being read.
+   * 
+   * @throws Exception If the archive could not be read.
+   */
+  @Test
+  public void testIndexing() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(StudentCodec.V2);
+    codec.writeHeader(out);
+    ClassStanding[] standings = ClassStanding.values();
+    for (int i = 0; i < 600; i++) {
+      codec.write(new Student("Student " + i, standings[i % standings.length]), out);
+    }
+
+    ClassStandingIndex<Student> index = new ClassStandingIndex<>();
+    int count = 0;
+    try (StudentReader reader = new StudentReader(new ByteArrayInputStream(out.toByteArray()))) {
+      Iterator<Student> students = index.indexing(reader);
+      while (students.hasNext()) {
+        students.next();
+        count++;
+        assertEquals(count, index.size());
+      }
+    }
+    for (Map.Entry<ClassStanding, Integer> entry : index.counts().entrySet()) {
+      assertEquals(100, entry.getValue().intValue());
+      for (Student student : index.get(entry.getKey())) {
+        assertSame(entry.getKey(), student.getClassStanding());
+      }
+    }
+  }
+
+  /**
+   * Tests that counts stay exact when threads add and remove students at the same time.
+   * 
+   * @throws Exception If a thread failed.
+   */
+  @Test
+  public void testConcurrentUpdates() throws Exception {
+    final ClassStandingIndex<Student> index = new ClassStandingIndex<>();
+    final ClassStanding[] standings = ClassStanding.values();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+
+          @Override
+          public Void call() {
+            List<Student> removed = new ArrayList<>();
+            for (int i = 0; i < COUNT_PER_THREAD; i++) {
+              Student student = new Student("Student " + thread + "-" + i,
+                  standings[(thread + i) % standings.length]);
+              index.add(student);
+              // Remove every other student again.
+              if (i % 2 == 0) {
+                removed.add(student);
+              }
+            }
+            for (Student student : removed) {
+              index.remove(student);
+            }
+            return null;
+          }
+
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertEquals(THREADS * COUNT_PER_THREAD / 2, index.size());
+    int total = 0;
+    for (ClassStanding standing : standings) {
+      assertEquals(index.get(standing).size(), index.count(standing));
+      total += index.count(standing);
+    }
+    assertEquals(index.size(), total);
+  }
+
+}
@@ -0,0 +1,64 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.collections15.Factory;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompatibilityMatrix}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestCompatibilityMatrix {
+
+  /**
+   * Tests that a cell that cannot read its archive is reported as a failure without stopping the
+   * other cells.
+   * 
+   * @throws Exception If the matrix could not be run.
+   */
+  @Test
+  public void testFailedCell() throws Exception {
+    URLClassLoader cl = (URLClassLoader) TestCompatibilityMatrix.class.getClassLoader();
+    try (ClassLoaderRegistry registry = new ClassLoaderRegistry(Arrays.asList(cl.getURLs()))) {
+      registry.register(1, TestCompatibilityMatrix.class.getResource("StudentV1.jar"));
+      CompatibilityMatrix matrix = new CompatibilityMatrix(registry);
+      matrix.addVersion(1);
+      matrix.addArchive("version 1", new Factory<InputStream>() {
+        @Override
+        public InputStream create() {
+          return TestCompatibilityMatrix.class.getResourceAsStream("StudentV1.old");
+        }
+      });
+      matrix.addArchive("corrupt", new Factory<InputStream>() {
+        @Override
+        public InputStream create() {
+          return new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6 });
+        }
+      });
+
+      List<CompatibilityResult> results = matrix.run(2);
+      assertEquals(2, results.size());
+      CompatibilityResult result = results.get(0);
+      assertEquals("version 1", result.getArchiveName());
+      assertTrue(result.isCompatible());
+      assertEquals(4, result.getRecordCount());
+      assertTrue(result.getRecordsPerSecond() > 0);
+
+      result = results.get(1);
+      assertEquals("corrupt", result.getArchiveName());
+      assertFalse(result.isCompatible());
+      assertEquals(StreamCorruptedException.class.getName(),
+          result.getFailure().getClass().getName());
+    }
+  }
+
+}
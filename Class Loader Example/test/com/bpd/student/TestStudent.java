@@ -1,24 +1,23 @@
 package com.bpd.student;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.math.BigInteger;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.security.AccessController;
-import java.security.PrivilegedAction;
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.collections15.Factory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import com.bpd.utils.validation.Validator;
 
@@ -31,45 +30,55 @@ public class TestStudent {
 
   private static final String SERIALIZATION_VERSION_NUMBER = "SERIALIZATION_VERSION_NUMBER";
 
+  /** The number of objects in the large archive of the current version. */
+  private static final int LARGE_ARCHIVE_SIZE = 20000;
+
+  /** The number of objects written between two resets of an object output stream. */
+  private static final int RESET_INTERVAL = 1000;
+
+  /** The number of pairs of versions that are checked at the same time. */
+  private static final int THREADS = 4;
+
+  /** Caches the class loader of each version of {@link Student} for all tests. */
+  private static ClassLoaderRegistry registry;
+
+  /** Creates the registry of class loaders for the versions of {@link Student}. */
+  @BeforeClass
+  public static void createRegistry() {
+    // Search all of the URLs from the class loader that loaded this class after those of a version.
+    URLClassLoader cl = (URLClassLoader) TestStudent.class.getClassLoader();
+    registry = new ClassLoaderRegistry(Arrays.asList(cl.getURLs()));
+  }
+
+  /**
+   * Closes the registry of class loaders.
+   * 
+   * @throws Exception If the registry could not be closed.
+   */
+  @AfterClass
+  public static void closeRegistry() throws Exception {
+    registry.close();
+  }
+
   private static List<VersionInfo> getVersions() {
-    return Arrays.asList(new VersionInfo(1, getClassLoader("StudentV1.jar"),
+    return Arrays.asList(new VersionInfo(1, getResource("StudentV1.jar"),
         getData("StudentV1.old")), new VersionInfo(Student.SERIALIZATION_VERSION_NUMBER,
-        getCurrentClassLoader(), getCurrentData()));
+        getCurrentClasses(), getCurrentData(ClassStanding.values().length)));
   }
 
   /**
-   * Returns a factory for constructing a class loader that has the given JAR resource in its list
-   * of URLs.
+   * Returns the URL of the given resource.
    * 
-   * @param jarResourceName The JAR resource name.
-   * @return A factory for constructing a class loader that has the given JAR resource in its list
-   * of URLs.
+   * @param resourceName The resource name.
+   * @return The URL of the given resource.
    */
-  private static Factory<ClassLoader> getClassLoader(final String jarResourceName) {
-    Validator.checkNull(jarResourceName);
-    return new Factory<ClassLoader>() {
-      @Override
-      public ClassLoader create() {
-        URL url = TestStudent.class.getResource(jarResourceName);
-        if (url == null) {
-          throw new RuntimeException("missing resource: " + jarResourceName);
-        }
-        // Make the URL of the JAR resource the first search path.
-        final List<URL> urls = new ArrayList<>();
-        urls.add(url);
-        URLClassLoader cl = (URLClassLoader) TestStudent.class.getClassLoader();
-        // Then get all of the other URLs from the class loader that loaded this class.
-        urls.addAll(Arrays.asList(cl.getURLs()));
-        return AccessController.doPrivileged(new PrivilegedAction<URLClassLoader>() {
-
-          @Override
-          public URLClassLoader run() {
-            return new URLClassLoader(urls.toArray(new URL[urls.size()]), null);
-          }
-
-        });
-      }
-    };
+  private static URL getResource(String resourceName) {
+    Validator.checkNull(resourceName);
+    URL url = TestStudent.class.getResource(resourceName);
+    if (url == null) {
+      throw new RuntimeException("missing resource: " + resourceName);
+    }
+    return url;
   }
 
   /**
@@ -92,41 +101,45 @@ public class TestStudent {
   }
 
   /**
-   * Returns a factory for constructing a class loader that loaded this class.
+   * Returns the URL of the directory or JAR file from which the current version of {@link Student}
+   * was loaded.
    * 
-   * @return A factory for constructing a class loader that loaded this class.
+   * @return The URL of the current version of {@link Student}.
    */
-  private static Factory<ClassLoader> getCurrentClassLoader() {
-    return new Factory<ClassLoader>() {
-      @Override
-      public ClassLoader create() {
-        return TestStudent.class.getClassLoader();
-      }
-    };
+  private static URL getCurrentClasses() {
+    return Student.class.getProtectionDomain().getCodeSource().getLocation();
   }
 
   /**
    * Returns a factory for constructing an input stream that contains objects written to it.
    * 
+   * @param count The number of objects to write, which cycle through every class standing.
    * @return A factory for constructing an input stream that contains objects written to it.
    */
-  private static Factory<InputStream> getCurrentData() {
+  private static Factory<InputStream> getCurrentData(int count) {
+    final byte[] bytes;
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ObjectOutputStream oout = new ObjectOutputStream(out);
+      ClassStanding[] standings = ClassStanding.values();
+      SecureRandom random = new SecureRandom();
+      for (int i = 0; i < count; i++) {
+        String alphanumeric = new BigInteger(130, random).toString(32);
+        oout.writeObject(new Student(alphanumeric, standings[i % standings.length]));
+        if ((i + 1) % RESET_INTERVAL == 0) {
+          oout.reset();
+        }
+      }
+      oout.close();
+      bytes = out.toByteArray();
+    }
+    catch (Exception e) {
+      throw new RuntimeException("", e);
+    }
     return new Factory<InputStream>() {
       @Override
       public InputStream create() {
-        try {
-          ByteArrayOutputStream out = new ByteArrayOutputStream();
-          ObjectOutputStream oout = new ObjectOutputStream(out);
-          for (ClassStanding standing : ClassStanding.values()) {
-            String alphanumeric = new BigInteger(130, new SecureRandom()).toString(32);
-            oout.writeObject(new Student(alphanumeric, standing));
-          }
-          oout.close();
-          return new ByteArrayInputStream(out.toByteArray());
-        }
-        catch (Exception e) {
-          throw new RuntimeException("", e);
-        }
+        return new ByteArrayInputStream(bytes);
       }
     };
   }
@@ -134,36 +147,46 @@ public class TestStudent {
   /**
    * This test will load all versions of {@link Student}, each in its own class loader, and try to
    * deserialize each version of the object, which is stored in either a file or byte array. For
-   * example, after loading version 1 of this class, it will try to deserialize versions 1 and 2 of
-   * the object; and after loading version 2 in a separate class loader, it will also try to
-   * deserialize the same two objects.
+   * example, version 1 of this class will try to deserialize versions 1 and 2 of the object, and
+   * version 2 will also try to deserialize the same two objects. Every pair of a version of the
+   * class and a version of the object runs at the same time in a separate class loader, and the
+   * result of each pair is checked.
    * 
    * @throws Exception If something bad happens during this test.
    */
   @Test
   public void loadSerializedData() throws Exception {
-    List<VersionInfo> versionInfos = getVersions();
-    for (VersionInfo versionInfo1 : versionInfos) {
-      // Load this test class within the class loader, and then run the test.
-      ClassLoader classLoader = versionInfo1.classLoaderSource.create();
+    CompatibilityMatrix matrix = new CompatibilityMatrix(registry);
+    List<VersionInfo> versions = getVersions();
+    for (VersionInfo versionInfo : versions) {
+      registry.register(versionInfo.versionNumber, versionInfo.classesUrl);
+      ClassLoader classLoader = registry.getClassLoader(versionInfo.versionNumber);
       Class<?> studentClass = classLoader.loadClass(Student.class.getName());
-      int version = getVersion(studentClass);
-      assertEquals(version, versionInfo1.versionNumber);
-      String msg = "\n*** Version " + version + " of " + studentClass.getName() + " ***";
-      System.out.println(msg);
-
-      Class<?> testClass = classLoader.loadClass(TestStudent.class.getName());
-      Method method = testClass.getDeclaredMethod("testReadSerializedData", InputStream.class);
-      method.setAccessible(true);
-
-      for (VersionInfo versionInfo2 : versionInfos) {
-        InputStream in = versionInfo2.serializedDataSource.create();
-        System.out.print("Deserializing version " + versionInfo2.versionNumber);
-        System.out.println(" of object...");
-        method.invoke(null, in);
-        System.out.println();
+      assertEquals(versionInfo.versionNumber, getVersion(studentClass));
+      matrix.addVersion(versionInfo.versionNumber);
+      matrix.addArchive("version " + versionInfo.versionNumber, versionInfo.serializedDataSource);
+    }
+    matrix.addArchive("version " + Student.SERIALIZATION_VERSION_NUMBER + " (large)",
+        getCurrentData(LARGE_ARCHIVE_SIZE));
+
+    Map<String, Long> recordCounts = new HashMap<>();
+    List<CompatibilityResult> results = matrix.run(THREADS);
+    // Every version of the class reads every archive, including the large one.
+    assertEquals(versions.size() * (versions.size() + 1), results.size());
+    for (CompatibilityResult result : results) {
+      assertTrue(result.toString(), result.isCompatible());
+      assertTrue(result.toString(), result.getRecordCount() > 0);
+      assertTrue(result.toString(), result.getElapsedNanos() > 0);
+      assertTrue(result.toString(), result.getMaxRecordNanos() <= result.getElapsedNanos());
+      assertTrue(result.toString(), result.getRecordsPerSecond() > 0);
+      // Every version of the class should see the same number of objects in an archive.
+      Long recordCount = recordCounts.put(result.getArchiveName(), result.getRecordCount());
+      if (recordCount != null) {
+        assertEquals(recordCount.longValue(), result.getRecordCount());
       }
     }
+    assertEquals(LARGE_ARCHIVE_SIZE, recordCounts.get("version "
+        + Student.SERIALIZATION_VERSION_NUMBER + " (large)").longValue());
   }
 
   /**
@@ -186,47 +209,30 @@ public class TestStudent {
   }
 
   /**
-   * Reads in all objects from the given serialized input stream until the end has been reached.
-   * 
-   * @param serializedStream The input stream from which to read in an object.
-   * @throws Exception If there were problems reading in an object.
-   */
-  public static void testReadSerializedData(InputStream serializedStream) throws Exception {
-    ObjectInputStream ois = new ObjectInputStream(serializedStream);
-    try {
-      while (true) {
-        System.out.println(ois.readObject());
-      }
-    }
-    catch (EOFException eofe) {
-    }
-  }
-
-  /**
-   * For a given class, contains its version number, the factory for creating the class loader to
-   * load this class, and the factory for creating the input stream from which to read objects
-   * created by this version of this class.
+   * For a given class, contains its version number, the URL from which to load this class, and the
+   * factory for creating the input stream from which to read objects created by this version of
+   * this class.
    * 
    * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
    */
   private static class VersionInfo {
 
     private final int versionNumber;
-    private final Factory<ClassLoader> classLoaderSource;
+    private final URL classesUrl;
     private final Factory<InputStream> serializedDataSource;
 
     /**
      * Creates a new VersionInfo.
      * 
      * @param versionNumber The version number of a class.
-     * @param classLoaderSource The factory for creating the class loader to load this class.
+     * @param classesUrl The URL of the JAR file or directory from which to load this class.
      * @param serializedDataSource The factory for creating the input stream from which to read in
      * objects created by this version of this class.
      */
-    public VersionInfo(int versionNumber, Factory<ClassLoader> classLoaderSource,
+    public VersionInfo(int versionNumber, URL classesUrl,
         Factory<InputStream> serializedDataSource) {
       this.versionNumber = versionNumber;
-      this.classLoaderSource = classLoaderSource;
+      this.classesUrl = classesUrl;
       this.serializedDataSource = serializedDataSource;
     }
 
@@ -0,0 +1,292 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link StudentArchive} and {@link StudentArchiveWriter}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestStudentArchive {
+
+  private static final int COUNT = 100000;
+
+  /** Small enough that the archive has hundreds of blocks. */
+  private static final int BLOCK_SIZE = 4096;
+
+  private static final int THREADS = 4;
+
+  private Path file;
+
+  /**
+   * Creates the file for the archive.
+   * 
+   * @throws Exception If the file could not be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    file = Files.createTempFile("students", ".archive");
+  }
+
+  /**
+   * Deletes the file for the archive.
+   * 
+   * @throws Exception If the file could not be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Tests that every student is read back in order, one block at a time, and that the blocks
+   * cover the archive.
+   * 
+   * @throws Exception If the archive could not be written or read.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    List<Student> students = getStudents();
+    write(students);
+    try (StudentArchive archive = StudentArchive.open(file)) {
+      assertEquals(COUNT, archive.getRecordCount());
+      assertEquals(BLOCK_SIZE, archive.getBlockSize());
+      assertEquals(StudentCodec.V2, archive.getVersion());
+      assertTrue("Too few blocks: " + archive.getBlockCount(), archive.getBlockCount() > 100);
+      assertEquals(StudentArchive.HEADER_LENGTH + (long) archive.getBlockCount()
+          * (BLOCK_SIZE + StudentArchive.INDEX_ENTRY_LENGTH) + StudentArchive.TRAILER_LENGTH,
+          Files.size(file));
+      int index = 0;
+      for (int block = 0; block < archive.getBlockCount(); block++) {
+        List<Student> decoded = archive.readBlock(block);
+        assertEquals(archive.getRecordCount(block), decoded.size());
+        for (Student student : decoded) {
+          assertEquals(students.get(index++).toString(), student.toString());
+        }
+      }
+      assertEquals(COUNT, index);
+    }
+  }
+
+  /**
+   * Tests that any student can be read on its own, including the first and last ones in a block.
+   * 
+   * @throws Exception If the archive could not be written or read.
+   */
+  @Test
+  public void testRandomAccess() throws Exception {
+    List<Student> students = getStudents();
+    write(students);
+    try (StudentArchive archive = StudentArchive.open(file)) {
+      long first = 0;
+      for (int block = 0; block < archive.getBlockCount(); block++) {
+        long last = first + archive.getRecordCount(block) - 1;
+        assertEquals(students.get((int) first).toString(), archive.get(first).toString());
+        assertEquals(students.get((int) last).toString(), archive.get(last).toString());
+        first = last + 1;
+      }
+      for (int i = 0; i < COUNT; i += 997) {
+        assertEquals(students.get(i).toString(), archive.get(i).toString());
+      }
+      try {
+        archive.get(COUNT);
+        fail("Read a student past the end of the archive");
+      }
+      catch (IndexOutOfBoundsException e) {
+        // Expected.
+      }
+    }
+  }
+
+  /**
+   * Tests that every block is decoded exactly once when the blocks are decoded on several threads.
+   * 
+   * @throws Exception If the archive could not be written or read.
+   */
+  @Test
+  public void testForEachBlock() throws Exception {
+    final List<Student> students = getStudents();
+    write(students);
+    try (final StudentArchive archive = StudentArchive.open(file)) {
+      final ConcurrentMap<Integer, List<Student>> blocks = new ConcurrentHashMap<>();
+      archive.forEachBlock(THREADS, new StudentArchive.BlockHandler() {
+
+        @Override
+        public void handle(int block, List<Student> decoded) {
+          assertEquals(null, blocks.putIfAbsent(block, decoded));
+        }
+
+      });
+      assertEquals(archive.getBlockCount(), blocks.size());
+      int index = 0;
+      for (int block = 0; block < archive.getBlockCount(); block++) {
+        for (Student student : blocks.get(block)) {
+          assertEquals(students.get(index++).toString(), student.toString());
+        }
+      }
+      assertEquals(COUNT, index);
+
+      try {
+        archive.forEachBlock(THREADS, new StudentArchive.BlockHandler() {
+
+          @Override
+          public void handle(int block, List<Student> decoded) throws IOException {
+            throw new IOException("Block " + block);
+          }
+
+        });
+        fail("Failure of handler was not reported");
+      }
+      catch (IOException e) {
+        assertTrue(e.getMessage().startsWith("Block "));
+      }
+    }
+  }
+
+  /**
+   * Tests that archives of Java serialized students, written by the old and the current versions
+   * of {@link Student}, can be imported.
+   * 
+   * @throws Exception If an archive could not be imported or read.
+   */
+  @Test
+  public void testImport() throws Exception {
+    for (String name : Arrays.asList("StudentV1.old", "StudentV2.old")) {
+      try (InputStream in = TestStudentArchive.class.getResourceAsStream(name)) {
+        long count = StudentArchiveWriter.importArchive(in, Files.newOutputStream(file),
+            BLOCK_SIZE);
+        assertTrue("No students in " + name, count > 0);
+      }
+      try (StudentArchive archive = StudentArchive.open(file)) {
+        assertTrue(archive.getRecordCount() > 0);
+        assertTrue(archive.get(0).getName() != null);
+      }
+    }
+
+    List<Student> students = getStudents();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oout = new ObjectOutputStream(out)) {
+      for (Student student : students) {
+        oout.writeObject(student);
+      }
+    }
+    assertEquals(COUNT, StudentArchiveWriter.importArchive(new ByteArrayInputStream(
+        out.toByteArray()), Files.newOutputStream(file), BLOCK_SIZE));
+    try (StudentArchive archive = StudentArchive.open(file)) {
+      assertEquals(COUNT, archive.getRecordCount());
+      assertEquals(students.get(COUNT - 1).toString(), archive.get(COUNT - 1).toString());
+    }
+
+    // A stream that ends in the middle must not leave behind an archive that opens.
+    byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() / 2);
+    try {
+      StudentArchiveWriter.importArchive(new ByteArrayInputStream(truncated),
+          Files.newOutputStream(file), BLOCK_SIZE);
+      fail("Imported a truncated archive");
+    }
+    catch (IOException e) {
+      // Expected.
+    }
+    assertNotOpened();
+  }
+
+  /**
+   * Tests that a student that does not fit in a block is rejected, and that archives with a damaged
+   * trailer or index are not opened.
+   * 
+   * @throws Exception If the archive could not be written.
+   */
+  @Test
+  public void testInvalid() throws Exception {
+    char[] name = new char[StudentArchiveWriter.MIN_BLOCK_SIZE];
+    Arrays.fill(name, 'a');
+    try (StudentArchiveWriter writer = new StudentArchiveWriter(Files.newOutputStream(file),
+        StudentArchiveWriter.MIN_BLOCK_SIZE)) {
+      writer.write(new Student("Student", ClassStanding.SENIOR));
+      writer.write(new Student(new String(name), ClassStanding.SENIOR));
+      fail("Wrote a student that does not fit in a block");
+    }
+    catch (IOException e) {
+      // Expected.
+    }
+
+    write(getStudents());
+    long size = Files.size(file);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.seek(size - 1);
+      raf.write(0);
+    }
+    assertNotOpened();
+
+    write(getStudents());
+    int blockCount;
+    try (StudentArchive archive = StudentArchive.open(file)) {
+      blockCount = archive.getBlockCount();
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      // The number of students in the second block.
+      raf.seek(size - StudentArchive.TRAILER_LENGTH - (blockCount - 1L)
+          * StudentArchive.INDEX_ENTRY_LENGTH + 8);
+      raf.writeInt(0);
+    }
+    assertNotOpened();
+  }
+
+  /** Asserts that the archive cannot be opened. */
+  private void assertNotOpened() {
+    try {
+      StudentArchive.open(file).close();
+      fail("Opened an invalid archive");
+    }
+    catch (StreamCorruptedException e) {
+      // Expected.
+    }
+    catch (IOException e) {
+      fail(e.toString());
+    }
+  }
+
+  /**
+   * Writes the given students to the archive file.
+   * 
+   * @param students The students.
+   * @throws Exception If the archive could not be written.
+   */
+  private void write(List<Student> students) throws Exception {
+    try (StudentArchiveWriter writer = new StudentArchiveWriter(Files.newOutputStream(file),
+        BLOCK_SIZE)) {
+      assertEquals(students.size(), writer.writeAll(students.iterator()));
+    }
+  }
+
+  /** @return Students with every class standing and names of different lengths. */
+  private static List<Student> getStudents() {
+    ClassStanding[] standings = ClassStanding.values();
+    List<Student> students = new ArrayList<>(COUNT);
+    for (int i = 0; i < COUNT; i++) {
+      students.add(new Student("Student " + Integer.toHexString(i * 31), standings[i
+          % standings.length]));
+    }
+    return students;
+  }
+
+}
@@ -0,0 +1,209 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests {@link StudentCodec}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestStudentCodec {
+
+  /**
+   * Tests that students written in the current layout are read back the same way as through Java
+   * serialization, from both a stream and a buffer.
+   * 
+   * @throws Exception If the students could not be written or read.
+   */
+  @Test
+  public void testV2MatchesSerialization() throws Exception {
+    List<Student> students = getStudents();
+    byte[] bytes = encode(StudentCodec.V2, students);
+    List<Student> expected = serializeAndDeserialize(students);
+
+    InputStream in = new ByteArrayInputStream(bytes);
+    StudentCodec codec = StudentCodec.readHeader(in);
+    assertEquals(StudentCodec.V2, codec.getVersion());
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    StudentCodec bufferCodec = StudentCodec.forHeader(buffer);
+    for (Student student : expected) {
+      assertEquals(student.toString(), codec.read(in).toString());
+      assertEquals(student.toString(), bufferCodec.read(buffer).toString());
+    }
+    assertNull(codec.read(in));
+    assertNull(bufferCodec.read(buffer));
+  }
+
+  /**
+   * Tests that graduate and unclassified students are read back as freshmen from the version 1
+   * layout, and that the version 1 layout is smaller.
+   * 
+   * @throws Exception If the students could not be written or read.
+   */
+  @Test
+  public void testV1() throws Exception {
+    List<Student> students = getStudents();
+    byte[] bytes = encode(StudentCodec.V1, students);
+    assertEquals(encode(StudentCodec.V2, students).length - students.size(), bytes.length);
+    InputStream in = new ByteArrayInputStream(bytes);
+    StudentCodec codec = StudentCodec.readHeader(in);
+    assertEquals(StudentCodec.V1, codec.getVersion());
+    for (Student student : students) {
+      ClassStanding standing = student.getClassStanding();
+      if (standing == ClassStanding.GRADUATE || standing == ClassStanding.UNCLASSIFIED) {
+        standing = ClassStanding.FRESHMAN;
+      }
+      Student read = codec.read(in);
+      assertEquals(student.getName(), read.getName());
+      assertEquals(standing, read.getClassStanding());
+    }
+    assertNull(codec.read(in));
+  }
+
+  /**
+   * Tests that the codec writes far fewer bytes than Java serialization.
+   * 
+   * @throws Exception If the students could not be written.
+   */
+  @Test
+  public void testSmallerThanSerialization() throws Exception {
+    List<Student> students = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      students.add(new Student("Student " + i, ClassStanding.values()[i
+          % ClassStanding.values().length]));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      for (Student student : students) {
+        oos.writeObject(student);
+      }
+    }
+    int codecLength = encode(StudentCodec.V2, students).length;
+    assertTrue(codecLength + " < " + out.size(), codecLength * 2 < out.size());
+  }
+
+  /**
+   * Tests that truncated and corrupted streams are rejected.
+   * 
+   * @throws Exception If the students could not be written.
+   */
+  @Test
+  public void testInvalidStreams() throws Exception {
+    byte[] bytes = encode(StudentCodec.V2, getStudents());
+    InputStream in = new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1));
+    StudentCodec codec = StudentCodec.readHeader(in);
+    try {
+      while (codec.read(in) != null) {
+        continue;
+      }
+      fail("Truncated stream should have been rejected.");
+    }
+    catch (EOFException e) {
+      // Expected.
+    }
+    // Record lengths that are negative or far too long, followed by a few bytes of the record.
+    byte[][] lengths = { { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F },
+        { (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x07 } };
+    for (byte[] length : lengths) {
+      byte[] corrupt = Arrays.copyOf(bytes, StudentCodec.HEADER_LENGTH + length.length + 3);
+      System.arraycopy(length, 0, corrupt, StudentCodec.HEADER_LENGTH, length.length);
+      in = new ByteArrayInputStream(corrupt);
+      codec = StudentCodec.readHeader(in);
+      try {
+        codec.read(in);
+        fail("Record length should have been rejected.");
+      }
+      catch (StreamCorruptedException e) {
+        // Expected.
+      }
+    }
+
+    bytes[0]++;
+    try {
+      StudentCodec.readHeader(new ByteArrayInputStream(bytes));
+      fail("Stream with the wrong magic number should have been rejected.");
+    }
+    catch (StreamCorruptedException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Writes the given students in the given layout.
+   * 
+   * @param version The layout.
+   * @param students The students.
+   * @return The bytes of the stream.
+   * @throws Exception If the students could not be written.
+   */
+  private static byte[] encode(int version, List<Student> students) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(version);
+    codec.writeHeader(out);
+    for (Student student : students) {
+      codec.write(student, out);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the given students through Java serialization and reads them back.
+   * 
+   * @param students The students.
+   * @return The students that were read back.
+   * @throws Exception If the students could not be written or read.
+   */
+  private static List<Student> serializeAndDeserialize(List<Student> students) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      for (Student student : students) {
+        oos.writeObject(student);
+      }
+    }
+    List<Student> read = new ArrayList<>();
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    try (ObjectInputStream ois = new ObjectInputStream(in)) {
+      for (int i = 0; i < students.size(); i++) {
+        read.add((Student) ois.readObject());
+      }
+    }
+    return read;
+  }
+
+  /**
+   * Returns a student with each class standing, with names of different lengths and scripts.
+   * 
+   * @return The students.
+   */
+  private static List<Student> getStudents() {
+    List<Student> students = new ArrayList<>();
+    String[] names = { "Yumi Adachi", "", "Rémi Étienne", "栃木 晴香" };
+    for (ClassStanding standing : ClassStanding.values()) {
+      for (String name : names) {
+        students.add(new Student(name, standing));
+      }
+    }
+    StringBuilder longName = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      longName.append("Aizawa ");
+    }
+    students.add(new Student(longName.toString(), ClassStanding.SENIOR));
+    return students;
+  }
+
+}
@@ -0,0 +1,143 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.collections15.Transformer;
+import org.junit.Test;
+
+/**
+ * Tests {@link StudentMigration}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestStudentMigration {
+
+  private static final int COUNT = 50000;
+
+  /**
+   * Tests that the version 1 archive is migrated to both formats and read back the same way as it
+   * is read directly with the current version of {@link Student}.
+   * 
+   * @throws Exception If the archive could not be migrated.
+   */
+  @Test
+  public void testVersion1Archive() throws Exception {
+    List<String> expected = new ArrayList<>();
+    try (StudentReader reader = new StudentReader(getVersion1Archive())) {
+      while (reader.hasNext()) {
+        expected.add(reader.next().toString());
+      }
+    }
+    for (StudentMigration.Format format : StudentMigration.Format.values()) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      MigrationProgress progress = new StudentMigration(format).migrate(getVersion1Archive(), out);
+      assertEquals(expected.size(), progress.getRecordCount());
+      assertEquals(expected, readAll(out.toByteArray()));
+    }
+  }
+
+  /**
+   * Tests that a large archive in the version 1 layout is migrated in order, transformed, and
+   * reported on as it goes.
+   * 
+   * @throws Exception If the archive could not be migrated.
+   */
+  @Test
+  public void testLargeArchive() throws Exception {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(StudentCodec.V1);
+    codec.writeHeader(in);
+    List<String> expected = new ArrayList<>();
+    ClassStanding[] standings = { ClassStanding.FRESHMAN, ClassStanding.SOPHOMORE,
+        ClassStanding.JUNIOR, ClassStanding.SENIOR };
+    for (int i = 0; i < COUNT; i++) {
+      Student student = new Student("student " + i, standings[i % standings.length]);
+      codec.write(student, in);
+      expected.add(new Student("STUDENT " + i, student.getClassStanding()).toString());
+    }
+
+    StudentMigration migration = new StudentMigration(StudentMigration.Format.SERIALIZED);
+    migration.setTransformer(new Transformer<Student, Student>() {
+      @Override
+      public Student transform(Student student) {
+        return new Student(student.getName().toUpperCase(), student.getClassStanding());
+      }
+    });
+    final List<MigrationProgress> reports = new ArrayList<>();
+    migration.setProgressListener(new StudentMigration.ProgressListener() {
+      @Override
+      public void progress(MigrationProgress progress) {
+        reports.add(progress);
+      }
+    }, COUNT / 10);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MigrationProgress progress =
+        migration.migrate(new ByteArrayInputStream(in.toByteArray()), out);
+    assertEquals(COUNT, progress.getRecordCount());
+    assertTrue(progress.isDone());
+    assertTrue(progress.getRecordsPerSecond() > 0);
+    assertEquals(expected, readAll(out.toByteArray()));
+
+    // One report for every tenth of the students, and one at the end.
+    assertEquals(11, reports.size());
+    for (int i = 0; i < reports.size() - 1; i++) {
+      assertTrue(reports.get(i).getRecordCount() <= reports.get(i + 1).getRecordCount());
+    }
+    assertTrue(reports.get(reports.size() - 1).isDone());
+  }
+
+  /**
+   * Tests that an archive that cannot be read fails the migration.
+   * 
+   * @throws Exception If the migration failed for another reason.
+   */
+  @Test
+  public void testCorruptArchive() throws Exception {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(StudentCodec.V1);
+    codec.writeHeader(in);
+    for (int i = 0; i < COUNT; i++) {
+      codec.write(new Student("student " + i, ClassStanding.JUNIOR), in);
+    }
+    // A record that names a class standing that does not exist.
+    in.write(new byte[] { 3, 100, 1, 1 });
+    try {
+      new StudentMigration(StudentMigration.Format.CODEC).migrate(new ByteArrayInputStream(
+          in.toByteArray()), new ByteArrayOutputStream());
+      fail("Migrated a corrupt archive");
+    }
+    catch (StreamCorruptedException e) {
+      // Expected.
+    }
+  }
+
+  /** @return A stream over the version 1 archive. */
+  private static InputStream getVersion1Archive() {
+    return TestStudentMigration.class.getResourceAsStream("StudentV1.old");
+  }
+
+  /**
+   * Reads every student in the given archive.
+   * 
+   * @param archive The archive.
+   * @return The string form of each student.
+   * @throws Exception If the archive could not be read.
+   */
+  private static List<String> readAll(byte[] archive) throws Exception {
+    List<String> students = new ArrayList<>();
+    try (StudentReader reader = new StudentReader(new ByteArrayInputStream(archive))) {
+      while (reader.hasNext()) {
+        students.add(reader.next().toString());
+      }
+    }
+    return students;
+  }
+
+}
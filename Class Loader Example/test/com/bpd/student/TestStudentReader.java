@@ -0,0 +1,198 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Tests {@link StudentReader}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestStudentReader {
+
+  private static final int COUNT = 10000;
+
+  /** The number of students written between two resets of an object output stream. */
+  private static final int RESET_INTERVAL = 1000;
+
+  /**
+   * Tests that every student in a stream written through Java serialization is read in order, and
+   * that the end of the stream is detected.
+   * 
+   * @throws Exception If the students could not be written or read.
+   */
+  @Test
+  public void testSerializedStream() throws Exception {
+    List<Student> students = getStudents();
+    assertStudents(students, new StudentReader(new ByteArrayInputStream(serialize(students))));
+  }
+
+  /**
+   * Tests that every student in a stream written by a codec is read in order, in both layouts.
+   * 
+   * @throws Exception If the students could not be written or read.
+   */
+  @Test
+  public void testCodecStream() throws Exception {
+    List<Student> students = getStudents();
+    assertStudents(students, new StudentReader(new ByteArrayInputStream(encode(students))));
+
+    List<Student> freshmen = new ArrayList<>();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(StudentCodec.V1);
+    codec.writeHeader(out);
+    for (Student student : students) {
+      codec.write(student, out);
+      ClassStanding standing = student.getClassStanding();
+      if (standing == ClassStanding.GRADUATE || standing == ClassStanding.UNCLASSIFIED) {
+        standing = ClassStanding.FRESHMAN;
+      }
+      freshmen.add(new Student(student.getName(), standing));
+    }
+    assertStudents(freshmen, new StudentReader(new ByteArrayInputStream(out.toByteArray())));
+  }
+
+  /**
+   * Tests that only the students with the given class standings are read from both formats.
+   * 
+   * @throws Exception If the students could not be written or read.
+   */
+  @Test
+  public void testFilter() throws Exception {
+    List<Student> students = getStudents();
+    Set<ClassStanding> standings = EnumSet.of(ClassStanding.JUNIOR, ClassStanding.GRADUATE);
+    List<Student> expected = new ArrayList<>();
+    for (Student student : students) {
+      if (standings.contains(student.getClassStanding())) {
+        expected.add(student);
+      }
+    }
+    assertStudents(expected, new StudentReader(new ByteArrayInputStream(serialize(students)),
+        standings));
+    assertStudents(expected, new StudentReader(new ByteArrayInputStream(encode(students)),
+        standings));
+    assertStudents(new ArrayList<Student>(), new StudentReader(new ByteArrayInputStream(
+        encode(students)), EnumSet.noneOf(ClassStanding.class)));
+  }
+
+  /**
+   * Tests that empty streams, with or without a header, have no students.
+   * 
+   * @throws Exception If the streams could not be read.
+   */
+  @Test
+  public void testEmpty() throws Exception {
+    List<Student> none = new ArrayList<>();
+    assertStudents(none, new StudentReader(new ByteArrayInputStream(new byte[0])));
+    assertStudents(none, new StudentReader(new ByteArrayInputStream(serialize(none))));
+    assertStudents(none, new StudentReader(new ByteArrayInputStream(encode(none))));
+  }
+
+  /**
+   * Tests that the version 1 archive that {@link TestStudent} deserializes can be read.
+   * 
+   * @throws Exception If the archive could not be read.
+   */
+  @Test
+  public void testVersion1Archive() throws Exception {
+    InputStream in = TestStudentReader.class.getResourceAsStream("StudentV1.old");
+    int count = 0;
+    try (StudentReader reader = new StudentReader(in)) {
+      while (reader.hasNext()) {
+        assertTrue(reader.next().getName() != null);
+        count++;
+      }
+    }
+    assertTrue("No students in archive", count > 0);
+  }
+
+  /**
+   * Asserts that the given reader returns the given students and then ends.
+   * 
+   * @param expected The students.
+   * @param reader The reader, which is closed afterwards.
+   * @throws Exception If the students could not be read.
+   */
+  private static void assertStudents(List<Student> expected, StudentReader reader)
+      throws Exception {
+    try {
+      for (Student student : expected) {
+        assertTrue(reader.hasNext());
+        assertEquals(student.toString(), reader.next().toString());
+      }
+      assertFalse(reader.hasNext());
+      assertFalse(reader.hasNext());
+      try {
+        reader.next();
+        fail("Read a student past the end of the stream");
+      }
+      catch (NoSuchElementException e) {
+        // Expected.
+      }
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Writes the given students through Java serialization, resetting the stream from time to time
+   * as a long archive would.
+   * 
+   * @param students The students.
+   * @return The serialized students.
+   * @throws Exception If the students could not be written.
+   */
+  private static byte[] serialize(List<Student> students) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oout = new ObjectOutputStream(out)) {
+      for (int i = 0; i < students.size(); i++) {
+        oout.writeObject(students.get(i));
+        if ((i + 1) % RESET_INTERVAL == 0) {
+          oout.reset();
+        }
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes the given students with a codec for the current layout.
+   * 
+   * @param students The students.
+   * @return The encoded students, header included.
+   * @throws Exception If the students could not be written.
+   */
+  private static byte[] encode(List<Student> students) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StudentCodec codec = new StudentCodec(StudentCodec.V2);
+    codec.writeHeader(out);
+    for (Student student : students) {
+      codec.write(student, out);
+    }
+    return out.toByteArray();
+  }
+
+  /** @return Students with every class standing. */
+  private static List<Student> getStudents() {
+    ClassStanding[] standings = ClassStanding.values();
+    List<Student> students = new ArrayList<>();
+    for (int i = 0; i < COUNT; i++) {
+      students.add(new Student("Student " + i, standings[i % standings.length]));
+    }
+    return students;
+  }
+
+}
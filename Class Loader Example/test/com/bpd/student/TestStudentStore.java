@@ -0,0 +1,128 @@
+package com.bpd.student;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests {@link StudentStore}.
+ * 
+ * @author BJ Peter DeLaCruz <bjpeter@hawaii.edu>
+ */
+public class TestStudentStore {
+
+  private static final int COUNT = 100000;
+
+  /** The number of students written between two resets of an object output stream. */
+  private static final int RESET_INTERVAL = 1000;
+
+  /** Tests that students are stored and read back, including null and non-ASCII values. */
+  @Test
+  public void testAddAndGet() {
+    List<Student> students = new ArrayList<>();
+    students.add(new Student("Yumi Adachi", ClassStanding.FRESHMAN));
+    students.add(new Student(null, ClassStanding.GRADUATE));
+    students.add(new Student("", null));
+    students.add(new Student("Kōhei 山田", ClassStanding.UNCLASSIFIED));
+    students.add(new Student("Rina Aizawa", ClassStanding.SENIOR));
+
+    StudentStore store = new StudentStore(0, 0);
+    for (int i = 0; i < students.size(); i++) {
+      assertEquals(i, store.add(students.get(i)));
+    }
+    assertEquals(students.size(), store.size());
+    int i = 0;
+    for (Student student : store) {
+      assertEquals(students.get(i).toString(), student.toString());
+      assertEquals(students.get(i).getName(), store.getName(i));
+      assertSame(students.get(i).getClassStanding(), store.getClassStanding(i));
+      i++;
+    }
+    assertNull(store.getName(1));
+    assertEquals("", store.getName(2));
+
+    StudentStore.View view = store.get(0);
+    view.moveTo(3);
+    assertEquals(3, view.getIndex());
+    assertEquals("Kōhei 山田", view.getName());
+    try {
+      view.moveTo(students.size());
+      fail("Moved a view past the end of the store");
+    }
+    catch (IndexOutOfBoundsException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Tests that a view is serialized as an ordinary student.
+   * 
+   * @throws Exception If the view could not be serialized.
+   */
+  @Test
+  public void testSerializeView() throws Exception {
+    StudentStore store = new StudentStore();
+    store.add(new Student("Sayaka Aizome", ClassStanding.JUNIOR));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(store.get(0));
+    }
+    try (ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      Student student = (Student) ois.readObject();
+      assertSame(Student.class, student.getClass());
+      assertEquals(store.get(0).toString(), student.toString());
+    }
+  }
+
+  /**
+   * Tests that a store is loaded from a serialized archive, with and without a filter. The memory
+   * that a store takes up is compared with a list of the same students by
+   * <code>StudentStoreFootprintBenchmark</code>.
+   * 
+   * @throws Exception If the archive could not be loaded.
+   */
+  @Test
+  public void testLoad() throws Exception {
+    ClassStanding[] standings = ClassStanding.values();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int seniorCount = 0;
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      for (int i = 0; i < COUNT; i++) {
+        String name = "Student " + i;
+        if (standings[i % standings.length] == ClassStanding.SENIOR) {
+          seniorCount++;
+        }
+        oos.writeObject(new Student(name, standings[i % standings.length]));
+        if ((i + 1) % RESET_INTERVAL == 0) {
+          oos.reset();
+        }
+      }
+    }
+    byte[] archive = out.toByteArray();
+
+    StudentStore store = StudentStore.load(new ByteArrayInputStream(archive));
+    assertEquals(COUNT, store.size());
+    for (int i = 0; i < COUNT; i += 997) {
+      assertEquals("Student " + i, store.getName(i));
+      assertSame(standings[i % standings.length], store.getClassStanding(i));
+    }
+
+    StudentStore seniors = StudentStore.load(new ByteArrayInputStream(archive),
+        EnumSet.of(ClassStanding.SENIOR));
+    assertEquals(seniorCount, seniors.size());
+    for (Student student : seniors) {
+      assertSame(ClassStanding.SENIOR, student.getClassStanding());
+    }
+  }
+
+}
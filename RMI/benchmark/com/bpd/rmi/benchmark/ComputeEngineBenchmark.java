@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.benchmark;
+
+import java.math.BigDecimal;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Measures executing tasks on a compute engine in the same JVM, i.e. the cost of handing a task to
+ * a worker thread and waiting for its results, without RMI. The PI cache is disabled so that every
+ * task is computed.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-D" + ComputeEngine.PI_CACHE_BYTES_PROPERTY + "=0")
+public class ComputeEngineBenchmark {
+
+  /** Digits of precision after the decimal point. */
+  @Param({ "10", "1000", "5000" })
+  public int digits;
+
+  private ComputeEngine engine;
+
+  /** Creates the compute engine. */
+  @Setup
+  public void setUp() {
+    engine = new ComputeEngine();
+  }
+
+  /** Shuts down the compute engine. */
+  @TearDown
+  public void tearDown() {
+    engine.shutdown();
+  }
+
+  /**
+   * @return PI computed by the compute engine.
+   * @throws RemoteException If the task could not be executed.
+   */
+  @Benchmark
+  public BigDecimal executePi() throws RemoteException {
+    return engine.executeTask(new Pi(digits));
+  }
+
+  /**
+   * @return The results of a task that does nothing, i.e. the overhead of the compute engine.
+   * @throws RemoteException If the task could not be executed.
+   */
+  @Benchmark
+  public Integer executeEmptyTask() throws RemoteException {
+    return engine.executeTask(new EmptyTask(digits));
+  }
+
+  /**
+   * A task that only returns its argument.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  static final class EmptyTask implements Task<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int value;
+
+    /**
+     * Creates a new EmptyTask.
+     * 
+     * @param value The value to return.
+     */
+    EmptyTask(int value) {
+      this.value = value;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer execute() {
+      return value;
+    }
+
+  }
+
+}
@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.benchmark;
+
+import java.math.BigDecimal;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.CostedTask;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Compares the worker pool of a compute engine with running each task on its own virtual thread,
+ * when many clients call the engine through RMI over loopback at the same time. Each client sends
+ * one task; most of them are short, and every {@value #LONG_TASK_INTERVAL}th one is long. One
+ * invocation is the time until all of the clients have their results. Both engines compute at most
+ * one task per processor at a time.
+ * <p>
+ * The tasks compute PI with {@link Pi#computePi(int)} but are not {@link Pi} tasks, which the
+ * engine would look up in its PI cache. Even with the cache emptied, identical {@link Pi} tasks
+ * that are in flight at the same time share one computation, so most clients would only wait for
+ * another client's task instead of having their own task computed.
+ * <p>
+ * The virtual thread mode needs Java 21 or later; on older runtimes it falls back to a platform
+ * thread per task, which is still worth comparing against the pool.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+public class ConcurrentClientsBenchmark {
+
+  private static final String NAME = "Compute";
+
+  /** Digits of precision after the decimal point for a short task. */
+  private static final int SHORT_DIGITS = 20;
+
+  /** Digits of precision after the decimal point for a long task. */
+  private static final int LONG_DIGITS = 2000;
+
+  /** Every this many clients, one sends a long task. */
+  private static final int LONG_TASK_INTERVAL = 100;
+
+  /** The port on which to create the registry. */
+  @Param({ "1099" })
+  public int port;
+
+  /** Number of clients calling the engine at the same time. */
+  @Param({ "1000", "10000" })
+  public int clients;
+
+  /** Whether the engine uses a worker pool or runs each task on its own virtual thread. */
+  @Param({ "pool", "virtual" })
+  public String mode;
+
+  private Registry registry;
+  private ComputeEngine engine;
+  private Compute compute;
+  private ExecutorService clientThreads;
+
+  /**
+   * Creates the registry, binds the compute engine, looks it up as a client would, and starts the
+   * client threads.
+   * 
+   * @throws Exception If the compute engine could not be bound or looked up.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    int processors = Runtime.getRuntime().availableProcessors();
+    if ("virtual".equals(mode)) {
+      engine = ComputeEngine.withVirtualThreads(processors);
+    }
+    else {
+      // The queue is large enough for every client, so that no task is rejected.
+      engine = new ComputeEngine(processors, clients);
+    }
+    registry = LocateRegistry.createRegistry(port);
+    registry.rebind(NAME, UnicastRemoteObject.exportObject(engine, 0));
+    compute = (Compute) LocateRegistry.getRegistry("localhost", port).lookup(NAME);
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(clients, clients, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "client");
+                thread.setDaemon(true);
+                return thread;
+              }
+
+            });
+    pool.prestartAllCoreThreads();
+    clientThreads = pool;
+  }
+
+  /**
+   * Stops the client threads, unbinds the compute engine, and shuts down the registry.
+   * 
+   * @throws Exception If the compute engine could not be unbound.
+   */
+  @TearDown
+  public void tearDown() throws Exception {
+    clientThreads.shutdownNow();
+    registry.unbind(NAME);
+    UnicastRemoteObject.unexportObject(engine, true);
+    UnicastRemoteObject.unexportObject(registry, true);
+    engine.shutdown();
+  }
+
+  /**
+   * @return The number of digits returned to all of the clients.
+   * @throws Exception If a task could not be executed.
+   */
+  @Benchmark
+  public long allClients() throws Exception {
+    List<Future<BigDecimal>> futures = new ArrayList<>(clients);
+    for (int i = 0; i < clients; i++) {
+      final PiTask task =
+          new PiTask(i % LONG_TASK_INTERVAL == 0 ? LONG_DIGITS : SHORT_DIGITS);
+      futures.add(clientThreads.submit(new Callable<BigDecimal>() {
+
+        @Override
+        public BigDecimal call() throws Exception {
+          return compute.executeTask(task);
+        }
+
+      }));
+    }
+    long digits = 0;
+    for (Future<BigDecimal> future : futures) {
+      digits += future.get().scale();
+    }
+    return digits;
+  }
+
+  /**
+   * Computes PI on the engine every time that it is executed, since it bypasses the PI cache. Its
+   * estimated cost is that of the equivalent {@link Pi} task, so that it is queued the same way.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class PiTask implements Task<BigDecimal>, CostedTask {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int digits;
+
+    /**
+     * Creates a new PiTask.
+     * 
+     * @param digits The number of digits after the decimal point.
+     */
+    private PiTask(int digits) {
+      this.digits = digits;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEstimatedCostNanos() {
+      return new Pi(digits).getEstimatedCostNanos();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public BigDecimal execute() {
+      return Pi.computePi(digits);
+    }
+
+  }
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bpd.rmi.api.Pi;
+
+/**
+ * Measures computing PI with Machin's formula, without the compute engine.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PiBenchmark {
+
+  /** Digits of precision after the decimal point. */
+  @Param({ "100", "1000", "5000", "20000" })
+  public int digits;
+
+  /** The arithmetic used to sum the power series. */
+  @Param({ "BIG_DECIMAL", "FIXED_POINT" })
+  public Pi.Kernel kernel;
+
+  /** @return PI computed sequentially with Machin's formula. */
+  @Benchmark
+  public BigDecimal computePi() {
+    return Pi.computePi(digits, 1, kernel);
+  }
+
+  /** @return PI computed with Machin's formula on all of the available processors. */
+  @Benchmark
+  public BigDecimal computePiParallel() {
+    return Pi.computePi(digits, Runtime.getRuntime().availableProcessors(), kernel);
+  }
+
+  /** @return The power series for arctan(1/5), the larger of the two series in PI. */
+  @Benchmark
+  public BigDecimal arctan() {
+    return kernel.arctan(5, digits + 5, 0, Integer.MAX_VALUE);
+  }
+
+}
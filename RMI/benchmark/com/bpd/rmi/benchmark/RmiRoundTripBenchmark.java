@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.benchmark;
+
+import java.math.BigDecimal;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.bpd.rmi.api.CompactBigDecimal;
+import com.bpd.rmi.api.CompactPi;
+import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Measures a full round trip through RMI: a compute engine is bound in a registry that is created
+ * in the benchmark JVM, and tasks are sent to the stub that is looked up from it over loopback. The
+ * PI cache is disabled so that every task is computed.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-D" + ComputeEngine.PI_CACHE_BYTES_PROPERTY + "=0")
+public class RmiRoundTripBenchmark {
+
+  private static final String NAME = "Compute";
+
+  /** The port on which to create the registry. */
+  @Param({ "1099" })
+  public int port;
+
+  /** Digits of precision after the decimal point. */
+  @Param({ "10", "1000", "5000" })
+  public int digits;
+
+  private Registry registry;
+  private ComputeEngine engine;
+  private Compute compute;
+
+  /**
+   * Creates the registry, binds the compute engine, and looks it up as a client would.
+   * 
+   * @throws Exception If the compute engine could not be bound or looked up.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    registry = LocateRegistry.createRegistry(port);
+    engine = new ComputeEngine();
+    registry.rebind(NAME, UnicastRemoteObject.exportObject(engine, 0));
+    compute = (Compute) LocateRegistry.getRegistry("localhost", port).lookup(NAME);
+  }
+
+  /**
+   * Unbinds the compute engine and shuts down the registry.
+   * 
+   * @throws Exception If the compute engine could not be unbound.
+   */
+  @TearDown
+  public void tearDown() throws Exception {
+    registry.unbind(NAME);
+    UnicastRemoteObject.unexportObject(engine, true);
+    UnicastRemoteObject.unexportObject(registry, true);
+    engine.shutdown();
+  }
+
+  /**
+   * @return PI computed by the remote compute engine.
+   * @throws RemoteException If the task could not be executed.
+   */
+  @Benchmark
+  public BigDecimal executePi() throws RemoteException {
+    return compute.executeTask(new Pi(digits));
+  }
+
+  /**
+   * @return PI computed by the remote compute engine, sent both ways in the compact wire format.
+   * @throws RemoteException If the task could not be executed.
+   */
+  @Benchmark
+  public CompactBigDecimal executeCompactPi() throws RemoteException {
+    return compute.executeTask(new CompactPi(new Pi(digits), false));
+  }
+
+  /**
+   * @return The results of a task that does nothing, i.e. the overhead of RMI and the engine.
+   * @throws RemoteException If the task could not be executed.
+   */
+  @Benchmark
+  public Integer executeEmptyTask() throws RemoteException {
+    return compute.executeTask(new ComputeEngineBenchmark.EmptyTask(digits));
+  }
+
+}
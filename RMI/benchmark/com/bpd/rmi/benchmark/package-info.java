@@ -0,0 +1,4 @@
+/**
+ * A package that contains JMH benchmarks for the sample RMI application.
+ */
+package com.bpd.rmi.benchmark;
@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A task for calculating PI to the specified precision using the Chudnovsky series. The terms of
+ * the series are combined by binary splitting on {@link BigInteger}s, so only one full-precision
+ * division and one full-precision square root are done, which makes this task much faster than
+ * {@link Pi} for large numbers of digits.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class ChudnovskyPi implements Task<BigDecimal>, CostedTask, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Constants used in PI computation. */
+  private static final BigInteger A = BigInteger.valueOf(13591409);
+  private static final BigInteger B = BigInteger.valueOf(545140134);
+  private static final BigInteger C3_OVER_24 = BigInteger.valueOf(640320).pow(3).divide(
+      BigInteger.valueOf(24));
+  private static final BigInteger SQRT_MULTIPLIER = BigInteger.valueOf(426880);
+  private static final BigInteger SQRT_ARGUMENT = BigInteger.valueOf(10005);
+
+  /** Number of extra digits to compute so that the last digit is rounded correctly. */
+  private static final int GUARD_DIGITS = 10;
+
+  /** Each term of the series adds slightly more than this many digits to the result. */
+  private static final int DIGITS_PER_TERM = 14;
+
+  /** Measured time for the series, divided by <code>digits * log2(digits)^2</code>. */
+  private static final double NANOS_PER_UNIT = 20;
+
+  /** Number of blocks of terms that are combined one after another when checkpointing. */
+  private static final int CHECKPOINT_BLOCKS = 64;
+
+  /** Digits of precision after the decimal point. */
+  private final int digits;
+
+  /**
+   * Constructs a task to calculate PI to the specified precision.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   */
+  public ChudnovskyPi(int digits) {
+    this.digits = digits;
+  }
+
+  /** @return The number of digits after the decimal point. */
+  public int getDigits() {
+    return digits;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEstimatedCostNanos() {
+    return estimateCostNanos(digits);
+  }
+
+  /**
+   * Estimates the time to compute the given number of digits. Binary splitting with fast
+   * multiplication takes time proportional to <code>digits * log(digits)^2</code>.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @return The estimated time in nanoseconds.
+   */
+  static long estimateCostNanos(int digits) {
+    double log2 = Math.log(Math.max(digits, 2)) / Math.log(2);
+    return (long) (NANOS_PER_UNIT * digits * log2 * log2);
+  }
+
+  /**
+   * Calculates PI.
+   * 
+   * @return PI computed to the given digits.
+   */
+  @Override
+  public BigDecimal execute() {
+    return computePi(this.digits);
+  }
+
+  /**
+   * Computes the value of PI to the specified number of digits after the decimal point. The value
+   * is computed using the Chudnovsky series
+   * 
+   * <code>1/pi = 12 * sum((-1)^k * (6k)! * (13591409 + 545140134k) /
+   * ((3k)! * (k!)^3 * 640320^(3k + 3/2)))</code>
+   * 
+   * with the terms of the series combined by binary splitting.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @return PI computed to the given digits.
+   */
+  public static BigDecimal computePi(int digits) {
+    int scale = digits + GUARD_DIGITS;
+    return finish(split(0, termCount(scale)), scale, digits);
+  }
+
+  /**
+   * Computes the value of PI to the specified number of digits after the decimal point, resuming
+   * from the given checkpoint if it holds one and saving the progress to it. The terms are split
+   * into {@value #CHECKPOINT_BLOCKS} blocks, each of which is combined by binary splitting and then
+   * with the blocks before it. Since P, Q, and T are exact integers, the result is the same as the
+   * one returned by {@link #computePi(int)} no matter where the computation was resumed.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @param checkpoint The checkpoint for the given number of digits.
+   * @return PI computed to the given digits.
+   */
+  public static BigDecimal computePi(int digits, PiCheckpoint checkpoint) {
+    int scale = digits + GUARD_DIGITS;
+    int terms = termCount(scale);
+    int blockTerms = Math.max(1, (terms + CHECKPOINT_BLOCKS - 1) / CHECKPOINT_BLOCKS);
+    Sum sum = null;
+    int done = 0;
+    PiCheckpoint.State saved = checkpoint.load();
+    if (saved != null && saved.getTerms() <= terms) {
+      sum = new Sum(saved.getP(), saved.getQ(), saved.getT());
+      done = saved.getTerms();
+    }
+    while (done < terms) {
+      int end = Math.min(terms, done + blockTerms);
+      Sum block = split(done, end);
+      sum = sum == null ? block : combine(sum, block);
+      done = end;
+      if (done < terms) {
+        checkpoint.offer(sum.toState(done));
+      }
+    }
+    return finish(sum, scale, digits);
+  }
+
+  /**
+   * Returns the number of terms of the series needed for the given scale.
+   * 
+   * @param scale The number of digits after the decimal point, including guard digits.
+   * @return The number of terms.
+   */
+  private static int termCount(int scale) {
+    return scale / DIGITS_PER_TERM + 2;
+  }
+
+  /**
+   * Computes PI from the combined terms of the series.
+   * 
+   * @param sum The combined terms of the series.
+   * @param scale The number of digits after the decimal point, including guard digits.
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @return PI computed to the given digits.
+   */
+  private static BigDecimal finish(Sum sum, int scale, int digits) {
+    BigInteger one = BigInteger.TEN.pow(scale);
+    BigInteger sqrt = sqrt(SQRT_ARGUMENT.multiply(one.multiply(one)));
+    BigInteger pi = sum.q.multiply(SQRT_MULTIPLIER).multiply(sqrt).divide(sum.t);
+    return new BigDecimal(pi, scale).setScale(digits, BigDecimal.ROUND_HALF_UP);
+  }
+
+  /**
+   * Combines the terms in the range [<code>a</code>, <code>b</code>) of the Chudnovsky series by
+   * recursively splitting the range in half.
+   * 
+   * @param a The index of the first term, inclusive.
+   * @param b The index of the last term, exclusive.
+   * @return The partial products and sum for the given range.
+   */
+  static Sum split(int a, int b) {
+    if (b - a == 1) {
+      if (a == 0) {
+        return new Sum(BigInteger.ONE, BigInteger.ONE, A);
+      }
+      long k = a;
+      BigInteger p =
+          BigInteger.valueOf(6 * k - 5).multiply(BigInteger.valueOf(2 * k - 1)).multiply(
+              BigInteger.valueOf(6 * k - 1));
+      BigInteger q = BigInteger.valueOf(k).pow(3).multiply(C3_OVER_24);
+      BigInteger t = p.multiply(A.add(B.multiply(BigInteger.valueOf(k))));
+      return new Sum(p, q, (a % 2) == 0 ? t : t.negate());
+    }
+    Pi.checkCancelled();
+    int m = (a + b) >>> 1;
+    return combine(split(a, m), split(m, b));
+  }
+
+  /**
+   * Combines two adjacent ranges of terms of the Chudnovsky series.
+   * 
+   * @param left The partial products and sum for the range [a, m).
+   * @param right The partial products and sum for the range [m, b).
+   * @return The partial products and sum for the range [a, b).
+   */
+  private static Sum combine(Sum left, Sum right) {
+    return new Sum(left.p.multiply(right.p), left.q.multiply(right.q), right.q.multiply(left.t)
+        .add(left.p.multiply(right.t)));
+  }
+
+  /**
+   * Computes the integer square root of the given number, i.e. the largest integer whose square is
+   * less than or equal to the given number. The square root of the upper half of the bits is
+   * computed first, which makes a single Newton step at full precision enough.
+   * 
+   * @param n The number, which must not be negative.
+   * @return The integer square root of the given number.
+   */
+  static BigInteger sqrt(BigInteger n) {
+    BigInteger root;
+    if (n.bitLength() <= 62) {
+      root = BigInteger.valueOf((long) Math.sqrt(n.doubleValue()));
+    }
+    else {
+      int shift = n.bitLength() / 4;
+      root = sqrt(n.shiftRight(2 * shift)).shiftLeft(shift);
+      root = root.add(n.divide(root)).shiftRight(1);
+    }
+    while (root.multiply(root).compareTo(n) > 0) {
+      root = root.subtract(BigInteger.ONE);
+    }
+    BigInteger next = root.add(BigInteger.ONE);
+    while (next.multiply(next).compareTo(n) <= 0) {
+      root = next;
+      next = root.add(BigInteger.ONE);
+    }
+    return root;
+  }
+
+  /**
+   * The values P, Q, and T that result from combining a range of terms of the Chudnovsky series.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  static final class Sum {
+
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger t;
+
+    /**
+     * Creates a new Sum.
+     * 
+     * @param p The product of the numerators of the factorial ratios.
+     * @param q The product of the denominators of the factorial ratios.
+     * @param t The sum of the terms scaled by Q.
+     */
+    private Sum(BigInteger p, BigInteger q, BigInteger t) {
+      this.p = p;
+      this.q = q;
+      this.t = t;
+    }
+
+    /**
+     * Returns the state of a computation that has combined the given number of terms into this sum.
+     * 
+     * @param terms The number of terms combined so far.
+     * @return The state of the computation.
+     */
+    PiCheckpoint.State toState(int terms) {
+      return new PiCheckpoint.State(terms, p, q, t);
+    }
+
+  }
+
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link BigDecimal} that is sent over the wire as its scale and the bytes of its unscaled value,
+ * without the class descriptors of {@link BigDecimal}, {@link BigInteger}, and {@link Number} that
+ * default serialization writes. If compression is requested, large values are deflated, but only if
+ * that actually makes them smaller; the digits of PI, for example, do not compress.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public final class CompactBigDecimal implements Externalizable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Values with at least this many bytes are deflated if compression is requested. */
+  public static final int COMPRESSION_THRESHOLD = 4096;
+
+  /**
+   * The largest number of bytes in a value, deflated or not, that is read; enough for PI to well
+   * over a hundred million digits. Larger lengths are taken to be corrupt rather than allocated.
+   */
+  public static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+  private static final byte RAW = 0;
+
+  private static final byte DEFLATED = 1;
+
+  private BigDecimal value;
+  private boolean isCompressed;
+
+  /**
+   * Creates an empty CompactBigDecimal; only used by deserialization.
+   */
+  public CompactBigDecimal() {
+    // Filled in by readExternal.
+  }
+
+  /**
+   * Creates a new CompactBigDecimal.
+   * 
+   * @param value The value to send.
+   * @param isCompressed True to deflate large values.
+   */
+  public CompactBigDecimal(BigDecimal value, boolean isCompressed) {
+    if (value == null) {
+      throw new IllegalArgumentException("value is null");
+    }
+    this.value = value;
+    this.isCompressed = isCompressed;
+  }
+
+  /** @return The value. */
+  public BigDecimal getValue() {
+    return value;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    byte[] bytes = value.unscaledValue().toByteArray();
+    out.writeInt(value.scale());
+    if (isCompressed && bytes.length >= COMPRESSION_THRESHOLD) {
+      byte[] deflated = deflate(bytes);
+      if (deflated.length < bytes.length) {
+        out.writeByte(DEFLATED);
+        out.writeInt(bytes.length);
+        out.writeInt(deflated.length);
+        out.write(deflated);
+        return;
+      }
+    }
+    out.writeByte(RAW);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException {
+    int scale = in.readInt();
+    byte encoding = in.readByte();
+    byte[] bytes;
+    if (encoding == DEFLATED) {
+      int length = readLength(in);
+      byte[] deflated = new byte[readLength(in)];
+      in.readFully(deflated);
+      bytes = inflate(deflated, length);
+      isCompressed = true;
+    }
+    else if (encoding == RAW) {
+      bytes = new byte[readLength(in)];
+      in.readFully(bytes);
+    }
+    else {
+      throw new InvalidObjectException("Unknown encoding: " + encoding);
+    }
+    if (bytes.length == 0) {
+      throw new InvalidObjectException("Empty value");
+    }
+    value = new BigDecimal(new BigInteger(bytes), scale);
+  }
+
+  /**
+   * Reads a length and checks that it is neither negative nor larger than {@link #MAX_LENGTH}.
+   * 
+   * @param in The stream to read from.
+   * @return The length.
+   * @throws IOException If the length could not be read or is out of range.
+   */
+  private static int readLength(ObjectInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_LENGTH) {
+      throw new InvalidObjectException("Invalid length: " + length);
+    }
+    return length;
+  }
+
+  /**
+   * Deflates the given bytes.
+   * 
+   * @param bytes The bytes to deflate.
+   * @return The deflated bytes.
+   */
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return out.toByteArray();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Inflates the given bytes.
+   * 
+   * @param deflated The bytes to inflate.
+   * @param length The number of bytes before they were deflated.
+   * @return The inflated bytes.
+   * @throws IOException If the bytes could not be inflated.
+   */
+  private static byte[] inflate(byte[] deflated, int length) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(deflated);
+      byte[] bytes = new byte[length];
+      int offset = 0;
+      while (offset < length && !inflater.finished()) {
+        int count = inflater.inflate(bytes, offset, length - offset);
+        if (count == 0 && inflater.needsDictionary()) {
+          // Would return 0 forever, since no dictionary is ever set.
+          throw new InvalidObjectException("Value needs a preset dictionary");
+        }
+        if (count == 0 && inflater.needsInput()) {
+          break;
+        }
+        offset += count;
+      }
+      if (offset != length) {
+        throw new InvalidObjectException("Expected " + length + " bytes but got " + offset);
+      }
+      return bytes;
+    }
+    catch (DataFormatException e) {
+      throw new InvalidObjectException("Corrupt value: " + e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof CompactBigDecimal && ((CompactBigDecimal) obj).value.equals(value);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return value.hashCode();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return value.toString();
+  }
+
+}
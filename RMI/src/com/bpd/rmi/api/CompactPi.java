@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+
+/**
+ * A task to compute PI that is sent over the wire as a few integers instead of with the class
+ * descriptors that default serialization writes for {@link Pi} and {@link Pi.Kernel}, and whose
+ * results are sent back as a {@link CompactBigDecimal}. It may only be sent to a compute engine
+ * that supports it; see {@link #isSupportedBy(Compute)}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public final class CompactPi implements Task<CompactBigDecimal>, CostedTask, Externalizable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The wire format version of compute engines that accept compact tasks. */
+  public static final int WIRE_FORMAT_VERSION = 1;
+
+  private Pi pi;
+  private boolean isCompressed;
+
+  /**
+   * Creates an empty CompactPi; only used by deserialization.
+   */
+  public CompactPi() {
+    // Filled in by readExternal.
+  }
+
+  /**
+   * Creates a new CompactPi.
+   * 
+   * @param pi The task to calculate PI.
+   * @param isCompressed True to deflate large results.
+   */
+  public CompactPi(Pi pi, boolean isCompressed) {
+    if (pi == null) {
+      throw new IllegalArgumentException("pi is null");
+    }
+    this.pi = pi;
+    this.isCompressed = isCompressed;
+  }
+
+  /** @return The task to calculate PI. */
+  public Pi getPi() {
+    return pi;
+  }
+
+  /** @return True if large results are deflated. */
+  public boolean isCompressed() {
+    return isCompressed;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEstimatedCostNanos() {
+    return pi.getEstimatedCostNanos();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public CompactBigDecimal execute() {
+    return new CompactBigDecimal(pi.execute(), isCompressed);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(pi.getDigits());
+    out.writeInt(pi.getParallelism());
+    out.writeByte(pi.getKernel().ordinal());
+    out.writeBoolean(isCompressed);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void readExternal(ObjectInput in) throws IOException {
+    int digits = in.readInt();
+    int parallelism = in.readInt();
+    int kernel = in.readByte();
+    // Any parallelism is valid; like Pi, 1 or less means sequential, e.g. 0 from older clients.
+    if (digits < 0 || kernel < 0 || kernel >= Pi.Kernel.values().length) {
+      throw new InvalidObjectException("Invalid task: " + digits + ", " + parallelism + ", "
+          + kernel);
+    }
+    pi = new Pi(digits, parallelism, Pi.Kernel.values()[kernel]);
+    isCompressed = in.readBoolean();
+  }
+
+  /**
+   * Returns true if the given compute engine accepts compact tasks. Compute engines that predate
+   * {@link Compute#getWireFormatVersion()} do not recognize the call, in which case false is
+   * returned, and tasks must be sent with default serialization.
+   * 
+   * @param compute The compute engine.
+   * @return True if the given compute engine accepts compact tasks.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  public static boolean isSupportedBy(Compute compute) throws RemoteException {
+    try {
+      return compute.getWireFormatVersion() >= WIRE_FORMAT_VERSION;
+    }
+    catch (ServerException e) {
+      if (e.getCause() instanceof UnmarshalException) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "CompactPi=[digits=" + pi.getDigits() + ", compressed=" + isCompressed + "]";
+  }
+
+}
@@ -16,7 +16,10 @@
 package com.bpd.rmi.api;
 
 import java.rmi.Remote;
+import java.math.BigDecimal;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 /**
  * The interface for the compute engine.
@@ -34,4 +37,97 @@ public interface Compute extends Remote {
    * @throws RemoteException If a communication or protocol error has occurred.
    */
   <T> T executeTask(Task<T> t) throws RemoteException;
+
+  /**
+   * Executes the given tasks in parallel in a single call.
+   * 
+   * @param <T> The data type of the results of the tasks.
+   * @param tasks The tasks to execute.
+   * @return The results of the given tasks, in the same order as the tasks.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  <T> List<T> executeTasks(List<? extends Task<T>> tasks) throws RemoteException;
+
+  /**
+   * Submits the given task for asynchronous execution and returns a stream over the digits of its
+   * result, which are sent in chunks of the given size.
+   * 
+   * @param t The task to execute.
+   * @param chunkSize The number of digits in each chunk.
+   * @return A stream over the digits of the result of the given task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  DigitStream streamTask(Task<BigDecimal> t, int chunkSize) throws RemoteException;
+
+  /**
+   * Submits the given task for asynchronous execution and returns immediately. Once the task is
+   * done, its results are kept until they are collected with {@link #awaitResult(TaskTicket, long)}
+   * or for a limited time set by the compute engine, after which the ticket is no longer valid.
+   * 
+   * @param <T> The data type of the result of this task.
+   * @param t The task to execute.
+   * @return A ticket used to poll for and get the results of the given task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  <T> TaskTicket<T> submitTask(Task<T> t) throws RemoteException;
+
+  /**
+   * Submits the given task for asynchronous execution with a deadline and returns immediately. If
+   * the task is not done within the given amount of time, it is cancelled, and a client that waits
+   * for it gets a {@link java.util.concurrent.CancellationException}. A task that is done in time
+   * keeps its results as with {@link #submitTask(Task)}, even after the deadline.
+   * 
+   * @param <T> The data type of the result of this task.
+   * @param t The task to execute.
+   * @param timeoutMillis The number of milliseconds after which the task is cancelled.
+   * @return A ticket used to poll for and get the results of the given task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  <T> TaskTicket<T> submitTask(Task<T> t, long timeoutMillis) throws RemoteException;
+
+  /**
+   * Cancels the task with the given ticket, interrupting it if it is running. A task that is
+   * waiting in the queue gives up its place at once. A client that waits for the ticket afterwards
+   * gets a {@link java.util.concurrent.CancellationException}.
+   * 
+   * @param ticket The ticket returned when the task was submitted.
+   * @return True if the task was cancelled, false if it was already done or the ticket is unknown.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  boolean cancelTask(TaskTicket<?> ticket) throws RemoteException;
+
+  /**
+   * Polls the task with the given ticket.
+   * 
+   * @param ticket The ticket returned when the task was submitted.
+   * @return True if the task is done, false otherwise.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  boolean isDone(TaskTicket<?> ticket) throws RemoteException;
+
+  /**
+   * Waits up to the given amount of time for the task with the given ticket to finish, and then
+   * returns its results. Once the results are returned, the ticket is no longer valid.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param ticket The ticket returned when the task was submitted.
+   * @param timeoutMillis The maximum number of milliseconds to wait.
+   * @return The results of the task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   * @throws TimeoutException If the task did not finish within the given amount of time. The ticket
+   * is still valid.
+   */
+  <T> T awaitResult(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException,
+      TimeoutException;
+
+  /**
+   * Returns the newest wire format that this compute engine accepts, e.g.
+   * {@link CompactPi#WIRE_FORMAT_VERSION} if it accepts {@link CompactPi} tasks. Compute engines
+   * that predate this method reject the call with an {@link java.rmi.UnmarshalException}; see
+   * {@link CompactPi#isSupportedBy(Compute)}.
+   * 
+   * @return The newest wire format that this compute engine accepts.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  int getWireFormatVersion() throws RemoteException;
 }
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+/**
+ * A task that can estimate how long it will take, so that the compute engine can run short tasks
+ * before long ones. Implementing this interface is optional; tasks that do not are treated as
+ * short.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public interface CostedTask {
+
+  /**
+   * Returns a rough estimate of the time that this task will take on one worker thread. Only the
+   * order of magnitude matters.
+   * 
+   * @return The estimated time in nanoseconds.
+   */
+  long getEstimatedCostNanos();
+
+}
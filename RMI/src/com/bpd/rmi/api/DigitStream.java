@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * A remote iterator over the digits of a large number computed by the compute engine. The digits
+ * are sent in chunks so that the client never needs to hold the whole number in memory.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public interface DigitStream extends Remote {
+
+  /**
+   * Waits up to the given amount of time for the number to be computed.
+   * 
+   * @param timeoutMillis The maximum number of milliseconds to wait.
+   * @return True if the number has been computed and {@link #nextChunk()} will not block, false
+   * otherwise.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  boolean awaitReady(long timeoutMillis) throws RemoteException;
+
+  /**
+   * Returns the next chunk of digits, waiting for the number to be computed if necessary. The first
+   * chunk contains the sign and the integer part of the number, if any.
+   * 
+   * @return The next chunk of digits, or null if there are no more digits.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  String nextChunk() throws RemoteException;
+
+  /**
+   * Releases the digits that have not been read yet.
+   * 
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  void close() throws RemoteException;
+
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.math.BigInteger;
+
+/**
+ * Computes the power series expansion for the arc tangent on fixed-point numbers that are stored as
+ * arrays of 32-bit words, most significant word first. The numerator and the current term are
+ * divided in place by small integers, so no objects are allocated per term, and the words that have
+ * become zero at the front of the numerator are skipped. Each division rounds half to even, which
+ * is exactly what {@link java.math.BigDecimal#divide(java.math.BigDecimal, int, int)} does in
+ * {@link Pi#arctan(int, int, int, int)}, so both return the same digits.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+final class FixedPointArctan {
+
+  private static final long WORD_MASK = 0xFFFFFFFFL;
+
+  /** Divisors must be less than this so that a remainder and the next word fit in a long. */
+  private static final long MAX_DIVISOR = Integer.MAX_VALUE;
+
+  /** Do not instantiate this class. */
+  private FixedPointArctan() {
+  }
+
+  /**
+   * Computes the sum of the terms in the range [<code>fromTerm</code>, <code>toTerm</code>) of the
+   * power series expansion for the arc tangent of the inverse of the supplied integer.
+   * 
+   * @param inverseX The inverse.
+   * @param scale The scale.
+   * @param fromTerm The index of the first term to add, inclusive.
+   * @param toTerm The index of the last term to add, exclusive.
+   * @return The sum of the terms in the given range, multiplied by 10^scale.
+   */
+  static BigInteger arctan(int inverseX, int scale, int fromTerm, int toTerm) {
+    long invX2 = 1L * inverseX * inverseX;
+    if (invX2 >= MAX_DIVISOR) {
+      throw new IllegalArgumentException("inverseX is too large: " + inverseX);
+    }
+    BigInteger one = BigInteger.TEN.pow(scale);
+    BigInteger first = BigInteger.valueOf(inverseX).pow(2 * fromTerm + 1);
+    BigInteger[] quotient = one.divideAndRemainder(first);
+    int length = one.bitLength() / 32 + 2;
+    int[] numer = toWords(quotient[0], length);
+    if (roundsUp(quotient[1].shiftLeft(1).compareTo(first), numer)) {
+      increment(numer);
+    }
+    int[] term = new int[length];
+    // Positive and negative terms are summed separately, so that neither sum can underflow.
+    int[] positive = new int[length];
+    int[] negative = new int[length];
+
+    int numerStart = firstNonZero(numer, 0);
+    int termStart = numerStart;
+    for (int i = fromTerm; i < toTerm && numerStart < length; i++) {
+      Pi.checkCancelled();
+      if (i > fromTerm) {
+        numerStart = divide(numer, numer, numerStart, invX2);
+      }
+      long denom = 2L * i + 1;
+      if (denom >= MAX_DIVISOR) {
+        throw new ArithmeticException("Too many terms: " + i);
+      }
+      // Clear the words of the previous term that are in front of the current numerator.
+      for (int j = termStart; j < numerStart; j++) {
+        term[j] = 0;
+      }
+      termStart = divide(numer, term, numerStart, denom);
+      if (termStart == length) {
+        break;
+      }
+      add((i % 2) == 0 ? positive : negative, term, termStart);
+    }
+    return toBigInteger(positive).subtract(toBigInteger(negative));
+  }
+
+  /**
+   * Divides the given dividend by the given divisor, rounding half to even, and stores the quotient
+   * in the given array, which may be the dividend itself. The words of the quotient in front of
+   * <code>start</code> must already be zero.
+   * 
+   * @param dividend The dividend.
+   * @param quotient The array in which to store the quotient.
+   * @param start The index of the first non-zero word of the dividend.
+   * @param divisor The divisor, which must be less than {@link #MAX_DIVISOR}.
+   * @return The index of the first non-zero word of the quotient, or the length of the quotient if
+   * it is zero.
+   */
+  private static int divide(int[] dividend, int[] quotient, int start, long divisor) {
+    long remainder = 0;
+    for (int i = start; i < dividend.length; i++) {
+      long current = (remainder << 32) | (dividend[i] & WORD_MASK);
+      long q = current / divisor;
+      quotient[i] = (int) q;
+      remainder = current - q * divisor;
+    }
+    int first = firstNonZero(quotient, start);
+    if (roundsUp(Long.compare(remainder << 1, divisor), quotient)) {
+      first = Math.min(first, increment(quotient));
+    }
+    return first;
+  }
+
+  /**
+   * Returns true if a quotient should be rounded up when rounding half to even.
+   * 
+   * @param comparison The result of comparing twice the remainder with the divisor.
+   * @param quotient The quotient.
+   * @return True if the quotient should be rounded up.
+   */
+  private static boolean roundsUp(int comparison, int[] quotient) {
+    return comparison > 0 || (comparison == 0 && (quotient[quotient.length - 1] & 1) != 0);
+  }
+
+  /**
+   * Adds one to the given number.
+   * 
+   * @param words The number.
+   * @return The index of the most significant word that was changed.
+   */
+  private static int increment(int[] words) {
+    int i = words.length - 1;
+    while (++words[i] == 0) {
+      i--;
+    }
+    return i;
+  }
+
+  /**
+   * Adds the given number to the given sum.
+   * 
+   * @param sum The sum.
+   * @param words The number to add.
+   * @param start The index of the first non-zero word of the number to add.
+   */
+  private static void add(int[] sum, int[] words, int start) {
+    long carry = 0;
+    for (int i = words.length - 1; i >= start; i--) {
+      carry += (sum[i] & WORD_MASK) + (words[i] & WORD_MASK);
+      sum[i] = (int) carry;
+      carry >>>= 32;
+    }
+    for (int i = start - 1; carry != 0; i--) {
+      carry += sum[i] & WORD_MASK;
+      sum[i] = (int) carry;
+      carry >>>= 32;
+    }
+  }
+
+  /**
+   * Returns the index of the first non-zero word of the given number.
+   * 
+   * @param words The number.
+   * @param start The index at which to start looking.
+   * @return The index of the first non-zero word, or the length of the number if it is zero.
+   */
+  private static int firstNonZero(int[] words, int start) {
+    int i = start;
+    while (i < words.length && words[i] == 0) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Converts the given non-negative number to an array of words.
+   * 
+   * @param value The number.
+   * @param length The number of words in the array.
+   * @return The array of words.
+   */
+  private static int[] toWords(BigInteger value, int length) {
+    int[] words = new int[length];
+    byte[] bytes = value.toByteArray();
+    // The first byte may only hold the sign bit, which is zero.
+    for (int i = 0; i < bytes.length && i / 4 < length; i++) {
+      words[length - 1 - i / 4] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i % 4));
+    }
+    return words;
+  }
+
+  /**
+   * Converts the given array of words to a non-negative number.
+   * 
+   * @param words The array of words.
+   * @return The number.
+   */
+  private static BigInteger toBigInteger(int[] words) {
+    byte[] bytes = new byte[words.length * 4];
+    for (int i = 0; i < words.length; i++) {
+      bytes[4 * i] = (byte) (words[i] >>> 24);
+      bytes[4 * i + 1] = (byte) (words[i] >>> 16);
+      bytes[4 * i + 2] = (byte) (words[i] >>> 8);
+      bytes[4 * i + 3] = (byte) words[i];
+    }
+    return new BigInteger(1, bytes);
+  }
+
+}
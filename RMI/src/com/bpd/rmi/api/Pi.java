@@ -17,32 +17,118 @@ package com.bpd.rmi.api;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
- * A task for calculating PI to the specified precision.
+ * A task for calculating PI to the specified precision. Machin's formula is used for small numbers
+ * of digits; {@link ChudnovskyPi} is used for {@value #CHUDNOVSKY_DIGITS} or more digits.
+ * <p>
+ * Every way of computing PI checks between terms whether the computing thread has been
+ * interrupted, and if so gives up with a {@link CancellationException}, so that a compute engine
+ * can cancel a task that is no longer wanted.
+ * <p>
+ * As a {@link SplittableTask}, a task for fewer than {@value #CHUDNOVSKY_DIGITS} digits splits the
+ * power series in Machin's formula into ranges of terms, so a compute engine can sum them on its own
+ * fork-join pool; its size is the number of terms. The Chudnovsky algorithm is not split.
  * 
  * @author BJ Peter DeLaCruz
  */
-public class Pi implements Task<BigDecimal>, Serializable {
+public class Pi implements SplittableTask<BigDecimal>, CostedTask, Serializable {
 
   private static final long serialVersionUID = 227L;
 
   /** Constants used in PI computation. */
   private static final BigDecimal FOUR = BigDecimal.valueOf(4);
 
+  /** Measured time for Machin's formula, divided by the square of the number of digits. */
+  private static final long MACHIN_NANOS_PER_SQUARED_DIGIT = 2;
+
   /** Rounding mode to use during PI computation. */
   private static final int ROUNDING_MODE = BigDecimal.ROUND_HALF_EVEN;
 
+  /** Number of digits at or above which {@link ChudnovskyPi} is used to calculate PI. */
+  public static final int CHUDNOVSKY_DIGITS = 10000;
+
+  /** Smallest number of series terms that a single fork-join task will compute on its own. */
+  private static final int MIN_TERMS_PER_TASK = 256;
+
   /** Digits of precision after the decimal point. */
   private final int digits;
 
+  /** Number of threads to use during PI computation; 1 or less computes PI sequentially. */
+  private final int parallelism;
+
+  /** The arithmetic used to sum the power series; null in tasks from older clients. */
+  private final Kernel kernel;
+
   /**
    * Constructs a task to calculate PI to the specified precision.
    * 
    * @param digits The precision, i.e. the number of digits after the decimal point.
    */
   public Pi(int digits) {
+    this(digits, 1);
+  }
+
+  /**
+   * Constructs a task to calculate PI to the specified precision using the given number of threads.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @param parallelism The number of threads to use; 1 or less computes PI sequentially.
+   */
+  public Pi(int digits, int parallelism) {
+    this(digits, parallelism, Kernel.BIG_DECIMAL);
+  }
+
+  /**
+   * Constructs a task to calculate PI to the specified precision using the given number of threads
+   * and the given arithmetic.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @param parallelism The number of threads to use; 1 or less computes PI sequentially.
+   * @param kernel The arithmetic used to sum the power series for the arc tangent.
+   */
+  public Pi(int digits, int parallelism, Kernel kernel) {
+    if (kernel == null) {
+      throw new IllegalArgumentException("kernel is null");
+    }
     this.digits = digits;
+    this.parallelism = parallelism;
+    this.kernel = kernel;
+  }
+
+  /** @return The number of digits after the decimal point. */
+  public int getDigits() {
+    return digits;
+  }
+
+  /** @return The number of threads to use during PI computation. */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /** @return The arithmetic used to sum the power series for the arc tangent. */
+  public Kernel getKernel() {
+    return kernel == null ? Kernel.BIG_DECIMAL : kernel;
+  }
+
+  /**
+   * {@inheritDoc} Machin's formula takes time proportional to the square of the number of digits,
+   * divided among the threads.
+   */
+  @Override
+  public long getEstimatedCostNanos() {
+    if (digits >= CHUDNOVSKY_DIGITS) {
+      return ChudnovskyPi.estimateCostNanos(digits);
+    }
+    return MACHIN_NANOS_PER_SQUARED_DIGIT * digits * digits / Math.max(1, parallelism);
   }
 
   /**
@@ -52,7 +138,82 @@ public class Pi implements Task<BigDecimal>, Serializable {
    */
   @Override
   public BigDecimal execute() {
-    return computePi(this.digits);
+    if (this.digits >= CHUDNOVSKY_DIGITS) {
+      return ChudnovskyPi.computePi(this.digits);
+    }
+    return computePi(this.digits, this.parallelism, getKernel());
+  }
+
+  /** {@inheritDoc} This is the number of terms in both power series in Machin's formula. */
+  @Override
+  public long getSize() {
+    int scale = digits + 5;
+    return (long) termCount(5, scale) + termCount(239, scale);
+  }
+
+  /**
+   * Splits the power series in Machin's formula into two ranges of about the same number of terms.
+   * 
+   * @return The ranges, or an empty list if {@link #execute()} would use {@link ChudnovskyPi}.
+   */
+  @Override
+  public List<PiSeriesRange> split() {
+    if (digits >= CHUDNOVSKY_DIGITS) {
+      return Collections.emptyList();
+    }
+    return split(2);
+  }
+
+  /**
+   * Splits the power series in Machin's formula into the given number of ranges of about the same
+   * number of terms, so that the ranges can be summed on different compute engines. The results of
+   * the ranges are combined by {@link #merge(List)}. Splitting always uses Machin's formula, even if
+   * {@link #execute()} would use {@link ChudnovskyPi}.
+   * 
+   * @param parts The number of ranges.
+   * @return The ranges, which together contain all of the terms of both power series.
+   */
+  public List<PiSeriesRange> split(int parts) {
+    if (parts < 1) {
+      throw new IllegalArgumentException("parts must be at least 1: " + parts);
+    }
+    int scale = digits + 5;
+    int terms5 = termCount(5, scale);
+    int totalTerms = terms5 + termCount(239, scale);
+    List<PiSeriesRange> ranges = new ArrayList<>(parts);
+    for (int i = 0; i < parts; i++) {
+      // Both series are laid end to end, and each range takes an equal share of the terms.
+      int from = (int) (1L * i * totalTerms / parts);
+      int to = (int) (1L * (i + 1) * totalTerms / parts);
+      int from5 = Math.min(from, terms5);
+      int to5 = Math.min(to, terms5);
+      int from239 = Math.max(from, terms5) - terms5;
+      int to239 = Math.max(to, terms5) - terms5;
+      // The term counts are only estimates, so the last range of each series is open-ended.
+      if (to5 == terms5 && from5 < to5) {
+        to5 = Integer.MAX_VALUE;
+      }
+      if (i == parts - 1) {
+        to239 = Integer.MAX_VALUE;
+      }
+      ranges.add(new PiSeriesRange(getKernel(), scale, from5, to5, from239, to239));
+    }
+    return ranges;
+  }
+
+  /**
+   * Combines the results of the ranges returned by {@link #split()} or {@link #split(int)}.
+   * 
+   * @param partialSums The results of all of the ranges, in any order.
+   * @return PI computed to the given digits.
+   */
+  @Override
+  public BigDecimal merge(List<BigDecimal> partialSums) {
+    BigDecimal pi = BigDecimal.ZERO;
+    for (BigDecimal partialSum : partialSums) {
+      pi = pi.add(partialSum);
+    }
+    return pi.setScale(digits, BigDecimal.ROUND_HALF_UP);
   }
 
   /**
@@ -74,6 +235,96 @@ public class Pi implements Task<BigDecimal>, Serializable {
     return pi.setScale(digits, BigDecimal.ROUND_HALF_UP);
   }
 
+  /**
+   * Computes the value of PI to the specified number of digits after the decimal point using a
+   * fork-join pool with the given parallelism. Both arctangents are computed at the same time, and
+   * the terms of each power series are split into ranges that are summed independently. The result
+   * is the same as the one returned by {@link #computePi(int)}.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @param parallelism The number of threads to use; 1 or less computes PI sequentially.
+   * @return PI computed to the given digits.
+   */
+  public static BigDecimal computePi(int digits, int parallelism) {
+    return computePi(digits, parallelism, Kernel.BIG_DECIMAL);
+  }
+
+  /**
+   * Computes the value of PI to the specified number of digits after the decimal point using the
+   * given number of threads and the given arithmetic. Every combination of parallelism and kernel
+   * returns the same digits as {@link #computePi(int)}.
+   * 
+   * @param digits The precision, i.e. the number of digits after the decimal point.
+   * @param parallelism The number of threads to use; 1 or less computes PI sequentially.
+   * @param kernel The arithmetic used to sum the power series for the arc tangent.
+   * @return PI computed to the given digits.
+   */
+  public static BigDecimal computePi(int digits, int parallelism, Kernel kernel) {
+    if (parallelism <= 1 && kernel == Kernel.BIG_DECIMAL) {
+      return computePi(digits);
+    }
+    int scale = digits + 5;
+    if (parallelism <= 1) {
+      BigDecimal arctan1_5 = kernel.arctan(5, scale, 0, Integer.MAX_VALUE);
+      BigDecimal arctan1_239 = kernel.arctan(239, scale, 0, Integer.MAX_VALUE);
+      BigDecimal pi = arctan1_5.multiply(FOUR).subtract(arctan1_239).multiply(FOUR);
+      return pi.setScale(digits, BigDecimal.ROUND_HALF_UP);
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      ForkJoinTask<BigDecimal> arctan1_239 =
+          pool.submit(ArctanTask.create(kernel, 239, scale, parallelism));
+      ForkJoinTask<BigDecimal> arctan1_5 =
+          pool.submit(ArctanTask.create(kernel, 5, scale, parallelism));
+      BigDecimal pi = join(arctan1_5).multiply(FOUR).subtract(join(arctan1_239)).multiply(FOUR);
+      return pi.setScale(digits, BigDecimal.ROUND_HALF_UP);
+    }
+    finally {
+      // Interrupts the workers if the computation was cancelled; otherwise they are already idle.
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the given fork-join task and returns its result. Unlike
+   * {@link ForkJoinTask#join()}, the wait can be interrupted.
+   * 
+   * @param task The task.
+   * @return The result of the task.
+   * @throws CancellationException If the current thread was interrupted while waiting.
+   */
+  private static BigDecimal join(ForkJoinTask<BigDecimal> task) {
+    try {
+      return task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Computation of PI was cancelled");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Gives up on the current computation if the current thread has been interrupted. The interrupt
+   * status is left as is.
+   * 
+   * @throws CancellationException If the current thread has been interrupted.
+   */
+  static void checkCancelled() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Computation of PI was cancelled");
+    }
+  }
+
   /**
    * Computes the value, in radians, of the arctangent of the inverse of the supplied integer to the
    * specified number of digits after the decimal point. The value is computed using the power
@@ -96,6 +347,7 @@ public class Pi implements Task<BigDecimal>, Serializable {
     result = numer;
     int i = 1;
     do {
+      checkCancelled();
       numer = numer.divide(invX2, scale, ROUNDING_MODE);
       int denom = 2 * i + 1;
       term = numer.divide(BigDecimal.valueOf(denom), scale, ROUNDING_MODE);
@@ -110,4 +362,170 @@ public class Pi implements Task<BigDecimal>, Serializable {
     while (term.compareTo(BigDecimal.ZERO) != 0);
     return result;
   }
+
+  /**
+   * Computes the sum of the terms in the range [<code>fromTerm</code>, <code>toTerm</code>) of the
+   * power series expansion for the arc tangent of the inverse of the supplied integer, where term 0
+   * is <code>x</code>, term 1 is <code>-(x^3)/3</code>, and so on. The summation stops early once a
+   * term is zero at the given scale, since all of the terms that follow it are also zero.
+   * 
+   * @param inverseX The inverse.
+   * @param scale The scale.
+   * @param fromTerm The index of the first term to add, inclusive.
+   * @param toTerm The index of the last term to add, exclusive.
+   * @return The sum of the terms in the given range.
+   */
+  public static BigDecimal arctan(int inverseX, int scale, int fromTerm, int toTerm) {
+    BigDecimal result = BigDecimal.ZERO;
+    BigDecimal invX2 = BigDecimal.valueOf(1L * inverseX * inverseX);
+    BigDecimal numer =
+        BigDecimal.ONE.divide(BigDecimal.valueOf(inverseX).pow(2 * fromTerm + 1), scale,
+            ROUNDING_MODE);
+    for (int i = fromTerm; i < toTerm; i++) {
+      checkCancelled();
+      if (i > fromTerm) {
+        numer = numer.divide(invX2, scale, ROUNDING_MODE);
+      }
+      BigDecimal term = numer.divide(BigDecimal.valueOf(2L * i + 1), scale, ROUNDING_MODE);
+      if (term.signum() == 0) {
+        break;
+      }
+      if ((i % 2) == 0) {
+        result = result.add(term);
+      }
+      else {
+        result = result.subtract(term);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns an estimate of the number of terms in the power series expansion for the arc tangent of
+   * the inverse of the supplied integer that are not zero at the given scale.
+   * 
+   * @param inverseX The inverse.
+   * @param scale The scale.
+   * @return The estimated number of terms.
+   */
+  static int termCount(int inverseX, int scale) {
+    return (int) Math.ceil(scale / (2 * Math.log10(inverseX))) + 1;
+  }
+
+  /**
+   * The arithmetic used to sum the power series expansion for the arc tangent.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  public enum Kernel {
+
+    /** {@link BigDecimal} division at a fixed scale for every term. */
+    BIG_DECIMAL {
+
+      @Override
+      public BigDecimal arctan(int inverseX, int scale, int fromTerm, int toTerm) {
+        return Pi.arctan(inverseX, scale, fromTerm, toTerm);
+      }
+
+    },
+    /** Fixed-point arithmetic that divides arrays of words in place; see {@link FixedPointArctan}. */
+    FIXED_POINT {
+
+      @Override
+      public BigDecimal arctan(int inverseX, int scale, int fromTerm, int toTerm) {
+        return new BigDecimal(FixedPointArctan.arctan(inverseX, scale, fromTerm, toTerm), scale);
+      }
+
+    };
+
+    /**
+     * Computes the sum of a range of terms of the power series expansion for the arc tangent of
+     * the inverse of the supplied integer.
+     * 
+     * @param inverseX The inverse.
+     * @param scale The scale.
+     * @param fromTerm The index of the first term to add, inclusive.
+     * @param toTerm The index of the last term to add, exclusive.
+     * @return The sum of the terms in the given range.
+     */
+    public abstract BigDecimal arctan(int inverseX, int scale, int fromTerm, int toTerm);
+
+  }
+
+  /**
+   * A fork-join task that sums a range of terms of the power series expansion for an arc tangent,
+   * splitting the range in half until it is small enough to be summed by a single thread.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class ArctanTask extends RecursiveTask<BigDecimal> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Kernel kernel;
+    private final int inverseX;
+    private final int scale;
+    private final int fromTerm;
+    private final int toTerm;
+    private final int termsPerTask;
+    private final boolean isLastRange;
+
+    /**
+     * Creates a new ArctanTask.
+     * 
+     * @param kernel The arithmetic used to sum the terms.
+     * @param inverseX The inverse.
+     * @param scale The scale.
+     * @param fromTerm The index of the first term to add, inclusive.
+     * @param toTerm The index of the last term to add, exclusive.
+     * @param termsPerTask The largest number of terms to sum without splitting the range.
+     * @param isLastRange True if this range contains the last term of the series.
+     */
+    private ArctanTask(Kernel kernel, int inverseX, int scale, int fromTerm, int toTerm,
+        int termsPerTask, boolean isLastRange) {
+      this.kernel = kernel;
+      this.inverseX = inverseX;
+      this.scale = scale;
+      this.fromTerm = fromTerm;
+      this.toTerm = toTerm;
+      this.termsPerTask = termsPerTask;
+      this.isLastRange = isLastRange;
+    }
+
+    /**
+     * Creates a task that sums all of the terms of the power series expansion for the arc tangent
+     * of the inverse of the supplied integer.
+     * 
+     * @param kernel The arithmetic used to sum the terms.
+     * @param inverseX The inverse.
+     * @param scale The scale.
+     * @param parallelism The number of threads that will sum the terms.
+     * @return The task.
+     */
+    static ArctanTask create(Kernel kernel, int inverseX, int scale, int parallelism) {
+      int terms = termCount(inverseX, scale);
+      // Create a few ranges per thread so that idle threads can steal work.
+      int termsPerTask = Math.max(MIN_TERMS_PER_TASK, terms / (4 * parallelism));
+      return new ArctanTask(kernel, inverseX, scale, 0, terms, termsPerTask, true);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected BigDecimal compute() {
+      if (toTerm - fromTerm <= termsPerTask) {
+        // The term count is only an estimate, so keep going until the series has converged.
+        int to = isLastRange ? Integer.MAX_VALUE : toTerm;
+        return kernel.arctan(inverseX, scale, fromTerm, to);
+      }
+      int middle = (fromTerm + toTerm) >>> 1;
+      ArctanTask left =
+          new ArctanTask(kernel, inverseX, scale, fromTerm, middle, termsPerTask, false);
+      ArctanTask right =
+          new ArctanTask(kernel, inverseX, scale, middle, toTerm, termsPerTask, isLastRange);
+      left.fork();
+      BigDecimal sum = right.compute();
+      return left.join().add(sum);
+    }
+
+  }
 }
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Saves the state of a long computation of PI by {@link ChudnovskyPi} to memory-mapped files, so
+ * that the computation can resume from its last checkpoint after the JVM is restarted. The state is
+ * the number of terms of the series that have been combined so far and the values P, Q, and T that
+ * they combine to.
+ * <p>
+ * The computing thread only hands the latest state to a background thread, at most once per
+ * interval, and goes on; the background thread writes it. The state is written to two files in
+ * turn, each with a sequence number and a checksum, so a crash while writing one file leaves the
+ * previous checkpoint in the other file intact.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public final class PiCheckpoint implements Closeable {
+
+  private static final int MAGIC = 0x50494350;
+
+  private static final int VERSION = 1;
+
+  /** Magic, version, digits, sequence, terms, checksum, and the lengths of P, Q, and T. */
+  private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4 + 8 + 4 + 4 + 4;
+
+  private final File[] files;
+  private final int digits;
+  private final long intervalMillis;
+  private final ExecutorService writer;
+  private final AtomicReference<State> pending = new AtomicReference<>();
+  /** The sequence number of the next checkpoint; only used by the writer thread after loading. */
+  private long sequence;
+  /** The time of the last checkpoint handed to the writer; only used by the computing thread. */
+  private long lastOfferMillis;
+  private volatile IOException failure;
+
+  /**
+   * Creates a new PiCheckpoint. Nothing is read or written until the checkpoint is used.
+   * 
+   * @param directory The directory in which to keep the checkpoint files.
+   * @param digits The number of digits of PI being computed, which identifies the files.
+   * @param intervalMillis The minimum number of milliseconds between two checkpoints.
+   */
+  public PiCheckpoint(File directory, int digits, long intervalMillis) {
+    if (directory == null) {
+      throw new IllegalArgumentException("directory is null");
+    }
+    this.files =
+        new File[] { new File(directory, "pi-" + digits + ".0.checkpoint"),
+            new File(directory, "pi-" + digits + ".1.checkpoint") };
+    this.digits = digits;
+    this.intervalMillis = intervalMillis;
+    this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "PiCheckpoint-" + PiCheckpoint.this.digits);
+        thread.setDaemon(true);
+        return thread;
+      }
+
+    });
+  }
+
+  /** @return The error that stopped checkpoints from being written, or null if there is none. */
+  public IOException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Reads the newest valid checkpoint for the number of digits being computed.
+   * 
+   * @return The newest valid checkpoint, or null if there is none.
+   */
+  State load() {
+    State newest = null;
+    long newestSequence = -1;
+    for (File file : files) {
+      if (!file.isFile()) {
+        continue;
+      }
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        long fileSequence = readSequence(buffer);
+        if (fileSequence > newestSequence) {
+          State state = read(buffer);
+          if (state != null) {
+            newest = state;
+            newestSequence = fileSequence;
+          }
+        }
+      }
+      catch (IOException e) {
+        // An unreadable file is no checkpoint; the other file may still be good.
+        continue;
+      }
+    }
+    sequence = newestSequence + 1;
+    return newest;
+  }
+
+  /**
+   * Hands the given state to the background thread to be written, unless the last checkpoint was
+   * less than the interval ago. Only the latest state is written if the background thread falls
+   * behind.
+   * 
+   * @param state The state of the computation.
+   */
+  void offer(State state) {
+    long now = System.currentTimeMillis();
+    if (failure != null || now - lastOfferMillis < intervalMillis) {
+      return;
+    }
+    lastOfferMillis = now;
+    if (pending.getAndSet(state) == null) {
+      writer.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          State latest = pending.getAndSet(null);
+          if (latest == null) {
+            return;
+          }
+          try {
+            save(latest);
+          }
+          catch (IOException e) {
+            failure = e;
+          }
+        }
+
+      });
+    }
+  }
+
+  /**
+   * Writes the given state to the older of the two files.
+   * 
+   * @param state The state of the computation.
+   * @throws IOException If the state could not be written.
+   */
+  void save(State state) throws IOException {
+    byte[] p = state.p.toByteArray();
+    byte[] q = state.q.toByteArray();
+    byte[] t = state.t.toByteArray();
+    long size = (long) HEADER_BYTES + p.length + q.length + t.length;
+    File file = files[(int) (sequence % 2)];
+    try (FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      if (channel.size() > size) {
+        channel.truncate(size);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(digits).putLong(sequence).putInt(state.terms);
+      buffer.putLong(checksum(sequence, state.terms, p, q, t));
+      buffer.putInt(p.length).putInt(q.length).putInt(t.length);
+      buffer.put(p).put(q).put(t);
+      buffer.force();
+    }
+    sequence++;
+  }
+
+  /**
+   * Returns the sequence number of the checkpoint in the given buffer.
+   * 
+   * @param buffer The contents of a checkpoint file.
+   * @return The sequence number, or -1 if the buffer does not hold a checkpoint of this version for
+   * the number of digits being computed.
+   */
+  private long readSequence(ByteBuffer buffer) {
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != VERSION || buffer.getInt(8) != digits) {
+      return -1;
+    }
+    return buffer.getLong(12);
+  }
+
+  /**
+   * Reads the checkpoint in the given buffer.
+   * 
+   * @param buffer The contents of a checkpoint file.
+   * @return The state of the computation, or null if the checkpoint is incomplete or corrupt.
+   */
+  private static State read(ByteBuffer buffer) {
+    buffer.position(12);
+    long fileSequence = buffer.getLong();
+    int terms = buffer.getInt();
+    long checksum = buffer.getLong();
+    int pLength = buffer.getInt();
+    int qLength = buffer.getInt();
+    int tLength = buffer.getInt();
+    if (terms <= 0 || pLength <= 0 || qLength <= 0 || tLength <= 0
+        || (long) pLength + qLength + tLength != buffer.remaining()) {
+      return null;
+    }
+    byte[] p = new byte[pLength];
+    byte[] q = new byte[qLength];
+    byte[] t = new byte[tLength];
+    buffer.get(p).get(q).get(t);
+    if (checksum(fileSequence, terms, p, q, t) != checksum) {
+      return null;
+    }
+    return new State(terms, new BigInteger(p), new BigInteger(q), new BigInteger(t));
+  }
+
+  /**
+   * Computes the checksum of a checkpoint.
+   * 
+   * @param fileSequence The sequence number of the checkpoint.
+   * @param terms The number of terms combined so far.
+   * @param p The bytes of P.
+   * @param q The bytes of Q.
+   * @param t The bytes of T.
+   * @return The checksum.
+   */
+  private static long checksum(long fileSequence, int terms, byte[] p, byte[] q, byte[] t) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(12).putLong(fileSequence).putInt(terms).array());
+    crc.update(p);
+    crc.update(q);
+    crc.update(t);
+    return crc.getValue();
+  }
+
+  /**
+   * Waits for the checkpoint that is being written, if any, and stops the background thread.
+   */
+  @Override
+  public void close() {
+    writer.shutdown();
+    boolean isInterrupted = false;
+    while (true) {
+      try {
+        if (writer.awaitTermination(1, TimeUnit.MINUTES)) {
+          break;
+        }
+      }
+      catch (InterruptedException e) {
+        // A cancelled computation still waits for the file that is being written to be complete.
+        isInterrupted = true;
+      }
+    }
+    if (isInterrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Closes this checkpoint and deletes its files, which is done once the computation is complete.
+   */
+  public void delete() {
+    close();
+    for (File file : files) {
+      if (file.exists() && !file.delete()) {
+        file.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * The state of a computation: the number of terms of the series combined so far and the values
+   * P, Q, and T that they combine to.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  static final class State {
+
+    private final int terms;
+    private final BigInteger p;
+    private final BigInteger q;
+    private final BigInteger t;
+
+    /**
+     * Creates a new State.
+     * 
+     * @param terms The number of terms combined so far.
+     * @param p The product of the numerators of the factorial ratios.
+     * @param q The product of the denominators of the factorial ratios.
+     * @param t The sum of the terms scaled by Q.
+     */
+    State(int terms, BigInteger p, BigInteger q, BigInteger t) {
+      this.terms = terms;
+      this.p = p;
+      this.q = q;
+      this.t = t;
+    }
+
+    /** @return The number of terms combined so far. */
+    int getTerms() {
+      return terms;
+    }
+
+    /** @return The product of the numerators of the factorial ratios. */
+    BigInteger getP() {
+      return p;
+    }
+
+    /** @return The product of the denominators of the factorial ratios. */
+    BigInteger getQ() {
+      return q;
+    }
+
+    /** @return The sum of the terms scaled by Q. */
+    BigInteger getT() {
+      return t;
+    }
+
+  }
+
+}
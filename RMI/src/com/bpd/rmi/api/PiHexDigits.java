@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A task for calculating hexadecimal digits of PI at arbitrary positions without calculating the
+ * digits before them, using the Bailey-Borwein-Plouffe formula
+ * 
+ * <code>pi = sum(16^-k * (4/(8k+1) - 2/(8k+4) - 1/(8k+5) - 1/(8k+6)))</code>.
+ * 
+ * Multiplying by <code>16^(n-1)</code> and keeping only the fractional part moves the digit at
+ * position <code>n</code> right behind the point. The terms for <code>k &lt; n</code> are reduced
+ * with modular exponentiation, so each position takes time proportional to <code>n log n</code>
+ * and a constant amount of memory.
+ * <p>
+ * Positions are counted from 1, the first hexadecimal digit after the point, so position 1 of
+ * <code>3.243F6A88...</code> is 2. The result has one digit per position, in the order in which
+ * the positions were given. The task is split by position, so a compute engine works on many
+ * positions in parallel; its size is the total number of terms, i.e. the sum of the positions.
+ * <p>
+ * The sums are computed in double precision, so a digit can be wrong in the rare case where the
+ * fractional part falls within about <code>n * 10^-16</code> of a multiple of 1/16.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class PiHexDigits implements SplittableTask<String>, CostedTask, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Largest position for which the denominators, and so all products mod them, fit in a long. */
+  public static final long MAX_POSITION = 1L << 28;
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  /** Terms past the position that are smaller than this do not change the fractional part. */
+  private static final double EPSILON = 1e-17;
+
+  /** Measured time for one term of one of the four sums, divided by log2 of the position. */
+  private static final double NANOS_PER_TERM_BIT = 8;
+
+  private final long[] positions;
+
+  /**
+   * Constructs a task to calculate the hexadecimal digits of PI at the given positions.
+   * 
+   * @param positions The positions, from 1 to {@value #MAX_POSITION}.
+   */
+  public PiHexDigits(long... positions) {
+    if (positions == null) {
+      throw new IllegalArgumentException("positions is null");
+    }
+    for (long position : positions) {
+      if (position < 1 || position > MAX_POSITION) {
+        throw new IllegalArgumentException("position must be from 1 to " + MAX_POSITION + ": "
+            + position);
+      }
+    }
+    this.positions = positions.clone();
+  }
+
+  /**
+   * Constructs a task to calculate a run of consecutive hexadecimal digits of PI.
+   * 
+   * @param firstPosition The position of the first digit, counted from 1.
+   * @param count The number of digits.
+   * @return The task.
+   */
+  public static PiHexDigits range(long firstPosition, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative: " + count);
+    }
+    long[] positions = new long[count];
+    for (int i = 0; i < count; i++) {
+      positions[i] = firstPosition + i;
+    }
+    return new PiHexDigits(positions);
+  }
+
+  /** @return The positions of the digits, counted from 1. */
+  public long[] getPositions() {
+    return positions.clone();
+  }
+
+  /** {@inheritDoc} This is the sum of the positions. */
+  @Override
+  public long getSize() {
+    long size = 0;
+    for (long position : positions) {
+      size += position;
+    }
+    return size;
+  }
+
+  /**
+   * Splits the positions into two halves.
+   * 
+   * @return The two halves, or an empty list if there are fewer than two positions.
+   */
+  @Override
+  public List<PiHexDigits> split() {
+    if (positions.length < 2) {
+      return Collections.emptyList();
+    }
+    int middle = positions.length / 2;
+    return Arrays.asList(new PiHexDigits(Arrays.copyOfRange(positions, 0, middle)),
+        new PiHexDigits(Arrays.copyOfRange(positions, middle, positions.length)));
+  }
+
+  /**
+   * Concatenates the digits of the halves returned by {@link #split()}.
+   * 
+   * @param results The digits of the halves.
+   * @return The digits at the positions of this task.
+   */
+  @Override
+  public String merge(List<String> results) {
+    StringBuilder digits = new StringBuilder(positions.length);
+    for (String result : results) {
+      digits.append(result);
+    }
+    return digits.toString();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getEstimatedCostNanos() {
+    double cost = 0;
+    for (long position : positions) {
+      cost += 4 * NANOS_PER_TERM_BIT * position * (64 - Long.numberOfLeadingZeros(position));
+    }
+    return (long) cost;
+  }
+
+  /**
+   * Calculates the digits at every position, one position after another.
+   * 
+   * @return The hexadecimal digits, one per position, in upper case.
+   */
+  @Override
+  public String execute() {
+    char[] digits = new char[positions.length];
+    for (int i = 0; i < positions.length; i++) {
+      digits[i] = HEX_DIGITS[hexDigitAt(positions[i])];
+    }
+    return new String(digits);
+  }
+
+  /**
+   * Computes the hexadecimal digit of PI at the given position.
+   * 
+   * @param position The position, counted from 1.
+   * @return The value of the digit, from 0 to 15.
+   */
+  public static int hexDigitAt(long position) {
+    long n = position - 1;
+    double fraction = 4 * series(1, n) - 2 * series(4, n) - series(5, n) - series(6, n);
+    fraction -= Math.floor(fraction);
+    return (int) (fraction * 16);
+  }
+
+  /**
+   * Computes the fractional part of <code>sum(16^(n-k) / (8k+j))</code> over all
+   * <code>k &gt;= 0</code>.
+   * 
+   * @param j The offset of the denominators.
+   * @param n The number of hexadecimal digits to skip.
+   * @return The fractional part of the sum.
+   */
+  private static double series(int j, long n) {
+    double sum = 0;
+    for (long k = 0; k <= n; k++) {
+      if ((k & 0xFFFF) == 0) {
+        Pi.checkCancelled();
+      }
+      long denominator = 8 * k + j;
+      sum += (double) powMod(16, n - k, denominator) / denominator;
+      sum -= Math.floor(sum);
+    }
+    double power = 1;
+    for (long k = n + 1;; k++) {
+      power /= 16;
+      double term = power / (8 * k + j);
+      if (term < EPSILON) {
+        break;
+      }
+      sum += term;
+    }
+    return sum - Math.floor(sum);
+  }
+
+  /**
+   * Computes <code>base^exponent mod modulus</code> by repeated squaring. The modulus must be less
+   * than 2^31 so that no product overflows.
+   * 
+   * @param base The base.
+   * @param exponent The exponent, at least 0.
+   * @param modulus The modulus, at least 1.
+   * @return The result, from 0 to <code>modulus - 1</code>.
+   */
+  static long powMod(long base, long exponent, long modulus) {
+    long result = 1 % modulus;
+    long square = base % modulus;
+    for (long e = exponent; e > 0; e >>>= 1) {
+      if ((e & 1) != 0) {
+        result = result * square % modulus;
+      }
+      square = square * square % modulus;
+    }
+    return result;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    if (positions.length > 4) {
+      return "PiHexDigits=[" + positions.length + " positions from " + positions[0] + "]";
+    }
+    return "PiHexDigits=" + Arrays.toString(positions);
+  }
+
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A task for summing a range of terms of both power series in Machin's formula. The result is the
+ * contribution of those terms to PI, i.e. <code>16*arctan(1/5) - 4*arctan(1/239)</code> restricted
+ * to the range, so the results of all of the ranges of a {@link Pi} task can simply be added
+ * together. Instances are created by {@link Pi#split(int)}.
+ * <p>
+ * A range can be split further into two ranges with about the same number of terms; its size is
+ * the number of terms that are not zero at its scale.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class PiSeriesRange implements SplittableTask<BigDecimal>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final BigDecimal SIXTEEN = BigDecimal.valueOf(16);
+  private static final BigDecimal FOUR = BigDecimal.valueOf(4);
+
+  private final Pi.Kernel kernel;
+  private final int scale;
+  private final int fromTerm5;
+  private final int toTerm5;
+  private final int fromTerm239;
+  private final int toTerm239;
+
+  /**
+   * Creates a new PiSeriesRange. An empty range is given as equal from and to indices.
+   * 
+   * @param kernel The arithmetic used to sum the power series.
+   * @param scale The scale.
+   * @param fromTerm5 The index of the first term of arctan(1/5) to add, inclusive.
+   * @param toTerm5 The index of the last term of arctan(1/5) to add, exclusive.
+   * @param fromTerm239 The index of the first term of arctan(1/239) to add, inclusive.
+   * @param toTerm239 The index of the last term of arctan(1/239) to add, exclusive.
+   */
+  PiSeriesRange(Pi.Kernel kernel, int scale, int fromTerm5, int toTerm5, int fromTerm239,
+      int toTerm239) {
+    this.kernel = kernel;
+    this.scale = scale;
+    this.fromTerm5 = fromTerm5;
+    this.toTerm5 = toTerm5;
+    this.fromTerm239 = fromTerm239;
+    this.toTerm239 = toTerm239;
+  }
+
+  /**
+   * Sums the terms in this range.
+   * 
+   * @return The contribution of the terms in this range to PI.
+   */
+  @Override
+  public BigDecimal execute() {
+    BigDecimal sum = BigDecimal.ZERO.setScale(scale);
+    if (fromTerm5 < toTerm5) {
+      sum = sum.add(kernel.arctan(5, scale, fromTerm5, toTerm5).multiply(SIXTEEN));
+    }
+    if (fromTerm239 < toTerm239) {
+      sum = sum.subtract(kernel.arctan(239, scale, fromTerm239, toTerm239).multiply(FOUR));
+    }
+    return sum;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getSize() {
+    return (long) termsIn(fromTerm5, toTerm5, 5) + termsIn(fromTerm239, toTerm239, 239);
+  }
+
+  /**
+   * Splits this range into two ranges with about the same number of terms. As in
+   * {@link Pi#split(int)}, both series are laid end to end, and the second range keeps the open end
+   * of each series.
+   * 
+   * @return The two ranges, or an empty list if this range has fewer than two terms.
+   */
+  @Override
+  public List<PiSeriesRange> split() {
+    int terms5 = termsIn(fromTerm5, toTerm5, 5);
+    int half = (int) (getSize() / 2);
+    if (half == 0) {
+      return Collections.emptyList();
+    }
+    if (half <= terms5) {
+      int middle = fromTerm5 + half;
+      return Arrays.asList(new PiSeriesRange(kernel, scale, fromTerm5, middle, fromTerm239,
+          fromTerm239), new PiSeriesRange(kernel, scale, middle, toTerm5, fromTerm239, toTerm239));
+    }
+    int middle = fromTerm239 + half - terms5;
+    return Arrays.asList(new PiSeriesRange(kernel, scale, fromTerm5, toTerm5, fromTerm239, middle),
+        new PiSeriesRange(kernel, scale, toTerm5, toTerm5, middle, toTerm239));
+  }
+
+  /**
+   * Adds up the results of the ranges returned by {@link #split()}.
+   * 
+   * @param partialSums The results of the ranges.
+   * @return The contribution of the terms in this range to PI.
+   */
+  @Override
+  public BigDecimal merge(List<BigDecimal> partialSums) {
+    BigDecimal sum = BigDecimal.ZERO.setScale(scale);
+    for (BigDecimal partialSum : partialSums) {
+      sum = sum.add(partialSum);
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the number of terms in the given range of a series that are not zero at the scale of
+   * this range.
+   * 
+   * @param fromTerm The index of the first term, inclusive.
+   * @param toTerm The index of the last term, exclusive; may be {@link Integer#MAX_VALUE}.
+   * @param inverseX The inverse of the argument of the arc tangent.
+   * @return The number of terms.
+   */
+  private int termsIn(int fromTerm, int toTerm, int inverseX) {
+    return Math.max(0, Math.min(toTerm, Pi.termCount(inverseX, scale)) - fromTerm);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "PiSeriesRange=[scale=" + scale + ", arctan(1/5)=[" + fromTerm5 + ", " + toTerm5
+        + "), arctan(1/239)=[" + fromTerm239 + ", " + toTerm239 + ")]";
+  }
+
+}
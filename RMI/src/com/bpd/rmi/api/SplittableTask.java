@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.util.List;
+
+/**
+ * A task that can be divided into smaller tasks of the same kind, so that a compute engine can run
+ * the parts of a single task in parallel. The engine splits a task recursively until the size of
+ * each part is at most its split threshold, executes the parts that are left with
+ * {@link #execute()}, and combines the results of the parts of each task with
+ * {@link #merge(List)}.
+ * <p>
+ * {@link #execute()} must still compute the whole task on its own, so that a splittable task gives
+ * the same result on an engine that does not split tasks.
+ * 
+ * @author BJ Peter DeLaCruz
+ * 
+ * @param <T> The type of the results of this task.
+ */
+public interface SplittableTask<T> extends Task<T> {
+
+  /**
+   * Returns the amount of work in this task, which the compute engine compares with its split
+   * threshold. The unit is up to the task, e.g. the number of terms of a series.
+   * 
+   * @return The amount of work in this task.
+   */
+  long getSize();
+
+  /**
+   * Divides this task into smaller tasks that together do the same work, usually two of about the
+   * same size.
+   * 
+   * @return The parts, or an empty list if this task cannot be divided.
+   */
+  List<? extends SplittableTask<T>> split();
+
+  /**
+   * Combines the results of the parts returned by {@link #split()} into the result of this task.
+   * 
+   * @param results The results of the parts, in the same order as the parts.
+   * @return The results of this task.
+   */
+  T merge(List<T> results);
+
+}
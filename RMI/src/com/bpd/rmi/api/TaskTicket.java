@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import java.io.Serializable;
+
+/**
+ * A ticket that identifies a task submitted to the compute engine for asynchronous execution. The
+ * ticket is used to check whether the task is done and to get its results.
+ * 
+ * @author BJ Peter DeLaCruz
+ * 
+ * @param <T> The type of the results of the task.
+ */
+public final class TaskTicket<T> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long id;
+
+  /**
+   * Creates a new TaskTicket.
+   * 
+   * @param id The ID of the submitted task.
+   */
+  public TaskTicket(long id) {
+    this.id = id;
+  }
+
+  /** @return The ID of the submitted task. */
+  public long getId() {
+    return id;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof TaskTicket && ((TaskTicket<?>) obj).id == id;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int hashCode() {
+    return (int) (id ^ (id >>> 32));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return "TaskTicket=[id=" + id + "]";
+  }
+
+}
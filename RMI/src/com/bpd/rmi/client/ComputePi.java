@@ -15,11 +15,19 @@
  ******************************************************************************/
 package com.bpd.rmi.client;
 
-import java.math.BigDecimal;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import com.bpd.rmi.api.CompactPi;
 import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.DigitStream;
 import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.api.TaskTicket;
 
 /**
  * Computes PI to the specified number of digits. The actual computation is done on the server.
@@ -28,18 +36,33 @@ import com.bpd.rmi.api.Pi;
  */
 public class ComputePi {
 
+  /** Maximum number of milliseconds that a single call to wait for the results may take. */
+  private static final long POLL_INTERVAL_MILLIS = 1000;
+
+  /** Number of digits at or above which the results are streamed in chunks. */
+  private static final int STREAMING_DIGITS = 100000;
+
+  /** Number of digits in each streamed chunk. */
+  private static final int CHUNK_SIZE = 65536;
+
+  /** Number of chunks to fetch ahead while the current chunk is being printed. */
+  private static final int PREFETCH_COUNT = 4;
+
   /**
    * Sends a task to compute PI to the specified number of digits to the server and displays the
    * results.
    * 
    * @param args The name of the remote host and the number of decimal places to use in the
-   * calculation.
+   * calculation. Several hosts may be given, separated by commas, in which case the calculation is
+   * split over all of them. An optional third argument is the number of seconds after which the
+   * server gives up on the calculation.
    */
   public static void main(String args[]) {
-    if (args.length != 2) {
-      String msg = "Need two arguments:\n";
-      msg += "  1. Name of remote host\n";
-      msg += "  2. Number of decimal places to use in calculation";
+    if (args.length != 2 && args.length != 3) {
+      String msg = "Need two or three arguments:\n";
+      msg += "  1. Name of remote host, or comma-separated list of host[:port][/name]\n";
+      msg += "  2. Number of decimal places to use in calculation\n";
+      msg += "  3. Optional: number of seconds after which the calculation is cancelled";
       System.err.println(msg);
       System.exit(1);
     }
@@ -47,12 +70,42 @@ public class ComputePi {
       System.setSecurityManager(new SecurityManager());
     }
     try {
+      Pi task = new Pi(Integer.parseInt(args[1]));
+      long timeoutMillis = args.length == 3 ? Long.parseLong(args[2]) * 1000 : 0;
+      if (args[0].indexOf(',') >= 0) {
+        final LoadBalancedCompute comp =
+            new LoadBalancedCompute(Arrays.asList(args[0].split(",")));
+        Thread cancelOnExit = addCancelHook(new Runnable() {
+
+          @Override
+          public void run() {
+            comp.cancelAll();
+          }
+
+        });
+        try {
+          System.out.println(comp.executeTask(task, timeoutMillis));
+        }
+        finally {
+          removeCancelHook(cancelOnExit);
+          comp.shutdown();
+        }
+        return;
+      }
       String name = "Compute";
       Registry registry = LocateRegistry.getRegistry(args[0], 0);
       Compute comp = (Compute) registry.lookup(name);
-      Pi task = new Pi(Integer.parseInt(args[1]));
-      BigDecimal pi = comp.executeTask(task);
-      System.out.println(pi);
+      if (task.getDigits() >= STREAMING_DIGITS) {
+        printStream(comp, task, timeoutMillis);
+        return;
+      }
+      // Servers that predate the compact wire format get the task with default serialization.
+      if (CompactPi.isSupportedBy(comp)) {
+        System.out.println(poll(comp, new CompactPi(task, false), timeoutMillis).getValue());
+      }
+      else {
+        System.out.println(poll(comp, task, timeoutMillis));
+      }
     }
     catch (Exception e) {
       System.err.println("ComputePi exception:");
@@ -60,4 +113,157 @@ public class ComputePi {
     }
   }
 
+  /**
+   * Submits the given task and polls for its results instead of keeping one RMI call open for the
+   * whole computation.
+   * 
+   * If the client is stopped while waiting, e.g. with Ctrl-C, the task is cancelled so that the
+   * server does not finish it for nothing.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param comp The compute engine.
+   * @param task The task to execute.
+   * @param timeoutMillis The number of milliseconds after which the task is cancelled, or 0 for
+   * none.
+   * @return The results of the task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  private static <T> T poll(final Compute comp, Task<T> task, long timeoutMillis)
+      throws RemoteException {
+    final TaskTicket<T> ticket = submit(comp, task, timeoutMillis);
+    Thread cancelOnExit = addCancelHook(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          comp.cancelTask(ticket);
+        }
+        catch (RemoteException e) {
+          // The client is exiting, so nothing more can be done.
+        }
+      }
+
+    });
+    try {
+      while (true) {
+        try {
+          return comp.awaitResult(ticket, POLL_INTERVAL_MILLIS);
+        }
+        catch (TimeoutException e) {
+          continue;
+        }
+      }
+    }
+    finally {
+      removeCancelHook(cancelOnExit);
+    }
+  }
+
+  /**
+   * Runs the given cancellation if the client is stopped, e.g. with Ctrl-C, so that the server does
+   * not finish a computation for nothing.
+   * 
+   * @param cancel The cancellation.
+   * @return The shutdown hook that runs the cancellation.
+   */
+  private static Thread addCancelHook(Runnable cancel) {
+    Thread hook = new Thread(cancel, "ComputePi cancel");
+    Runtime.getRuntime().addShutdownHook(hook);
+    return hook;
+  }
+
+  /**
+   * Removes the given shutdown hook once the computation is over.
+   * 
+   * @param hook The shutdown hook returned by {@link #addCancelHook(Runnable)}.
+   */
+  private static void removeCancelHook(Thread hook) {
+    try {
+      Runtime.getRuntime().removeShutdownHook(hook);
+    }
+    catch (IllegalStateException e) {
+      // The JVM is already shutting down, and the hook cancels the computation.
+    }
+  }
+
+  /**
+   * Submits the given task with a deadline, if there is one and the server supports deadlines.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param comp The compute engine.
+   * @param task The task to execute.
+   * @param timeoutMillis The number of milliseconds after which the task is cancelled, or 0 for
+   * none.
+   * @return A ticket used to poll for and get the results of the given task.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   */
+  private static <T> TaskTicket<T> submit(Compute comp, Task<T> task, long timeoutMillis)
+      throws RemoteException {
+    if (timeoutMillis > 0) {
+      try {
+        return comp.submitTask(task, timeoutMillis);
+      }
+      catch (ServerException e) {
+        // Servers that predate deadlines do not recognize the call.
+        if (!(e.getCause() instanceof UnmarshalException)) {
+          throw e;
+        }
+      }
+    }
+    return comp.submitTask(task);
+  }
+
+  /**
+   * Sends the given task to the server and prints the digits of the results as they arrive. The
+   * stream is closed, which cancels the computation, if the deadline passes before the digits are
+   * ready or the client is stopped.
+   * 
+   * @param comp The compute engine.
+   * @param task The task to calculate PI.
+   * @param timeoutMillis The number of milliseconds after which the computation is cancelled, or 0
+   * for none.
+   * @throws RemoteException If a communication or protocol error has occurred.
+   * @throws TimeoutException If the digits were not ready by the deadline.
+   */
+  private static void printStream(Compute comp, Pi task, long timeoutMillis)
+      throws RemoteException, TimeoutException {
+    final DigitStream stream = comp.streamTask(task, CHUNK_SIZE);
+    Thread cancelOnExit = addCancelHook(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          stream.close();
+        }
+        catch (RemoteException e) {
+          // The client is exiting, so nothing more can be done.
+        }
+      }
+
+    });
+    try {
+      long deadline = timeoutMillis == 0 ? 0 : System.currentTimeMillis() + timeoutMillis;
+      long waitMillis = POLL_INTERVAL_MILLIS;
+      while (!stream.awaitReady(waitMillis)) {
+        if (deadline != 0) {
+          long remainingMillis = deadline - System.currentTimeMillis();
+          if (remainingMillis <= 0) {
+            stream.close();
+            throw new TimeoutException("PI was not computed within " + timeoutMillis + " ms");
+          }
+          waitMillis = Math.min(POLL_INTERVAL_MILLIS, remainingMillis);
+        }
+      }
+      try (DigitChunkIterator chunks = new DigitChunkIterator(stream, PREFETCH_COUNT)) {
+        while (chunks.hasNext()) {
+          System.out.print(chunks.next());
+        }
+        System.out.println();
+      }
+    }
+    finally {
+      removeCancelHook(cancelOnExit);
+    }
+  }
+
 }
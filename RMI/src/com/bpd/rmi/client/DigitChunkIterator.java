@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import java.io.Closeable;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import com.bpd.rmi.api.DigitStream;
+
+/**
+ * Iterates over the chunks of a remote {@link DigitStream}. A background thread fetches the next
+ * few chunks while the caller is still working on the current one, so that network transfer and
+ * processing overlap. Only a bounded number of chunks are held in memory at any time.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class DigitChunkIterator implements Iterator<String>, Closeable {
+
+  /** Marks the end of the stream in the queue of fetched chunks. */
+  private static final Object END = new Object();
+
+  private final DigitStream stream;
+  private final BlockingQueue<Object> chunks;
+  private final Thread fetcher;
+
+  /** The next chunk, the exception thrown while fetching it, {@link #END}, or null if not taken. */
+  private Object next;
+
+  /**
+   * Creates a new DigitChunkIterator and starts fetching chunks.
+   * 
+   * @param stream The stream from which to fetch chunks.
+   * @param prefetchCount The maximum number of chunks to fetch ahead of the caller.
+   */
+  public DigitChunkIterator(DigitStream stream, int prefetchCount) {
+    if (stream == null) {
+      throw new IllegalArgumentException("stream is null");
+    }
+    this.stream = stream;
+    this.chunks = new ArrayBlockingQueue<>(prefetchCount);
+    this.fetcher = new Thread(new Runnable() {
+
+      @Override
+      public void run() {
+        fetch();
+      }
+
+    }, "DigitChunkIterator");
+    this.fetcher.setDaemon(true);
+    this.fetcher.start();
+  }
+
+  /** Fetches chunks until the end of the stream is reached or this iterator is closed. */
+  private void fetch() {
+    Object last = END;
+    try {
+      String chunk = stream.nextChunk();
+      while (chunk != null) {
+        chunks.put(chunk);
+        chunk = stream.nextChunk();
+      }
+    }
+    catch (InterruptedException e) {
+      // Closed by the caller.
+      return;
+    }
+    catch (Throwable e) {
+      // Includes exceptions thrown by the task on the server, which the caller must see, since it
+      // would otherwise wait for the next chunk forever.
+      last = e;
+    }
+    try {
+      // Put rather than offered, so that a failure is not dropped when the queue is full.
+      chunks.put(last);
+    }
+    catch (InterruptedException e) {
+      // Closed by the caller.
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      try {
+        next = chunks.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the next chunk", e);
+      }
+    }
+    if (next instanceof Throwable) {
+      throw new IllegalStateException("Unable to get the next chunk", (Throwable) next);
+    }
+    return next != END;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    String chunk = (String) next;
+    next = null;
+    return chunk;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops fetching chunks and closes the remote stream.
+   * 
+   * @throws RemoteException If the remote stream could not be closed.
+   */
+  @Override
+  public void close() throws RemoteException {
+    fetcher.interrupt();
+    next = END;
+    try {
+      stream.close();
+    }
+    catch (NoSuchObjectException e) {
+      // The server closes the stream on its own once the last chunk has been read.
+    }
+  }
+
+}
@@ -0,0 +1,921 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import java.math.BigDecimal;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.DigitStream;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.PiSeriesRange;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.api.TaskTicket;
+
+/**
+ * A compute engine that spreads tasks over several remote compute engines. Each task goes to the
+ * healthy engine with the fewest outstanding tasks. If a call fails because an engine cannot be
+ * reached, the engine is marked as unhealthy for a while and the call is retried on another engine;
+ * a {@link ServerException}, which is thrown by the engine itself, is not retried. A task that an
+ * engine rejects with a {@link RejectedExecutionException} because its queue is full is retried on
+ * another engine without marking the engine as unhealthy.
+ * {@link Pi} tasks are split into ranges of terms with {@link Pi#split(int)}, and the ranges are
+ * summed on all of the healthy engines at once.
+ * <p>
+ * Engines are given as endpoints of the form <code>host[:port][/name]</code>; the port defaults to
+ * {@value java.rmi.registry.Registry#REGISTRY_PORT} and the name to {@value #DEFAULT_NAME}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class LoadBalancedCompute implements Compute {
+
+  /** The name under which compute engines are bound by default. */
+  public static final String DEFAULT_NAME = "Compute";
+
+  /** Number of milliseconds for which an engine that could not be reached is not used. */
+  private static final long UNHEALTHY_MILLIS = 5000;
+
+  /** Maximum number of milliseconds that a single call to wait for the results may take. */
+  private static final long POLL_INTERVAL_MILLIS = 1000;
+
+  private final List<Node> nodes = new ArrayList<>();
+  private final AtomicInteger nextNode = new AtomicInteger();
+  private final ExecutorService executor;
+  private final AtomicLong nextTicketId = new AtomicLong();
+  private final ConcurrentMap<Long, SubmittedTask<?>> submittedTasks = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new LoadBalancedCompute. The engines are looked up when they are first used.
+   * 
+   * @param endpoints The endpoints of the compute engines.
+   */
+  public LoadBalancedCompute(List<String> endpoints) {
+    if (endpoints == null || endpoints.isEmpty()) {
+      throw new IllegalArgumentException("No endpoints given");
+    }
+    for (String endpoint : endpoints) {
+      nodes.add(new Node(endpoint));
+    }
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "LoadBalancedCompute");
+        thread.setDaemon(true);
+        return thread;
+      }
+
+    });
+  }
+
+  /**
+   * {@inheritDoc} {@link Pi} tasks for fewer than {@link Pi#CHUDNOVSKY_DIGITS} digits are split
+   * over all of the healthy engines; larger ones are faster with the Chudnovsky series on a single
+   * engine.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T executeTask(final Task<T> task) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    if (task instanceof Pi && ((Pi) task).getDigits() < Pi.CHUDNOVSKY_DIGITS) {
+      int healthyCount = getHealthyCount();
+      if (healthyCount > 1) {
+        return (T) executeSplit((Pi) task, healthyCount);
+      }
+    }
+    return invoke(new RemoteCall<T>() {
+
+      @Override
+      public T call(Compute compute) throws RemoteException {
+        return compute.executeTask(task);
+      }
+
+    });
+  }
+
+  /**
+   * Executes the given task like {@link #executeTask(Task)}, including the splitting of {@link Pi}
+   * tasks, but submits the task, or each range of terms, with {@link #submitTask(Task, long)} and
+   * polls for the results. The engines therefore give up on the task at its deadline, and
+   * {@link #cancelAll()} cancels it on the engines while it is running.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param task The task to execute.
+   * @param timeoutMillis The number of milliseconds after which the task is cancelled, or 0 for
+   * none.
+   * @return The results of the task.
+   * @throws RemoteException If the task could not be executed on any engine.
+   * @throws CancellationException If the task was cancelled, e.g. at its deadline.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T executeTask(Task<T> task, long timeoutMillis) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("timeoutMillis must not be negative: " + timeoutMillis);
+    }
+    long deadline = timeoutMillis == 0 ? 0 : System.currentTimeMillis() + timeoutMillis;
+    if (task instanceof Pi && ((Pi) task).getDigits() < Pi.CHUDNOVSKY_DIGITS) {
+      int healthyCount = getHealthyCount();
+      if (healthyCount > 1) {
+        return (T) executeSplit((Pi) task, healthyCount, deadline);
+      }
+    }
+    return poll(track(task, deadline));
+  }
+
+  /**
+   * Splits the given task into one range of terms per engine, submits the ranges to the engines at
+   * the same time, and merges the results. If a range fails, the others are cancelled.
+   * 
+   * @param task The task to calculate PI.
+   * @param parts The number of ranges.
+   * @param deadline The time in milliseconds at which the ranges are cancelled, or 0 for none.
+   * @return PI computed to the given digits.
+   * @throws RemoteException If a range could not be summed on any engine.
+   */
+  private BigDecimal executeSplit(Pi task, int parts, long deadline) throws RemoteException {
+    List<SubmittedTask<BigDecimal>> ranges = new ArrayList<>(parts);
+    try {
+      for (PiSeriesRange range : task.split(parts)) {
+        ranges.add(track(range, deadline));
+      }
+      List<BigDecimal> partialSums = new ArrayList<>(parts);
+      for (SubmittedTask<BigDecimal> range : ranges) {
+        partialSums.add(poll(range));
+      }
+      return task.merge(partialSums);
+    }
+    catch (RemoteException | RuntimeException | Error e) {
+      for (SubmittedTask<BigDecimal> range : ranges) {
+        // Ranges that were collected or cancelled already are no longer in the submitted tasks.
+        if (submittedTasks.remove(range.id) != null) {
+          cancelQuietly(range);
+        }
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for the results of the given task, one poll interval at a time.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param submittedTask The task.
+   * @return The results of the task.
+   * @throws RemoteException If the task could not be executed on any engine.
+   * @throws CancellationException If the task was cancelled.
+   */
+  private <T> T poll(SubmittedTask<T> submittedTask) throws RemoteException {
+    while (true) {
+      try {
+        T result = submittedTask.awaitResult(POLL_INTERVAL_MILLIS);
+        submittedTasks.remove(submittedTask.id);
+        return result;
+      }
+      catch (TimeoutException e) {
+        continue;
+      }
+    }
+  }
+
+  /**
+   * Splits the given task into one range of terms per engine, sums the ranges on the engines at the
+   * same time, and merges the results.
+   * 
+   * @param task The task to calculate PI.
+   * @param parts The number of ranges.
+   * @return PI computed to the given digits.
+   * @throws RemoteException If a range could not be summed on any engine.
+   */
+  BigDecimal executeSplit(Pi task, int parts) throws RemoteException {
+    List<Future<BigDecimal>> futures = new ArrayList<>(parts);
+    for (final PiSeriesRange range : task.split(parts)) {
+      futures.add(executor.submit(new Callable<BigDecimal>() {
+
+        @Override
+        public BigDecimal call() throws RemoteException {
+          return executeTask(range);
+        }
+
+      }));
+    }
+    List<BigDecimal> partialSums = new ArrayList<>(parts);
+    for (Future<BigDecimal> future : futures) {
+      partialSums.add(getResult(future));
+    }
+    return task.merge(partialSums);
+  }
+
+  /**
+   * {@inheritDoc} The batch is divided into one contiguous run per healthy engine.
+   */
+  @Override
+  public <T> List<T> executeTasks(List<? extends Task<T>> tasks) throws RemoteException {
+    if (tasks == null) {
+      throw new IllegalArgumentException("tasks is null");
+    }
+    int runs = Math.max(1, Math.min(tasks.size(), getHealthyCount()));
+    List<Future<List<T>>> futures = new ArrayList<>(runs);
+    for (int i = 0; i < runs; i++) {
+      final List<? extends Task<T>> run =
+          new ArrayList<>(tasks.subList(i * tasks.size() / runs, (i + 1) * tasks.size() / runs));
+      futures.add(executor.submit(new Callable<List<T>>() {
+
+        @Override
+        public List<T> call() throws RemoteException {
+          return invoke(new RemoteCall<List<T>>() {
+
+            @Override
+            public List<T> call(Compute compute) throws RemoteException {
+              return compute.executeTasks(run);
+            }
+
+          });
+        }
+
+      }));
+    }
+    List<T> results = new ArrayList<>(tasks.size());
+    for (Future<List<T>> future : futures) {
+      results.addAll(getResult(future));
+    }
+    return results;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public DigitStream streamTask(final Task<BigDecimal> task, final int chunkSize)
+      throws RemoteException {
+    return invoke(new RemoteCall<DigitStream>() {
+
+      @Override
+      public DigitStream call(Compute compute) throws RemoteException {
+        return compute.streamTask(task, chunkSize);
+      }
+
+    });
+  }
+
+  /**
+   * {@inheritDoc} If the engine to which the task was submitted cannot be reached later on, the
+   * task is submitted again to another engine.
+   */
+  @Override
+  public <T> TaskTicket<T> submitTask(Task<T> task) throws RemoteException {
+    return submit(task, 0);
+  }
+
+  /**
+   * {@inheritDoc} A task that is submitted again to another engine keeps its original deadline.
+   */
+  @Override
+  public <T> TaskTicket<T> submitTask(Task<T> task, long timeoutMillis) throws RemoteException {
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+    }
+    return submit(task, System.currentTimeMillis() + timeoutMillis);
+  }
+
+  /**
+   * Submits the given task to the best engine.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param task The task to execute.
+   * @param deadline The time in milliseconds at which the task is cancelled, or 0 for none.
+   * @return A ticket used to poll for and get the results of the given task.
+   * @throws RemoteException If the task could not be submitted to any engine.
+   */
+  private <T> TaskTicket<T> submit(Task<T> task, long deadline) throws RemoteException {
+    return new TaskTicket<>(track(task, deadline).id);
+  }
+
+  /**
+   * Submits the given task to the best engine and adds it to the submitted tasks.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param task The task to execute.
+   * @param deadline The time in milliseconds at which the task is cancelled, or 0 for none.
+   * @return The submitted task.
+   * @throws RemoteException If the task could not be submitted to any engine.
+   */
+  private <T> SubmittedTask<T> track(Task<T> task, long deadline) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    SubmittedTask<T> submittedTask = new SubmittedTask<>(nextTicketId.incrementAndGet(), task,
+        deadline);
+    submittedTask.submit(Collections.<Node> emptySet());
+    submittedTasks.put(submittedTask.id, submittedTask);
+    return submittedTask;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean cancelTask(TaskTicket<?> ticket) throws RemoteException {
+    if (ticket == null) {
+      throw new IllegalArgumentException("ticket is null");
+    }
+    SubmittedTask<?> submittedTask = submittedTasks.remove(ticket.getId());
+    return submittedTask != null && submittedTask.cancel();
+  }
+
+  /**
+   * Cancels every task that was submitted through this compute engine and whose results have not
+   * been collected yet, e.g. from a shutdown hook when the client is stopped. Engines that cannot
+   * be reached are skipped.
+   * 
+   * @return The number of tasks that were cancelled.
+   */
+  public int cancelAll() {
+    int count = 0;
+    for (Long id : submittedTasks.keySet()) {
+      SubmittedTask<?> submittedTask = submittedTasks.remove(id);
+      if (submittedTask != null && cancelQuietly(submittedTask)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Cancels the given task, ignoring engines that fail to cancel it.
+   * 
+   * @param submittedTask The task.
+   * @return True if the task was cancelled.
+   */
+  private static boolean cancelQuietly(SubmittedTask<?> submittedTask) {
+    try {
+      return submittedTask.cancel();
+    }
+    catch (RemoteException e) {
+      // The task is being given up on anyway.
+      return false;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isDone(TaskTicket<?> ticket) throws RemoteException {
+    return getSubmittedTask(ticket).isDone();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T awaitResult(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException,
+      TimeoutException {
+    T result = getSubmittedTask(ticket).awaitResult(timeoutMillis);
+    submittedTasks.remove(ticket.getId());
+    return result;
+  }
+
+  /**
+   * {@inheritDoc} This is the oldest wire format among the engines that can be reached, since a
+   * task may be sent to any of them; engines that predate this method count as version 0.
+   */
+  @Override
+  public int getWireFormatVersion() throws RemoteException {
+    int version = Integer.MAX_VALUE;
+    RemoteException lastException = null;
+    for (Node node : nodes) {
+      try {
+        version = Math.min(version, node.getCompute().getWireFormatVersion());
+      }
+      catch (ServerException e) {
+        if (!(e.getCause() instanceof UnmarshalException)) {
+          throw e;
+        }
+        version = 0;
+      }
+      catch (RemoteException e) {
+        node.markUnhealthy();
+        lastException = e;
+      }
+    }
+    if (version == Integer.MAX_VALUE) {
+      throw new RemoteException("No compute engine could be reached", lastException);
+    }
+    return version;
+  }
+
+  /**
+   * Stops the threads used to call several engines at once.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Returns the submitted task for the given ticket.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param ticket The ticket returned when the task was submitted.
+   * @return The submitted task.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> SubmittedTask<T> getSubmittedTask(TaskTicket<T> ticket) {
+    if (ticket == null) {
+      throw new IllegalArgumentException("ticket is null");
+    }
+    SubmittedTask<T> submittedTask = (SubmittedTask<T>) submittedTasks.get(ticket.getId());
+    if (submittedTask == null) {
+      throw new IllegalArgumentException("Unknown ticket: " + ticket);
+    }
+    return submittedTask;
+  }
+
+  /** @return The number of tasks that the engines are working on for this client. */
+  int getOutstandingCount() {
+    int count = 0;
+    for (Node node : nodes) {
+      count += node.outstanding.get();
+    }
+    return count;
+  }
+
+  /** @return The number of engines that are not marked as unhealthy. */
+  int getHealthyCount() {
+    long now = System.currentTimeMillis();
+    int count = 0;
+    for (Node node : nodes) {
+      if (node.isHealthy(now)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Makes the given call on the best engine, retrying on the other engines if an engine cannot be
+   * reached or rejects the call.
+   * 
+   * @param <R> The data type of the result of the call.
+   * @param call The call to make.
+   * @return The result of the call.
+   * @throws RemoteException If the call failed on every engine.
+   */
+  private <R> R invoke(RemoteCall<R> call) throws RemoteException {
+    return invoke(call, new HashSet<Node>(), null);
+  }
+
+  /**
+   * Makes the given call on the best engine that has not been tried yet, retrying on the other
+   * engines if an engine cannot be reached or rejects the call.
+   * 
+   * @param <R> The data type of the result of the call.
+   * @param call The call to make.
+   * @param tried The engines that have already been tried; updated by this method.
+   * @param used If not null, receives the engine on which the call succeeded.
+   * @return The result of the call.
+   * @throws RemoteException If the call failed on every engine.
+   * @throws RejectedExecutionException If every engine that could be reached rejected the call.
+   */
+  private <R> R invoke(RemoteCall<R> call, Set<Node> tried, Node[] used) throws RemoteException {
+    RemoteException lastException = null;
+    RejectedExecutionException lastRejection = null;
+    Node node = choose(tried);
+    while (node != null) {
+      tried.add(node);
+      node.outstanding.incrementAndGet();
+      try {
+        R result = call.call(node.getCompute());
+        if (used != null) {
+          used[0] = node;
+        }
+        return result;
+      }
+      catch (ServerException e) {
+        throw e;
+      }
+      catch (RemoteException e) {
+        node.markUnhealthy();
+        lastException = e;
+      }
+      catch (RejectedExecutionException e) {
+        // The queue of the engine is full, but the engine itself is fine.
+        lastRejection = e;
+      }
+      finally {
+        node.outstanding.decrementAndGet();
+      }
+      node = choose(tried);
+    }
+    if (lastRejection != null) {
+      throw lastRejection;
+    }
+    throw new RemoteException("No compute engine could be reached", lastException);
+  }
+
+  /**
+   * Chooses the healthy engine with the fewest outstanding tasks, or the engine that has been
+   * unhealthy the longest if none of them are healthy. Ties are broken in round-robin order.
+   * 
+   * @param excluded The engines that must not be chosen.
+   * @return The chosen engine, or null if all of the engines are excluded.
+   */
+  private Node choose(Set<Node> excluded) {
+    long now = System.currentTimeMillis();
+    int start = nextNode.getAndIncrement();
+    Node best = null;
+    for (int i = 0; i < nodes.size(); i++) {
+      Node node = nodes.get(((start + i) % nodes.size() + nodes.size()) % nodes.size());
+      if (excluded.contains(node)) {
+        continue;
+      }
+      if (best == null || isBetter(node, best, now)) {
+        best = node;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns true if the first engine is a better choice than the second one.
+   * 
+   * @param node The first engine.
+   * @param other The second engine.
+   * @param now The current time in milliseconds.
+   * @return True if the first engine is a better choice.
+   */
+  private static boolean isBetter(Node node, Node other, long now) {
+    boolean isHealthy = node.isHealthy(now);
+    if (isHealthy != other.isHealthy(now)) {
+      return isHealthy;
+    }
+    if (!isHealthy) {
+      return node.unhealthyUntil < other.unhealthyUntil;
+    }
+    return node.outstanding.get() < other.outstanding.get();
+  }
+
+  /**
+   * Waits for the given future and returns its result.
+   * 
+   * @param <T> The data type of the result.
+   * @param future The future.
+   * @return The result.
+   * @throws RemoteException If the call failed on every engine.
+   */
+  private static <T> T getResult(Future<T> future) throws RemoteException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for a compute engine", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RemoteException) {
+        throw (RemoteException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RemoteException("Call failed", cause);
+    }
+  }
+
+  /**
+   * A call to a remote compute engine.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <R> The data type of the result of the call.
+   */
+  private interface RemoteCall<R> {
+
+    /**
+     * Makes this call on the given compute engine.
+     * 
+     * @param compute The compute engine.
+     * @return The result of the call.
+     * @throws RemoteException If a communication or protocol error has occurred.
+     */
+    R call(Compute compute) throws RemoteException;
+
+  }
+
+  /**
+   * A remote compute engine and the number of tasks that it is working on for this client.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class Node {
+
+    private final String endpoint;
+    private final String host;
+    private final int port;
+    private final String name;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile long unhealthyUntil;
+    private volatile Compute compute;
+
+    /**
+     * Creates a new Node.
+     * 
+     * @param endpoint The endpoint of the compute engine.
+     */
+    private Node(String endpoint) {
+      this.endpoint = endpoint;
+      String hostAndPort = endpoint;
+      int slash = endpoint.indexOf('/');
+      if (slash >= 0) {
+        hostAndPort = endpoint.substring(0, slash);
+        this.name = endpoint.substring(slash + 1);
+      }
+      else {
+        this.name = DEFAULT_NAME;
+      }
+      int colon = hostAndPort.lastIndexOf(':');
+      if (colon >= 0) {
+        this.host = hostAndPort.substring(0, colon);
+        this.port = Integer.parseInt(hostAndPort.substring(colon + 1));
+      }
+      else {
+        this.host = hostAndPort;
+        this.port = Registry.REGISTRY_PORT;
+      }
+    }
+
+    /**
+     * Returns the stub for this compute engine, looking it up first if necessary.
+     * 
+     * @return The stub for this compute engine.
+     * @throws RemoteException If the compute engine could not be looked up.
+     */
+    private Compute getCompute() throws RemoteException {
+      Compute current = compute;
+      if (current == null) {
+        try {
+          current = (Compute) LocateRegistry.getRegistry(host, port).lookup(name);
+        }
+        catch (NotBoundException e) {
+          throw new RemoteException("Nothing bound to " + endpoint, e);
+        }
+        compute = current;
+      }
+      return current;
+    }
+
+    /**
+     * Returns true if this compute engine can be used.
+     * 
+     * @param now The current time in milliseconds.
+     * @return True if this compute engine can be used.
+     */
+    private boolean isHealthy(long now) {
+      return unhealthyUntil <= now;
+    }
+
+    /** Stops using this compute engine for a while, and looks it up again afterwards. */
+    private void markUnhealthy() {
+      compute = null;
+      unhealthyUntil = System.currentTimeMillis() + UNHEALTHY_MILLIS;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return endpoint;
+    }
+
+  }
+
+  /**
+   * A task that was submitted to one of the engines, along with its ticket on that engine. The task
+   * is kept so that it can be submitted to another engine if the first one cannot be reached.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <T> The type of the results of the task.
+   */
+  private final class SubmittedTask<T> {
+
+    /** The id of the ticket of the task on this compute engine. */
+    private final long id;
+    private final Task<T> task;
+    private final long deadline;
+    private final Set<Node> tried = new HashSet<>();
+    private Node node;
+    private TaskTicket<T> ticket;
+    private boolean isCancelled;
+    /** True once the task no longer counts towards the outstanding tasks of its engine. */
+    private boolean isReleased;
+
+    /**
+     * Creates a new SubmittedTask.
+     * 
+     * @param id The id of the ticket of the task on this compute engine.
+     * @param task The task.
+     * @param deadline The time in milliseconds at which the task is cancelled, or 0 for none.
+     */
+    private SubmittedTask(long id, Task<T> task, long deadline) {
+      this.id = id;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Submits the task to the best engine.
+     * 
+     * @param failed The engines that could not be reached.
+     * @throws RemoteException If the task could not be submitted to any engine.
+     */
+    private synchronized void submit(Set<Node> failed) throws RemoteException {
+      tried.addAll(failed);
+      Node[] used = new Node[1];
+      ticket = invoke(new RemoteCall<TaskTicket<T>>() {
+
+        @Override
+        public TaskTicket<T> call(Compute compute) throws RemoteException {
+          if (deadline == 0) {
+            return compute.submitTask(task);
+          }
+          long timeoutMillis = deadline - System.currentTimeMillis();
+          if (timeoutMillis <= 0) {
+            throw new CancellationException("Deadline passed before the task could be submitted");
+          }
+          return compute.submitTask(task, timeoutMillis);
+        }
+
+      }, tried, used);
+      node = used[0];
+      node.outstanding.incrementAndGet();
+      isReleased = false;
+    }
+
+    /**
+     * Polls the task, submitting it again if its engine cannot be reached.
+     * 
+     * @return True if the task is done.
+     * @throws RemoteException If the task could not be submitted to any engine.
+     */
+    private synchronized boolean isDone() throws RemoteException {
+      try {
+        boolean isDone = node.getCompute().isDone(ticket);
+        if (isDone) {
+          // The engine is no longer working on the task, even if its results are never collected.
+          release();
+        }
+        return isDone;
+      }
+      catch (ServerException e) {
+        throw e;
+      }
+      catch (RemoteException e) {
+        resubmit();
+        return false;
+      }
+    }
+
+    /**
+     * Waits for the results of the task, submitting it again if its engine cannot be reached.
+     * 
+     * @param timeoutMillis The maximum number of milliseconds to wait.
+     * @return The results of the task.
+     * @throws RemoteException If the task could not be submitted to any engine.
+     * @throws TimeoutException If the task did not finish in time.
+     * @throws CancellationException If the task was cancelled.
+     */
+    private T awaitResult(long timeoutMillis) throws RemoteException, TimeoutException {
+      while (true) {
+        Node current;
+        TaskTicket<T> currentTicket;
+        synchronized (this) {
+          if (isCancelled) {
+            throw new CancellationException("Task was cancelled");
+          }
+          current = node;
+          currentTicket = ticket;
+        }
+        // Waited for without holding the lock, so that the task can be cancelled meanwhile.
+        try {
+          T result = current.getCompute().awaitResult(currentTicket, timeoutMillis);
+          finished(current);
+          return result;
+        }
+        catch (TimeoutException e) {
+          throw e;
+        }
+        catch (ServerException e) {
+          finished(current);
+          throw e;
+        }
+        catch (RemoteException e) {
+          synchronized (this) {
+            if (isCancelled) {
+              throw new CancellationException("Task was cancelled");
+            }
+            // Another thread that was waiting as well may have submitted the task again already.
+            if (node == current) {
+              resubmit();
+            }
+          }
+        }
+        catch (RuntimeException | Error e) {
+          // The task failed or was cancelled on the engine.
+          finished(current);
+          throw e;
+        }
+      }
+    }
+
+    /**
+     * Stops counting the task towards the outstanding tasks of the given engine once the task is
+     * done there, unless the task has been submitted to another engine since.
+     * 
+     * @param current The engine on which the task is done.
+     */
+    private synchronized void finished(Node current) {
+      if (node == current) {
+        release();
+      }
+    }
+
+    /**
+     * Cancels the task on its engine.
+     * 
+     * @return True if the task was cancelled, false if it was already done or its engine cannot be
+     * reached.
+     * @throws RemoteException If the engine failed to cancel the task.
+     */
+    private synchronized boolean cancel() throws RemoteException {
+      isCancelled = true;
+      release();
+      try {
+        return node.getCompute().cancelTask(ticket);
+      }
+      catch (ServerException e) {
+        throw e;
+      }
+      catch (RemoteException e) {
+        node.markUnhealthy();
+        return false;
+      }
+    }
+
+    /**
+     * Submits the task to another engine after its engine could not be reached.
+     * 
+     * @throws RemoteException If the task could not be submitted to any engine.
+     */
+    private void resubmit() throws RemoteException {
+      Node failed = this.node;
+      release();
+      failed.markUnhealthy();
+      submit(Collections.singleton(failed));
+    }
+
+    /** Stops counting the task towards the outstanding tasks of its engine, if not done already. */
+    private void release() {
+      if (!isReleased) {
+        isReleased = true;
+        node.outstanding.decrementAndGet();
+      }
+    }
+
+  }
+
+}
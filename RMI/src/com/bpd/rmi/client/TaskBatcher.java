@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import java.io.Closeable;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.Task;
+
+/**
+ * Coalesces individually submitted tasks into batches that are sent to a compute engine in a
+ * single call. A batch is sent as soon as it holds the maximum number of tasks, or once the oldest
+ * task in it has waited for the maximum delay, whichever comes first.
+ * <p>
+ * Batching is invisible to the callers, so a task that fails must not fail the other tasks that
+ * happen to be in its batch. A compute engine fails a whole batch if any task in it fails, so a
+ * batch that fails is sent again one task at a time, and each future gets the outcome of its own
+ * task. Only a batch that fails because the compute engine cannot be reached fails all at once.
+ * 
+ * @author BJ Peter DeLaCruz
+ * 
+ * @param <T> The type of the results of the tasks.
+ */
+public class TaskBatcher<T> implements Closeable {
+
+  /** Creates daemon threads so that a batcher that is never closed does not keep the JVM alive. */
+  private static final ThreadFactory DAEMON_THREADS = new ThreadFactory() {
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "TaskBatcher");
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  };
+
+  private final Compute compute;
+  private final int maxBatchSize;
+  private final long maxDelayMillis;
+  private final ScheduledExecutorService timer;
+  private final ExecutorService sender;
+
+  private List<Task<T>> pendingTasks = new ArrayList<>();
+  private List<PendingResult<T>> pendingResults = new ArrayList<>();
+  private ScheduledFuture<?> pendingFlush;
+  private boolean isClosed;
+
+  /**
+   * Creates a new TaskBatcher.
+   * 
+   * @param compute The compute engine to which to send batches.
+   * @param maxBatchSize The maximum number of tasks in a batch.
+   * @param maxDelayMillis The maximum number of milliseconds that a task waits before its batch is
+   * sent; 0 to send it as soon as possible.
+   */
+  public TaskBatcher(Compute compute, int maxBatchSize, long maxDelayMillis) {
+    if (compute == null) {
+      throw new IllegalArgumentException("compute is null");
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1: " + maxBatchSize);
+    }
+    if (maxDelayMillis < 0) {
+      throw new IllegalArgumentException("maxDelayMillis must not be negative: " + maxDelayMillis);
+    }
+    this.compute = compute;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayMillis = maxDelayMillis;
+    this.timer = Executors.newSingleThreadScheduledExecutor(DAEMON_THREADS);
+    this.sender = Executors.newCachedThreadPool(DAEMON_THREADS);
+  }
+
+  /**
+   * Adds the given task to the current batch.
+   * 
+   * @param task The task to execute.
+   * @return A future for the results of the given task.
+   */
+  public Future<T> submit(Task<T> task) {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    PendingResult<T> result = new PendingResult<>();
+    synchronized (this) {
+      if (isClosed) {
+        throw new IllegalStateException("TaskBatcher is closed");
+      }
+      pendingTasks.add(task);
+      pendingResults.add(result);
+      if (pendingTasks.size() >= maxBatchSize) {
+        flush();
+      }
+      else if (pendingFlush == null) {
+        pendingFlush = timer.schedule(new Runnable() {
+
+          @Override
+          public void run() {
+            flush();
+          }
+
+        }, maxDelayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sends the current batch right away, even if it is not full.
+   */
+  public synchronized void flush() {
+    if (pendingFlush != null) {
+      pendingFlush.cancel(false);
+      pendingFlush = null;
+    }
+    if (pendingTasks.isEmpty()) {
+      return;
+    }
+    final List<Task<T>> tasks = pendingTasks;
+    final List<PendingResult<T>> results = pendingResults;
+    pendingTasks = new ArrayList<>();
+    pendingResults = new ArrayList<>();
+    sender.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        send(tasks, results);
+      }
+
+    });
+  }
+
+  /**
+   * Sends the current batch and stops accepting new tasks. Batches that were already sent still
+   * complete.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (isClosed) {
+        return;
+      }
+      flush();
+      isClosed = true;
+    }
+    timer.shutdown();
+    sender.shutdown();
+  }
+
+  /**
+   * Sends a batch to the compute engine and completes the futures for its tasks. If the batch
+   * fails, its tasks are sent again one at a time so that only the futures of the tasks that fail
+   * are failed.
+   * 
+   * @param tasks The tasks in the batch.
+   * @param results The futures for the results of the tasks.
+   */
+  private void send(List<Task<T>> tasks, List<PendingResult<T>> results) {
+    List<T> values;
+    try {
+      values = compute.executeTasks(tasks);
+    }
+    catch (ServerException e) {
+      sendEach(tasks, results);
+      return;
+    }
+    catch (RemoteException e) {
+      // The engine could not be reached, which would not be any different for each task.
+      for (PendingResult<T> result : results) {
+        result.fail(e);
+      }
+      return;
+    }
+    catch (Throwable e) {
+      // Thrown by one of the tasks; errors are handed to the futures rather than thrown on the
+      // sender thread, where no one would see them.
+      sendEach(tasks, results);
+      return;
+    }
+    for (int i = 0; i < results.size(); i++) {
+      results.get(i).complete(values.get(i));
+    }
+  }
+
+  /**
+   * Sends the tasks of a batch to the compute engine one at a time and completes the future for
+   * each task with its own outcome.
+   * 
+   * @param tasks The tasks in the batch.
+   * @param results The futures for the results of the tasks.
+   */
+  private void sendEach(List<Task<T>> tasks, List<PendingResult<T>> results) {
+    for (int i = 0; i < tasks.size(); i++) {
+      try {
+        results.get(i).complete(compute.executeTask(tasks.get(i)));
+      }
+      catch (Throwable e) {
+        results.get(i).fail(e);
+      }
+    }
+  }
+
+  /**
+   * A future that is completed when the batch containing its task returns. It is a
+   * {@link FutureTask} only for the sake of {@link #set(Object)} and
+   * {@link #setException(Throwable)}; it has nothing to run.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <T> The type of the result of the task.
+   */
+  private static final class PendingResult<T> extends FutureTask<T> {
+
+    /** Passed to {@link FutureTask}, which needs something to run. */
+    private static final Runnable NOTHING = new Runnable() {
+
+      @Override
+      public void run() {
+        // Never run.
+      }
+
+    };
+
+    /** Creates a new PendingResult. */
+    private PendingResult() {
+      super(NOTHING, null);
+    }
+
+    /** Does nothing, since this future is only completed by the batch that contains its task. */
+    @Override
+    public void run() {
+      // Completed by complete or fail instead.
+    }
+
+    /**
+     * Completes this future with the given result.
+     * 
+     * @param result The result of the task.
+     */
+    private void complete(T result) {
+      set(result);
+    }
+
+    /**
+     * Completes this future with the given exception.
+     * 
+     * @param cause The reason why the task failed.
+     */
+    private void fail(Throwable cause) {
+      setException(cause);
+    }
+
+  }
+
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.io.File;
+import java.math.BigDecimal;
+import com.bpd.rmi.api.ChudnovskyPi;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.PiCheckpoint;
+
+/**
+ * A task to calculate PI that saves its progress to a {@link PiCheckpoint} while it runs, so that
+ * the same task submitted after the compute engine is restarted resumes where the last run left
+ * off. Only computations with {@value com.bpd.rmi.api.Pi#CHUDNOVSKY_DIGITS} or more digits are
+ * checkpointed; shorter ones do not take long enough to be worth it.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+final class CheckpointedPi extends Pi {
+
+  private static final long serialVersionUID = 1L;
+
+  private final File directory;
+  private final long intervalMillis;
+
+  /**
+   * Creates a new CheckpointedPi.
+   * 
+   * @param task The task to calculate PI.
+   * @param directory The directory in which to keep the checkpoint files.
+   * @param intervalMillis The minimum number of milliseconds between two checkpoints.
+   */
+  CheckpointedPi(Pi task, File directory, long intervalMillis) {
+    super(task.getDigits(), task.getParallelism(), task.getKernel());
+    this.directory = directory;
+    this.intervalMillis = intervalMillis;
+  }
+
+  /**
+   * Calculates PI, resuming from and saving to the checkpoint for the number of digits. The
+   * checkpoint files are deleted once PI has been computed.
+   * 
+   * @return PI computed to the given digits.
+   */
+  @Override
+  public BigDecimal execute() {
+    if (getDigits() < CHUDNOVSKY_DIGITS) {
+      return super.execute();
+    }
+    PiCheckpoint checkpoint = new PiCheckpoint(directory, getDigits(), intervalMillis);
+    boolean isComplete = false;
+    try {
+      BigDecimal pi = ChudnovskyPi.computePi(getDigits(), checkpoint);
+      isComplete = true;
+      return pi;
+    }
+    finally {
+      if (isComplete) {
+        checkpoint.delete();
+      }
+      else {
+        checkpoint.close();
+      }
+    }
+  }
+
+}
@@ -15,29 +15,705 @@
  ******************************************************************************/
 package com.bpd.rmi.server;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import com.bpd.rmi.api.CompactBigDecimal;
+import com.bpd.rmi.api.CompactPi;
 import com.bpd.rmi.api.Compute;
+import com.bpd.rmi.api.DigitStream;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.SplittableTask;
 import com.bpd.rmi.api.Task;
+import com.bpd.rmi.api.TaskTicket;
 
 /**
- * A compute engine for executing tasks from a client.
+ * A compute engine for executing tasks from a client. Tasks are executed by a fixed number of
+ * worker threads. Tasks that arrive while all of the workers are busy wait in a bounded queue; once
+ * the queue is full, new tasks are handed to the rejection policy, which by default rejects them
+ * with a {@link java.util.concurrent.RejectedExecutionException}. Values of PI are cached by a
+ * {@link PiCache}.
+ * <p>
+ * The queue hands out cheap tasks before expensive ones, so that a request for a million digits of
+ * PI does not hold up hundreds of requests for a hundred digits; see {@link CostPriorityQueue}.
+ * Tasks that implement {@link com.bpd.rmi.api.CostedTask} estimate their own cost, and all other
+ * tasks are assumed to be cheap. An expensive task only yields to cheaper tasks for a limited time
+ * per cost class, given by {@value #AGING_MILLIS_PROPERTY}, so it is never starved.
+ * <p>
+ * A {@link SplittableTask}, including a {@link Pi} task for Machin's formula, is split recursively
+ * on a work-stealing pool with one thread per worker until its parts are no larger than the split
+ * threshold, so a single large task can use every processor.
+ * <p>
+ * An engine created by {@link #withVirtualThreads(int)} instead runs every task on its own virtual
+ * thread, so that many short tasks do not wait behind a few long ones for a worker thread. The
+ * number of tasks that are computing at the same time is still limited to the number of processors
+ * by a separate semaphore, and tasks that are waiting for a permit take up no platform thread.
+ * Permits are handed out in FIFO order regardless of cost.
  * 
  * @author BJ Peter DeLaCruz
  */
 public class ComputeEngine implements Compute {
 
+  /** System property for the number of worker threads. */
+  public static final String POOL_SIZE_PROPERTY = "com.bpd.rmi.server.poolSize";
+
+  /** System property for the number of tasks that can wait for a worker thread. */
+  public static final String QUEUE_CAPACITY_PROPERTY = "com.bpd.rmi.server.queueCapacity";
+
+  /** System property for the approximate maximum number of bytes used by cached values of PI. */
+  public static final String PI_CACHE_BYTES_PROPERTY = "com.bpd.rmi.server.piCacheBytes";
+
+  /**
+   * System property that makes {@link #main(String[])} create an engine that runs tasks on virtual
+   * threads; the number of tasks that compute at the same time is read from
+   * {@value #POOL_SIZE_PROPERTY}.
+   */
+  public static final String VIRTUAL_THREADS_PROPERTY = "com.bpd.rmi.server.virtualThreads";
+
+  /**
+   * System property for the directory in which long computations of PI save checkpoints, so that
+   * they resume from the last checkpoint when they are submitted again after a restart. If it is not
+   * set, nothing is checkpointed.
+   */
+  public static final String CHECKPOINT_DIR_PROPERTY = "com.bpd.rmi.server.checkpointDir";
+
+  /** System property for the minimum number of milliseconds between two checkpoints. */
+  public static final String CHECKPOINT_INTERVAL_PROPERTY = "com.bpd.rmi.server.checkpointInterval";
+
+  /**
+   * System property for the number of milliseconds that a task yields to cheaper tasks per cost
+   * class above the cheapest one; 0 runs tasks in FIFO order.
+   */
+  public static final String AGING_MILLIS_PROPERTY = "com.bpd.rmi.server.agingMillis";
+
+  /**
+   * System property for the initial split threshold; see {@link #setSplitThreshold(long)}.
+   */
+  public static final String SPLIT_THRESHOLD_PROPERTY = "com.bpd.rmi.server.splitThreshold";
+
+  /**
+   * System property for the number of milliseconds for which the results of a submitted task are
+   * kept once it is done. Results that have not been collected by then are dropped, so that
+   * clients that go away do not leave them behind for good.
+   */
+  public static final String RESULT_TTL_PROPERTY = "com.bpd.rmi.server.resultTtl";
+
+  private static final int DEFAULT_QUEUE_CAPACITY = 100;
+
+  private static final long DEFAULT_RESULT_TTL_MILLIS = 10 * 60 * 1000;
+
+  /** A range of this many terms of Machin's formula takes a few milliseconds at 5000 digits. */
+  private static final long DEFAULT_SPLIT_THRESHOLD = 512;
+
+  private static final long DEFAULT_AGING_MILLIS = 1000;
+
+  private static final long DEFAULT_PI_CACHE_BYTES = 64L * 1024 * 1024;
+
+  private static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 60000;
+
+  private final ExecutorService executor;
+  private final int workerCount;
+  private final Semaphore cpuPermits;
+  private final SplitTaskExecutor splitExecutor;
+  private final ConcurrentMap<Long, Future<?>> submittedTasks = new ConcurrentHashMap<>();
+  private final AtomicLong nextTicketId = new AtomicLong();
+  private final ScheduledExecutorService deadlines = Executors
+      .newSingleThreadScheduledExecutor(new WorkerThreadFactory("deadlines"));
+  private final PiCache piCache = new PiCache(Long.getLong(PI_CACHE_BYTES_PROPERTY,
+      DEFAULT_PI_CACHE_BYTES));
+  private final EngineStatistics statistics;
+  private final File checkpointDirectory = getCheckpointDirectory();
+  private final long checkpointIntervalMillis = Long.getLong(CHECKPOINT_INTERVAL_PROPERTY,
+      DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+  private volatile long resultTtlMillis = Long.getLong(RESULT_TTL_PROPERTY,
+      DEFAULT_RESULT_TTL_MILLIS);
+
+  /**
+   * Creates a new ComputeEngine whose pool size and queue capacity are read from the
+   * {@value #POOL_SIZE_PROPERTY} and {@value #QUEUE_CAPACITY_PROPERTY} system properties. By
+   * default, there is one worker thread per processor.
+   */
+  public ComputeEngine() {
+    this(Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors()),
+        Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY));
+  }
+
+  /**
+   * Creates a new ComputeEngine that rejects tasks when its queue is full.
+   * 
+   * @param poolSize The number of worker threads.
+   * @param queueCapacity The number of tasks that can wait for a worker thread.
+   */
+  public ComputeEngine(int poolSize, int queueCapacity) {
+    this(poolSize, queueCapacity, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Creates a new ComputeEngine.
+   * 
+   * @param poolSize The number of worker threads.
+   * @param queueCapacity The number of tasks that can wait for a worker thread.
+   * @param rejectionPolicy The policy for tasks that arrive when the queue is full.
+   */
+  public ComputeEngine(int poolSize, int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+    this(poolSize, queueCapacity, Long.getLong(AGING_MILLIS_PROPERTY, DEFAULT_AGING_MILLIS),
+        rejectionPolicy);
+  }
+
+  /**
+   * Creates a new ComputeEngine.
+   * 
+   * @param poolSize The number of worker threads.
+   * @param queueCapacity The number of tasks that can wait for a worker thread.
+   * @param agingMillis The number of milliseconds that a task yields to cheaper tasks per cost
+   * class above the cheapest one; 0 for FIFO order.
+   * @param rejectionPolicy The policy for tasks that arrive when the queue is full.
+   */
+  public ComputeEngine(int poolSize, int queueCapacity, long agingMillis,
+      RejectedExecutionHandler rejectionPolicy) {
+    if (rejectionPolicy == null) {
+      throw new IllegalArgumentException("rejectionPolicy is null");
+    }
+    if (agingMillis < 0) {
+      throw new IllegalArgumentException("agingMillis must not be negative: " + agingMillis);
+    }
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new CostPriorityQueue(queueCapacity, agingMillis), new WorkerThreadFactory("worker"),
+            rejectionPolicy);
+    executor = pool;
+    workerCount = poolSize;
+    cpuPermits = null;
+    splitExecutor = newSplitTaskExecutor(poolSize);
+    statistics = new EngineStatistics(pool.getQueue(), null, piCache);
+  }
+
+  /**
+   * Creates a new ComputeEngine that runs each task on its own thread.
+   * 
+   * @param executor The executor that starts a thread per task.
+   * @param cpuLimit The number of tasks that can compute at the same time.
+   */
+  private ComputeEngine(ExecutorService executor, int cpuLimit) {
+    if (cpuLimit < 1) {
+      throw new IllegalArgumentException("cpuLimit must be at least 1");
+    }
+    this.executor = executor;
+    workerCount = cpuLimit;
+    cpuPermits = new Semaphore(cpuLimit, true);
+    splitExecutor = newSplitTaskExecutor(cpuLimit);
+    statistics = new EngineStatistics(null, cpuPermits, piCache);
+  }
+
+  /**
+   * Creates a new ComputeEngine that runs each task on its own virtual thread. No task is ever
+   * rejected; tasks that arrive while <code>cpuLimit</code> tasks are computing wait for one of
+   * them to finish. On a Java runtime without virtual threads, each task runs on its own platform
+   * thread instead.
+   * 
+   * @param cpuLimit The number of tasks that can compute at the same time, usually the number of
+   * processors.
+   * @return The new engine.
+   */
+  public static ComputeEngine withVirtualThreads(int cpuLimit) {
+    return new ComputeEngine(newThreadPerTaskExecutor(), cpuLimit);
+  }
+
+  /**
+   * Returns an executor that starts a new virtual thread for each task, or a new daemon thread if
+   * virtual threads are not available. Reflection is used because this code is compiled for
+   * runtimes that do not have virtual threads.
+   * 
+   * @return An executor that starts a new thread for each task.
+   */
+  static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(new WorkerThreadFactory("worker"));
+    }
+  }
+
+  /**
+   * Returns an executor for splittable tasks whose threshold is read from
+   * {@value #SPLIT_THRESHOLD_PROPERTY}.
+   * 
+   * @param parallelism The number of threads in the work-stealing pool.
+   * @return The executor.
+   */
+  private static SplitTaskExecutor newSplitTaskExecutor(int parallelism) {
+    return new SplitTaskExecutor(parallelism, Long.getLong(SPLIT_THRESHOLD_PROPERTY,
+        DEFAULT_SPLIT_THRESHOLD));
+  }
+
   /** {@inheritDoc} */
   @Override
   public <T> T executeTask(Task<T> task) throws RemoteException {
     if (task == null) {
       throw new IllegalArgumentException("task is null");
     }
+    Future<T> future = schedule(new TaskCallable<T>(task));
+    try {
+      return getResult(future);
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for task", e);
+    }
+  }
+
+  /**
+   * {@inheritDoc} The tasks are divided into one contiguous run per worker thread, so a batch takes
+   * up at most one place in the queue per worker thread no matter how many tasks it contains.
+   */
+  @Override
+  public <T> List<T> executeTasks(List<? extends Task<T>> tasks) throws RemoteException {
+    if (tasks == null) {
+      throw new IllegalArgumentException("tasks is null");
+    }
+    int runs = Math.min(tasks.size(), workerCount);
+    List<Future<List<T>>> futures = new ArrayList<>(runs);
+    try {
+      for (int i = 0; i < runs; i++) {
+        List<? extends Task<T>> run =
+            tasks.subList(i * tasks.size() / runs, (i + 1) * tasks.size() / runs);
+        futures.add(schedule(new BatchCallable<T>(run)));
+      }
+      List<T> results = new ArrayList<>(tasks.size());
+      for (Future<List<T>> future : futures) {
+        results.addAll(getResult(future));
+      }
+      return results;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for tasks", e);
+    }
+    finally {
+      // Only does something if a run was rejected or failed.
+      for (Future<List<T>> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc} The task is queued like any other task, and the returned stream is exported so
+   * that the client can read the digits once the task is done.
+   */
+  @Override
+  public DigitStream streamTask(Task<BigDecimal> task, int chunkSize) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    Future<BigDecimal> future = schedule(new TaskCallable<BigDecimal>(task));
+    DigitStreamImpl stream = new DigitStreamImpl(future, chunkSize);
+    try {
+      return (DigitStream) UnicastRemoteObject.exportObject(stream, 0);
+    }
+    catch (RemoteException e) {
+      future.cancel(true);
+      throw e;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> TaskTicket<T> submitTask(Task<T> task) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    TaskCallable<T> callable = new TaskCallable<T>(task);
+    TaskTicket<T> ticket = new TaskTicket<>(nextTicketId.incrementAndGet());
+    callable.setTicketId(ticket.getId());
+    submittedTasks.put(ticket.getId(), schedule(callable));
+    return ticket;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> TaskTicket<T> submitTask(Task<T> task, long timeoutMillis) throws RemoteException {
+    if (task == null) {
+      throw new IllegalArgumentException("task is null");
+    }
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+    }
+    TaskCallable<T> callable = new TaskCallable<T>(task);
+    final TaskTicket<T> ticket = new TaskTicket<>(nextTicketId.incrementAndGet());
+    callable.setTicketId(ticket.getId());
+    final Future<T> future = schedule(callable);
+    submittedTasks.put(ticket.getId(), future);
+    // The task may already be done by now. The timer therefore only cancels the future, which does
+    // nothing to a task that is done, so that its results are still there to be collected.
+    Future<?> timer = deadlines.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        cancel(ticket.getId(), future);
+      }
+
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    callable.setDeadline(timer);
+    if (future.isDone()) {
+      timer.cancel(false);
+    }
+    return ticket;
+  }
+
+  /**
+   * {@inheritDoc} A running task is interrupted, which {@link Pi} and the other tasks in this
+   * application check for between terms.
+   */
+  @Override
+  public boolean cancelTask(TaskTicket<?> ticket) {
+    if (ticket == null) {
+      throw new IllegalArgumentException("ticket is null");
+    }
+    Future<?> future = submittedTasks.get(ticket.getId());
+    return future != null && cancel(ticket.getId(), future);
+  }
+
+  /**
+   * Cancels the submitted task with the given ticket unless it is already done. The ticket is kept
+   * so that the client is told that the task was cancelled, until its results would have expired.
+   * 
+   * @param ticketId The id of the ticket of the task.
+   * @param future The future for the task.
+   * @return True if the task was cancelled, false if it was already done.
+   */
+  private boolean cancel(long ticketId, Future<?> future) {
+    if (!future.cancel(true)) {
+      return false;
+    }
+    if (executor instanceof ThreadPoolExecutor && future instanceof Runnable) {
+      // Frees the place in the queue now instead of when a worker gets to the cancelled task.
+      ((ThreadPoolExecutor) executor).remove((Runnable) future);
+    }
+    // A task that was still queued never runs, so its ticket is not dropped when it finishes.
+    expireLater(ticketId);
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isDone(TaskTicket<?> ticket) throws RemoteException {
+    return getFuture(ticket).isDone();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public <T> T awaitResult(TaskTicket<T> ticket, long timeoutMillis) throws RemoteException,
+      TimeoutException {
+    Future<T> future = getFuture(ticket);
+    try {
+      future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException | CancellationException e) {
+      // Handled by getResult below.
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for task", e);
+    }
+    submittedTasks.remove(ticket.getId());
+    try {
+      return getResult(future);
+    }
+    catch (InterruptedException e) {
+      // The task is already done, so this will not happen.
+      throw new RemoteException("Interrupted while waiting for task", e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getWireFormatVersion() {
+    return CompactPi.WIRE_FORMAT_VERSION;
+  }
+
+  /** @return The cache of values of PI computed by this engine. */
+  public PiCache getPiCache() {
+    return piCache;
+  }
+
+  /** @return The statistics about the tasks executed by this engine. */
+  public EngineStatistics getStatistics() {
+    return statistics;
+  }
+
+  /** @return The largest size of a splittable task that is executed without splitting it. */
+  public long getSplitThreshold() {
+    return splitExecutor.getThreshold();
+  }
+
+  /**
+   * Sets the largest size of a {@link SplittableTask} that is executed on one thread without
+   * splitting it; for {@link Pi}, the size is the number of terms of Machin's formula. A lower
+   * threshold spreads a task over more threads at the cost of more merging. Tasks that are already
+   * executing keep the old threshold.
+   * 
+   * @param threshold The threshold, at least 1.
+   */
+  public void setSplitThreshold(long threshold) {
+    splitExecutor.setThreshold(threshold);
+  }
+
+  /** @return The number of milliseconds for which uncollected results are kept. */
+  public long getResultTtlMillis() {
+    return resultTtlMillis;
+  }
+
+  /**
+   * Sets the number of milliseconds for which the results of a submitted task are kept once it is
+   * done. Tasks that are already done keep the old time.
+   * 
+   * @param ttlMillis The number of milliseconds, at least 1.
+   */
+  public void setResultTtlMillis(long ttlMillis) {
+    if (ttlMillis < 1) {
+      throw new IllegalArgumentException("ttlMillis must be at least 1: " + ttlMillis);
+    }
+    resultTtlMillis = ttlMillis;
+  }
+
+  /**
+   * Drops the results of the submitted task with the given ticket once they have been kept for
+   * {@link #getResultTtlMillis()}, in case the client never collects them.
+   * 
+   * @param ticketId The id of the ticket of the task.
+   */
+  private void expireLater(final long ticketId) {
+    try {
+      deadlines.schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          submittedTasks.remove(ticketId);
+        }
+
+      }, resultTtlMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      // The engine is shutting down.
+    }
+  }
+
+  /** @return True if this engine runs each task on its own thread. */
+  public boolean isThreadPerTask() {
+    return cpuPermits != null;
+  }
+
+  /**
+   * Shuts down the worker threads after all of the tasks that were already submitted are done.
+   */
+  public void shutdown() {
+    executor.shutdown();
+    deadlines.shutdownNow();
+    splitExecutor.shutdown();
+  }
+
+  /**
+   * Hands the given callable to the executor, which queues it by its cost class.
+   * 
+   * @param <V> The type of the result of the callable.
+   * @param callable The callable.
+   * @return The future for the result of the callable.
+   */
+  private <V> Future<V> schedule(ScheduledCallable<V> callable) {
+    FutureTask<V> future = new ScheduledTask<>(callable, callable.costClass);
+    executor.execute(future);
+    return future;
+  }
+
+  /**
+   * Returns the total estimated cost of the given tasks.
+   * 
+   * @param tasks The tasks.
+   * @return The total estimated cost in nanoseconds.
+   */
+  private static long totalCostOf(List<?> tasks) {
+    long cost = 0;
+    for (Object task : tasks) {
+      cost += CostPriorityQueue.estimatedCostOf(task);
+    }
+    return cost;
+  }
+
+  /**
+   * Executes the given task on the current thread and records its statistics. Values of PI are
+   * taken from the cache if possible.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param task The task to execute.
+   * @return The results of the task.
+   */
+  private <T> T executeCounted(Task<T> task) {
+    TaskStatistics taskStatistics = statistics.get(task);
+    boolean isSampled = taskStatistics.taskStarted(task);
+    long start = System.nanoTime();
+    T result = null;
+    boolean isFailed = true;
+    try {
+      result = executeUncounted(task);
+      isFailed = false;
+      return result;
+    }
+    finally {
+      taskStatistics.taskFinished(System.nanoTime() - start, isFailed, isSampled ? result : null);
+    }
+  }
+
+  /**
+   * Executes the given task without recording any statistics. Splittable tasks are executed on
+   * the work-stealing pool; all others on the current thread. Subclasses of {@link Pi} from
+   * clients are executed as they are on the current thread, since they may compute something other
+   * than PI, which must neither be shared through the cache nor be replaced by the split sum.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param task The task to execute.
+   * @return The results of the task.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T executeUncounted(Task<T> task) {
+    if (isPlainPi(task)) {
+      return (T) piCache.get(prepared((Pi) task));
+    }
+    if (task instanceof CompactPi && isPlainPi(((CompactPi) task).getPi())) {
+      CompactPi compactPi = (CompactPi) task;
+      return (T) new CompactBigDecimal(piCache.get(prepared(compactPi.getPi())),
+          compactPi.isCompressed());
+    }
+    if (task instanceof SplittableTask && !(task instanceof Pi)) {
+      return splitExecutor.execute((SplittableTask<T>) task);
+    }
     return task.execute();
   }
 
+  /**
+   * Returns true if the given task is a {@link Pi} itself rather than a subclass of it.
+   * 
+   * @param task The task.
+   * @return True if the task is exactly a {@link Pi}.
+   */
+  private static boolean isPlainPi(Object task) {
+    return task != null && task.getClass() == Pi.class;
+  }
+
+  /**
+   * Returns a task that is split on the work-stealing pool if it is large enough to be worth it,
+   * or that saves checkpoints while it computes PI if it uses {@link com.bpd.rmi.api.ChudnovskyPi}
+   * and checkpoints are enabled.
+   * 
+   * @param task The task to calculate PI.
+   * @return The task that is executed instead of the given one.
+   */
+  private Pi prepared(Pi task) {
+    if (task.getDigits() < Pi.CHUDNOVSKY_DIGITS) {
+      if (task.getSize() <= splitExecutor.getThreshold()) {
+        return task;
+      }
+      return new ForkJoinPi(task, splitExecutor);
+    }
+    if (checkpointDirectory == null) {
+      return task;
+    }
+    return new CheckpointedPi(task, checkpointDirectory, checkpointIntervalMillis);
+  }
+
+  /**
+   * Returns the directory given by {@value #CHECKPOINT_DIR_PROPERTY}, creating it if necessary.
+   * 
+   * @return The directory, or null if checkpoints are disabled or the directory cannot be created.
+   */
+  private static File getCheckpointDirectory() {
+    String path = System.getProperty(CHECKPOINT_DIR_PROPERTY);
+    if (path == null) {
+      return null;
+    }
+    File directory = new File(path);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      System.err.println("Checkpoints disabled; cannot create " + directory);
+      return null;
+    }
+    return directory;
+  }
+
+  /**
+   * Returns the future for the task with the given ticket.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param ticket The ticket returned when the task was submitted.
+   * @return The future for the task.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> Future<T> getFuture(TaskTicket<T> ticket) {
+    if (ticket == null) {
+      throw new IllegalArgumentException("ticket is null");
+    }
+    Future<T> future = (Future<T>) submittedTasks.get(ticket.getId());
+    if (future == null) {
+      throw new IllegalArgumentException("Unknown ticket: " + ticket);
+    }
+    return future;
+  }
+
+  /**
+   * Waits for the given future and returns its result. Exceptions thrown by the task are rethrown
+   * as is so that they are sent back to the client.
+   * 
+   * @param <T> The data type of the result of the task.
+   * @param future The future for the task.
+   * @return The results of the task.
+   * @throws RemoteException If the task threw a checked exception.
+   * @throws InterruptedException If the current thread was interrupted while waiting.
+   */
+  static <T> T getResult(Future<T> future) throws RemoteException, InterruptedException {
+    try {
+      return future.get();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RemoteException("Task failed", cause);
+    }
+  }
+
   /**
    * Sets up the ComputeEngine.
    * 
@@ -49,11 +725,21 @@ public class ComputeEngine implements Compute {
     }
     try {
       String name = "Compute";
-      Compute engine = new ComputeEngine();
+      ComputeEngine engine;
+      if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+        engine =
+            withVirtualThreads(Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime()
+                .availableProcessors()));
+      }
+      else {
+        engine = new ComputeEngine();
+      }
       Compute stub = (Compute) UnicastRemoteObject.exportObject(engine, 0);
       Registry registry = LocateRegistry.getRegistry();
       registry.rebind(name, stub);
       System.out.println("ComputeEngine bound.");
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.registerMBean(engine.getStatistics(), new ObjectName(EngineStatistics.OBJECT_NAME));
     }
     catch (Exception e) {
       System.err.println("ComputeEngine exception: ");
@@ -61,4 +747,182 @@ public class ComputeEngine implements Compute {
     }
   }
 
+  /**
+   * Work handed to the executor. Records how long the work waited for a worker thread and, if this
+   * engine runs each task on its own thread, for a permit to compute, before computing.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <V> The type of the result.
+   */
+  private abstract class ScheduledCallable<V> implements Callable<V> {
+
+    private final int costClass;
+    private final long createdNanos = System.nanoTime();
+
+    /**
+     * Creates a new ScheduledCallable.
+     * 
+     * @param costNanos The estimated cost of the work in nanoseconds.
+     */
+    private ScheduledCallable(long costNanos) {
+      costClass = CostPriorityQueue.costClassOf(costNanos);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public final V call() throws InterruptedException {
+      if (cpuPermits == null) {
+        statistics.taskWaited(costClass, System.nanoTime() - createdNanos);
+        return compute();
+      }
+      cpuPermits.acquire();
+      try {
+        statistics.taskWaited(costClass, System.nanoTime() - createdNanos);
+        return compute();
+      }
+      finally {
+        cpuPermits.release();
+      }
+    }
+
+    /**
+     * Does the work on the current thread.
+     * 
+     * @return The result.
+     */
+    abstract V compute();
+
+  }
+
+  /**
+   * Adapts a task to the {@link Callable} interface.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <T> The type of the results of the task.
+   */
+  private final class TaskCallable<T> extends ScheduledCallable<T> {
+
+    private final Task<T> task;
+    private volatile Future<?> deadline;
+    /** The id of the ticket of the task if it was submitted, 0 otherwise. */
+    private volatile long ticketId;
+
+    /**
+     * Creates a new TaskCallable.
+     * 
+     * @param task The task to execute.
+     */
+    private TaskCallable(Task<T> task) {
+      super(CostPriorityQueue.estimatedCostOf(task));
+      this.task = task;
+    }
+
+    /**
+     * Sets the timer that cancels the task at its deadline, so that the timer can be stopped once
+     * the task is done.
+     * 
+     * @param deadline The timer.
+     */
+    private void setDeadline(Future<?> deadline) {
+      this.deadline = deadline;
+    }
+
+    /**
+     * Sets the id of the ticket of the task, so that its results are dropped if they are not
+     * collected in time.
+     * 
+     * @param ticketId The id of the ticket.
+     */
+    private void setTicketId(long ticketId) {
+      this.ticketId = ticketId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    T compute() {
+      try {
+        return executeCounted(task);
+      }
+      finally {
+        Future<?> timer = deadline;
+        if (timer != null) {
+          timer.cancel(false);
+        }
+        if (ticketId != 0) {
+          expireLater(ticketId);
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Executes a run of tasks from a batch one after another. The run is queued as one task whose
+   * cost is the total cost of the tasks in it.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <T> The type of the results of the tasks.
+   */
+  private final class BatchCallable<T> extends ScheduledCallable<List<T>> {
+
+    private final List<? extends Task<T>> tasks;
+
+    /**
+     * Creates a new BatchCallable.
+     * 
+     * @param tasks The tasks to execute.
+     */
+    private BatchCallable(List<? extends Task<T>> tasks) {
+      super(totalCostOf(tasks));
+      this.tasks = tasks;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    List<T> compute() {
+      List<T> results = new ArrayList<>(tasks.size());
+      for (Task<T> task : tasks) {
+        if (task == null) {
+          throw new IllegalArgumentException("task is null");
+        }
+        results.add(executeCounted(task));
+      }
+      return results;
+    }
+
+  }
+
+  /**
+   * Creates named daemon threads for executing tasks.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private final String role;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates a new WorkerThreadFactory.
+     * 
+     * @param role What the threads are used for, which is part of their names.
+     */
+    private WorkerThreadFactory(String role) {
+      this.role = role;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread =
+          new Thread(runnable, "ComputeEngine-" + role + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
 }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of how long the tasks in one cost class waited before they started computing, as
+ * published through JMX.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class CostClassStatistics {
+
+  private final int costClass;
+  private final String estimatedCost;
+  private final long taskCount;
+  private final long waitP50Micros;
+  private final long waitP99Micros;
+  private final long waitMaxMicros;
+
+  /**
+   * Creates a new CostClassStatistics.
+   * 
+   * @param costClass The cost class, where 0 is the cheapest.
+   * @param estimatedCost The range of estimated costs in the cost class, e.g. "&lt; 10 ms".
+   * @param taskCount The number of tasks that started computing.
+   * @param waitP50Micros The median wait in microseconds.
+   * @param waitP99Micros The 99th percentile wait in microseconds.
+   * @param waitMaxMicros The maximum wait in microseconds.
+   */
+  @ConstructorProperties({ "costClass", "estimatedCost", "taskCount", "waitP50Micros",
+      "waitP99Micros", "waitMaxMicros" })
+  public CostClassStatistics(int costClass, String estimatedCost, long taskCount,
+      long waitP50Micros, long waitP99Micros, long waitMaxMicros) {
+    this.costClass = costClass;
+    this.estimatedCost = estimatedCost;
+    this.taskCount = taskCount;
+    this.waitP50Micros = waitP50Micros;
+    this.waitP99Micros = waitP99Micros;
+    this.waitMaxMicros = waitMaxMicros;
+  }
+
+  /** @return The cost class, where 0 is the cheapest. */
+  public int getCostClass() {
+    return costClass;
+  }
+
+  /** @return The range of estimated costs in the cost class. */
+  public String getEstimatedCost() {
+    return estimatedCost;
+  }
+
+  /** @return The number of tasks that started computing. */
+  public long getTaskCount() {
+    return taskCount;
+  }
+
+  /** @return The median wait in microseconds. */
+  public long getWaitP50Micros() {
+    return waitP50Micros;
+  }
+
+  /** @return The 99th percentile wait in microseconds. */
+  public long getWaitP99Micros() {
+    return waitP99Micros;
+  }
+
+  /** @return The maximum wait in microseconds. */
+  public long getWaitMaxMicros() {
+    return waitMaxMicros;
+  }
+
+}
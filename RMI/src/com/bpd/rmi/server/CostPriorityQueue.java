@@ -0,0 +1,422 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import com.bpd.rmi.api.CostedTask;
+
+/**
+ * A bounded queue for the worker pool of a compute engine that hands out short tasks before long
+ * ones. Tasks are sorted into cost classes by the decade of their estimated cost; see
+ * {@link #costClassOf(long)}. A task is ordered by the time it was queued plus an aging delay for
+ * each cost class above the cheapest one, so tasks within a class run in FIFO order, and a long
+ * task that has waited longer than its delay runs ahead of short tasks that arrive after that.
+ * <p>
+ * Runnables that are not {@link ScheduledTask}s are in the cheapest cost class.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+class CostPriorityQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  /** The number of cost classes. */
+  static final int COST_CLASSES = 6;
+
+  /** Estimated costs below this many nanoseconds are in the cheapest cost class. */
+  private static final long CHEAPEST_CLASS_NANOS = 1000000;
+
+  private final int capacity;
+  private final long agingNanos;
+  private final PriorityQueue<Entry> entries = new PriorityQueue<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  /** Breaks ties between tasks queued at the same time; guarded by lock. */
+  private long nextSequence;
+
+  /**
+   * Creates a new CostPriorityQueue.
+   * 
+   * @param capacity The maximum number of tasks in the queue.
+   * @param agingMillis The number of milliseconds that a task waits for each cost class above the
+   * cheapest one before tasks that are queued later in cheaper classes stop running ahead of it; 0
+   * for plain FIFO order.
+   */
+  CostPriorityQueue(int capacity, long agingMillis) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+    }
+    this.capacity = capacity;
+    this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+  }
+
+  /**
+   * Returns the estimated cost of the given task.
+   * 
+   * @param task The task.
+   * @return The estimated cost in nanoseconds, or 0 if the task does not estimate its cost.
+   */
+  static long estimatedCostOf(Object task) {
+    return task instanceof CostedTask ? ((CostedTask) task).getEstimatedCostNanos() : 0;
+  }
+
+  /**
+   * Returns the cost class for the given estimated cost: 0 for less than 1 ms, 1 for less than
+   * 10 ms, and so on, up to {@value #COST_CLASSES} - 1 for everything else.
+   * 
+   * @param costNanos The estimated cost in nanoseconds.
+   * @return The cost class.
+   */
+  static int costClassOf(long costNanos) {
+    int costClass = 0;
+    long bound = CHEAPEST_CLASS_NANOS;
+    while (costNanos >= bound && costClass < COST_CLASSES - 1) {
+      costClass++;
+      bound *= 10;
+    }
+    return costClass;
+  }
+
+  /**
+   * Describes the range of estimated costs in the given cost class.
+   * 
+   * @param costClass The cost class.
+   * @return A description of the range, e.g. "< 10 ms".
+   */
+  static String describe(int costClass) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(CHEAPEST_CLASS_NANOS);
+    for (int i = 0; i < costClass; i++) {
+      millis *= 10;
+    }
+    if (costClass == COST_CLASSES - 1) {
+      return ">= " + millis / 10 + " ms";
+    }
+    return "< " + millis + " ms";
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean offer(Runnable runnable) {
+    checkNotNull(runnable);
+    lock.lock();
+    try {
+      if (entries.size() >= capacity) {
+        return false;
+      }
+      enqueue(runnable);
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+    checkNotNull(runnable);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (entries.size() >= capacity) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(runnable);
+      return true;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void put(Runnable runnable) throws InterruptedException {
+    checkNotNull(runnable);
+    lock.lockInterruptibly();
+    try {
+      while (entries.size() >= capacity) {
+        notFull.await();
+      }
+      enqueue(runnable);
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Runnable poll() {
+    lock.lock();
+    try {
+      return dequeue();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (entries.isEmpty()) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Runnable take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (entries.isEmpty()) {
+        notEmpty.await();
+      }
+      return dequeue();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Runnable peek() {
+    lock.lock();
+    try {
+      Entry head = entries.peek();
+      return head == null ? null : head.runnable;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return capacity - entries.size();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(Object object) {
+    lock.lock();
+    try {
+      Iterator<Entry> iterator = entries.iterator();
+      while (iterator.hasNext()) {
+        if (iterator.next().runnable.equals(object)) {
+          iterator.remove();
+          notFull.signal();
+          return true;
+        }
+      }
+      return false;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int drainTo(Collection<? super Runnable> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+    if (collection == this) {
+      throw new IllegalArgumentException("Cannot drain a queue into itself");
+    }
+    lock.lock();
+    try {
+      int count = 0;
+      while (count < maxElements && !entries.isEmpty()) {
+        collection.add(dequeue());
+        count++;
+      }
+      return count;
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the tasks in the queue, in no particular order.
+   * Removing a task through the iterator removes it from the queue.
+   * 
+   * @return An iterator over the tasks in the queue.
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    final List<Runnable> snapshot = new ArrayList<>();
+    lock.lock();
+    try {
+      for (Entry entry : entries) {
+        snapshot.add(entry.runnable);
+      }
+    }
+    finally {
+      lock.unlock();
+    }
+    return new Iterator<Runnable>() {
+
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < snapshot.size();
+      }
+
+      @Override
+      public Runnable next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return snapshot.get(next++);
+      }
+
+      @Override
+      public void remove() {
+        if (next == 0) {
+          throw new IllegalStateException();
+        }
+        CostPriorityQueue.this.remove(snapshot.get(next - 1));
+      }
+
+    };
+  }
+
+  /**
+   * Adds the given task to the queue; the lock must be held.
+   * 
+   * @param runnable The task.
+   */
+  private void enqueue(Runnable runnable) {
+    int costClass =
+        runnable instanceof ScheduledTask ? ((ScheduledTask<?>) runnable).getCostClass() : 0;
+    entries.add(new Entry(runnable, System.nanoTime() + costClass * agingNanos, nextSequence++));
+    notEmpty.signal();
+  }
+
+  /**
+   * Removes the task that should run next from the queue; the lock must be held.
+   * 
+   * @return The task, or null if the queue is empty.
+   */
+  private Runnable dequeue() {
+    Entry head = entries.poll();
+    if (head == null) {
+      return null;
+    }
+    notFull.signal();
+    return head.runnable;
+  }
+
+  /**
+   * Throws an exception if the given task is null.
+   * 
+   * @param runnable The task.
+   */
+  private static void checkNotNull(Runnable runnable) {
+    if (runnable == null) {
+      throw new NullPointerException("runnable is null");
+    }
+  }
+
+  /**
+   * A task in the queue with the time at which it stops yielding to cheaper tasks.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class Entry implements Comparable<Entry> {
+
+    private final Runnable runnable;
+    private final long readyNanos;
+    private final long sequence;
+
+    /**
+     * Creates a new Entry.
+     * 
+     * @param runnable The task.
+     * @param readyNanos The time at which the task stops yielding to cheaper tasks.
+     * @param sequence The order in which the task was queued.
+     */
+    private Entry(Runnable runnable, long readyNanos, long sequence) {
+      this.runnable = runnable;
+      this.readyNanos = readyNanos;
+      this.sequence = sequence;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int compareTo(Entry other) {
+      // Subtract first, since System.nanoTime() may overflow.
+      long difference = readyNanos - other.readyNanos;
+      if (difference != 0) {
+        return difference < 0 ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+
+  }
+
+}
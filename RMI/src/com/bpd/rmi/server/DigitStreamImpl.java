@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.math.BigDecimal;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.bpd.rmi.api.DigitStream;
+
+/**
+ * A stream over the digits of a number that is being computed by a worker thread. The number is
+ * converted to a string once it has been computed, and the string is handed out in chunks. The
+ * stream unexports itself once the last chunk has been read or it is closed.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+class DigitStreamImpl implements DigitStream {
+
+  private final Future<BigDecimal> result;
+  private final int chunkSize;
+
+  /** The digits that have not been read yet, starting at position; guarded by this. */
+  private String digits;
+  private int position;
+  private volatile boolean isClosed;
+
+  /**
+   * Creates a new DigitStreamImpl.
+   * 
+   * @param result The number that is being computed.
+   * @param chunkSize The number of digits in each chunk.
+   */
+  DigitStreamImpl(Future<BigDecimal> result, int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be at least 1: " + chunkSize);
+    }
+    this.result = result;
+    this.chunkSize = chunkSize;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean awaitReady(long timeoutMillis) throws RemoteException {
+    try {
+      result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+      return true;
+    }
+    catch (TimeoutException e) {
+      return false;
+    }
+    catch (ExecutionException e) {
+      // Reported by nextChunk.
+      return true;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RemoteException("Interrupted while waiting for task", e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String nextChunk() throws RemoteException {
+    if (!isClosed && !hasDigits()) {
+      // Waited for without holding the lock, so that close can cancel the computation meanwhile.
+      String number;
+      try {
+        number = ComputeEngine.getResult(result).toPlainString();
+      }
+      catch (CancellationException e) {
+        if (isClosed) {
+          return null;
+        }
+        throw e;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RemoteException("Interrupted while waiting for task", e);
+      }
+      synchronized (this) {
+        if (digits == null && !isClosed) {
+          digits = number;
+        }
+      }
+    }
+    synchronized (this) {
+      if (isClosed) {
+        return null;
+      }
+      if (position >= digits.length()) {
+        close();
+        return null;
+      }
+      int end = Math.min(digits.length(), position + chunkSize);
+      String chunk = digits.substring(position, end);
+      position = end;
+      return chunk;
+    }
+  }
+
+  /** @return True if the number has been converted to digits, false otherwise. */
+  private synchronized boolean hasDigits() {
+    return digits != null;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void close() {
+    // Not synchronized, so that a call to nextChunk that is waiting for the number does not hold up
+    // the cancellation of its computation.
+    isClosed = true;
+    result.cancel(true);
+    synchronized (this) {
+      digits = null;
+    }
+    try {
+      // Forced, since this may be called from within a remote call to nextChunk.
+      UnicastRemoteObject.unexportObject(this, true);
+    }
+    catch (NoSuchObjectException e) {
+      // This stream was never exported, e.g. when the engine is used in the same JVM, or it has
+      // already been closed.
+    }
+  }
+
+}
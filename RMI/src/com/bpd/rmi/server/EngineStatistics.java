@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Collects statistics about the tasks executed by a compute engine, per task class, and publishes
+ * them through JMX.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class EngineStatistics implements EngineStatisticsMXBean {
+
+  /** The name under which {@link ComputeEngine#main(String[])} registers the statistics. */
+  public static final String OBJECT_NAME = "com.bpd.rmi.server:type=ComputeEngine";
+
+  private final BlockingQueue<Runnable> queue;
+  private final Semaphore cpuPermits;
+  private final PiCache piCache;
+  private final ConcurrentMap<Class<?>, TaskStatistics> statistics = new ConcurrentHashMap<>();
+  private final QueueWaitStatistics[] queueWaits =
+      new QueueWaitStatistics[CostPriorityQueue.COST_CLASSES];
+
+  /**
+   * Creates a new EngineStatistics.
+   * 
+   * @param queue The queue in which tasks wait for a worker thread, or null if there is none.
+   * @param cpuPermits The semaphore for which tasks wait before computing, or null if there is
+   * none.
+   * @param piCache The cache of values of PI.
+   */
+  EngineStatistics(BlockingQueue<Runnable> queue, Semaphore cpuPermits, PiCache piCache) {
+    this.queue = queue;
+    this.cpuPermits = cpuPermits;
+    this.piCache = piCache;
+    for (int i = 0; i < queueWaits.length; i++) {
+      queueWaits[i] = new QueueWaitStatistics(i);
+    }
+  }
+
+  /**
+   * Records how long a task waited before it started computing.
+   * 
+   * @param costClass The cost class of the task.
+   * @param waitNanos The number of nanoseconds that the task waited.
+   */
+  void taskWaited(int costClass, long waitNanos) {
+    queueWaits[costClass].taskWaited(waitNanos);
+  }
+
+  /**
+   * Returns the statistics for the class of the given task.
+   * 
+   * @param task The task.
+   * @return The statistics for the class of the given task.
+   */
+  TaskStatistics get(Object task) {
+    Class<?> taskClass = task.getClass();
+    TaskStatistics taskStatistics = statistics.get(taskClass);
+    if (taskStatistics == null) {
+      TaskStatistics newStatistics = new TaskStatistics(taskClass.getName());
+      taskStatistics = statistics.putIfAbsent(taskClass, newStatistics);
+      if (taskStatistics == null) {
+        taskStatistics = newStatistics;
+      }
+    }
+    return taskStatistics;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getQueuedCount() {
+    int count = 0;
+    if (queue != null) {
+      count += queue.size();
+    }
+    if (cpuPermits != null) {
+      count += cpuPermits.getQueueLength();
+    }
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getInFlightCount() {
+    int count = 0;
+    for (TaskClassStatistics taskStatistics : getTaskClassStatistics()) {
+      count += taskStatistics.getInFlightCount();
+    }
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getCompletedCount() {
+    long count = 0;
+    for (TaskClassStatistics taskStatistics : getTaskClassStatistics()) {
+      count += taskStatistics.getCompletedCount();
+    }
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getFailedCount() {
+    long count = 0;
+    for (TaskClassStatistics taskStatistics : getTaskClassStatistics()) {
+      count += taskStatistics.getFailedCount();
+    }
+    return count;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getPiCacheHitCount() {
+    return piCache.getHitCount() + piCache.getSharedComputationCount();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getPiCacheMissCount() {
+    return piCache.getMissCount();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getPiCacheEvictionCount() {
+    return piCache.getEvictionCount();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<TaskClassStatistics> getTaskClassStatistics() {
+    List<TaskClassStatistics> snapshots = new ArrayList<>();
+    for (TaskStatistics taskStatistics : statistics.values()) {
+      snapshots.add(taskStatistics.snapshot());
+    }
+    return snapshots;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<CostClassStatistics> getCostClassStatistics() {
+    List<CostClassStatistics> snapshots = new ArrayList<>(queueWaits.length);
+    for (QueueWaitStatistics queueWait : queueWaits) {
+      snapshots.add(queueWait.snapshot());
+    }
+    return snapshots;
+  }
+
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.List;
+
+/**
+ * The management interface for the statistics of a compute engine.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public interface EngineStatisticsMXBean {
+
+  /** @return The number of tasks waiting for a worker thread or for a permit to compute. */
+  int getQueuedCount();
+
+  /** @return The number of tasks that are executing. */
+  int getInFlightCount();
+
+  /** @return The number of tasks that completed normally. */
+  long getCompletedCount();
+
+  /** @return The number of tasks that threw an exception. */
+  long getFailedCount();
+
+  /** @return The number of requests for PI that were served from the cache. */
+  long getPiCacheHitCount();
+
+  /** @return The number of requests for PI that were computed. */
+  long getPiCacheMissCount();
+
+  /** @return The number of values of PI evicted from the cache. */
+  long getPiCacheEvictionCount();
+
+  /** @return The statistics for each task class. */
+  List<TaskClassStatistics> getTaskClassStatistics();
+
+  /**
+   * @return How long the tasks in each cost class waited before they started computing, from the
+   * cheapest class to the most expensive one.
+   */
+  List<CostClassStatistics> getCostClassStatistics();
+
+}
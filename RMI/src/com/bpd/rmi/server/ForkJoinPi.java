@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.math.BigDecimal;
+import com.bpd.rmi.api.Pi;
+
+/**
+ * A task to calculate PI that sums the power series in Machin's formula on the work-stealing pool
+ * of the compute engine instead of on a pool of its own, so that it can be cached by
+ * {@link PiCache} like any other task. The parallelism of the original task is not used.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+final class ForkJoinPi extends Pi {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient SplitTaskExecutor executor;
+
+  /**
+   * Creates a new ForkJoinPi.
+   * 
+   * @param task The task to calculate PI.
+   * @param executor The executor that splits the task.
+   */
+  ForkJoinPi(Pi task, SplitTaskExecutor executor) {
+    super(task.getDigits(), 1, task.getKernel());
+    this.executor = executor;
+  }
+
+  /**
+   * Calculates PI by splitting this task on the executor.
+   * 
+   * @return PI computed to the given digits.
+   */
+  @Override
+  public BigDecimal execute() {
+    return executor.execute(new Pi(getDigits(), 1, getKernel()));
+  }
+
+}
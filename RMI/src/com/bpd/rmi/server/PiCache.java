@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import com.bpd.rmi.api.Pi;
+
+/**
+ * A cache of values of PI computed by the compute engine. A request for N digits is served from
+ * any cached value that has at least N + {@value #GUARD_DIGITS} digits by rounding the cached value
+ * to N digits, so PI is never recomputed at a lower precision. The cache is bounded by the
+ * approximate number of bytes used by the cached values; the least recently used values are evicted
+ * first. Concurrent requests for the same number of digits share one computation.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class PiCache {
+
+  /** Number of extra digits that a cached value needs in order to be rounded to fewer digits. */
+  public static final int GUARD_DIGITS = 5;
+
+  /** Approximate number of bytes used by a BigDecimal apart from the digits themselves. */
+  private static final int BIG_DECIMAL_OVERHEAD = 64;
+
+  private final long maxBytes;
+
+  /** The cached values in least recently used order; guarded by this. */
+  private final LinkedHashMap<Integer, BigDecimal> values = new LinkedHashMap<>(16, 0.75f, true);
+  /** The number of digits of each cached value in sorted order; guarded by this. */
+  private final TreeSet<Integer> cachedDigits = new TreeSet<>();
+  /** The approximate number of bytes used by the cached values; guarded by this. */
+  private long usedBytes;
+
+  private final ConcurrentMap<Integer, FutureTask<BigDecimal>> inFlight =
+      new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong sharedComputations = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a new PiCache.
+   * 
+   * @param maxBytes The approximate maximum number of bytes used by the cached values.
+   */
+  public PiCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the value of PI for the given task from the cache. If there is no cached value with
+   * enough digits, the task is executed and its result is cached, unless the same number of digits
+   * is already being computed for another task, in which case that result is used. If the other
+   * task is cancelled, the value is computed for this task instead.
+   * 
+   * @param task The task to calculate PI.
+   * @return PI computed to the number of digits in the given task.
+   * @throws CancellationException If the current thread was interrupted.
+   */
+  public BigDecimal get(Pi task) {
+    BigDecimal pi = getOnce(task);
+    while (pi == null) {
+      pi = getOnce(task);
+    }
+    return pi;
+  }
+
+  /**
+   * Returns the value of PI for the given task from the cache, computing it if necessary.
+   * 
+   * @param task The task to calculate PI.
+   * @return PI computed to the number of digits in the given task, or null if the computation for
+   * another task that this task was waiting for was cancelled.
+   */
+  private BigDecimal getOnce(final Pi task) {
+    int digits = task.getDigits();
+    BigDecimal pi = getCached(digits);
+    if (pi != null) {
+      hits.incrementAndGet();
+      return pi;
+    }
+    FutureTask<BigDecimal> computation = new FutureTask<>(new Callable<BigDecimal>() {
+
+      @Override
+      public BigDecimal call() {
+        return task.execute();
+      }
+
+    });
+    FutureTask<BigDecimal> existing = inFlight.putIfAbsent(digits, computation);
+    if (existing != null) {
+      sharedComputations.incrementAndGet();
+      try {
+        return getResult(existing);
+      }
+      catch (CancellationException e) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw e;
+        }
+        return null;
+      }
+    }
+    try {
+      // Another computation may have finished between the first lookup and now.
+      pi = getCached(digits);
+      if (pi != null) {
+        hits.incrementAndGet();
+        computation.cancel(false);
+        return pi;
+      }
+      misses.incrementAndGet();
+      computation.run();
+      pi = getResult(computation);
+      put(digits, pi);
+      return pi;
+    }
+    finally {
+      inFlight.remove(digits, computation);
+    }
+  }
+
+  /**
+   * Returns PI rounded to the given number of digits from a cached value, if there is one with
+   * either exactly that many digits or at least {@value #GUARD_DIGITS} more.
+   * 
+   * @param digits The number of digits after the decimal point.
+   * @return PI computed to the given digits, or null if there is no suitable cached value.
+   */
+  synchronized BigDecimal getCached(int digits) {
+    BigDecimal pi = values.get(digits);
+    if (pi != null) {
+      return pi;
+    }
+    Integer moreDigits = cachedDigits.ceiling(digits + GUARD_DIGITS);
+    if (moreDigits == null) {
+      return null;
+    }
+    return values.get(moreDigits).setScale(digits, BigDecimal.ROUND_HALF_UP);
+  }
+
+  /**
+   * Adds the given value of PI to the cache, evicting the least recently used values if the cache
+   * is full.
+   * 
+   * @param digits The number of digits after the decimal point.
+   * @param pi PI computed to the given digits.
+   */
+  private synchronized void put(int digits, BigDecimal pi) {
+    long size = sizeOf(pi);
+    if (size > maxBytes || values.containsKey(digits)) {
+      return;
+    }
+    values.put(digits, pi);
+    cachedDigits.add(digits);
+    usedBytes += size;
+    Iterator<Map.Entry<Integer, BigDecimal>> iterator = values.entrySet().iterator();
+    while (usedBytes > maxBytes) {
+      Map.Entry<Integer, BigDecimal> eldest = iterator.next();
+      iterator.remove();
+      cachedDigits.remove(eldest.getKey());
+      usedBytes -= sizeOf(eldest.getValue());
+      evictions.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the approximate number of bytes used by the given value.
+   * 
+   * @param value The value.
+   * @return The approximate number of bytes used by the given value.
+   */
+  private static long sizeOf(BigDecimal value) {
+    return value.unscaledValue().bitLength() / 8 + BIG_DECIMAL_OVERHEAD;
+  }
+
+  /**
+   * Waits for the given computation and returns its result.
+   * 
+   * @param computation The computation.
+   * @return The value of PI.
+   * @throws CancellationException If the computation was cancelled, or if the current thread was
+   * interrupted while waiting; the computation itself goes on in the latter case.
+   */
+  private static BigDecimal getResult(FutureTask<BigDecimal> computation) {
+    try {
+      return computation.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while waiting for PI");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** @return The number of requests served from a cached value. */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /** @return The number of requests that computed PI. */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /** @return The number of requests that waited for a computation started by another request. */
+  public long getSharedComputationCount() {
+    return sharedComputations.get();
+  }
+
+  /** @return The number of values evicted to make room for new ones. */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /** @return The approximate number of bytes used by the cached values. */
+  public synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /** @return The number of cached values. */
+  public synchronized int size() {
+    return values.size();
+  }
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long the tasks in one cost class waited before they started computing, i.e. for a
+ * worker thread or for a permit to compute.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+class QueueWaitStatistics {
+
+  private final int costClass;
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLongArray waitBuckets = new AtomicLongArray(TaskStatistics.BUCKETS);
+
+  /**
+   * Creates a new QueueWaitStatistics.
+   * 
+   * @param costClass The cost class.
+   */
+  QueueWaitStatistics(int costClass) {
+    this.costClass = costClass;
+  }
+
+  /**
+   * Records that a task has waited.
+   * 
+   * @param waitNanos The number of nanoseconds that the task waited.
+   */
+  void taskWaited(long waitNanos) {
+    count.incrementAndGet();
+    waitBuckets.incrementAndGet(TaskStatistics.bucketOf(waitNanos));
+    long max = maxNanos.get();
+    while (waitNanos > max && !maxNanos.compareAndSet(max, waitNanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /** @return A snapshot of these statistics. */
+  CostClassStatistics snapshot() {
+    long[] counts = new long[waitBuckets.length()];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = waitBuckets.get(i);
+      total += counts[i];
+    }
+    return new CostClassStatistics(costClass, CostPriorityQueue.describe(costClass), count.get(),
+        TaskStatistics.toMicros(TaskStatistics.percentile(counts, total, 0.50)),
+        TaskStatistics.toMicros(TaskStatistics.percentile(counts, total, 0.99)),
+        TaskStatistics.toMicros(maxNanos.get()));
+  }
+
+}
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A task in the queue of a compute engine together with its cost class, which
+ * {@link CostPriorityQueue} uses to order it.
+ * 
+ * @author BJ Peter DeLaCruz
+ * 
+ * @param <V> The type of the result of the task.
+ */
+class ScheduledTask<V> extends FutureTask<V> {
+
+  private final int costClass;
+
+  /**
+   * Creates a new ScheduledTask.
+   * 
+   * @param callable The task.
+   * @param costClass The cost class of the task; see {@link CostPriorityQueue#costClassOf(long)}.
+   */
+  ScheduledTask(Callable<V> callable, int costClass) {
+    super(callable);
+    this.costClass = costClass;
+  }
+
+  /** @return The cost class of the task. */
+  int getCostClass() {
+    return costClass;
+  }
+
+}
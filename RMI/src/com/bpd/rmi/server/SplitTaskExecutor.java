@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import com.bpd.rmi.api.SplittableTask;
+
+/**
+ * Executes {@link SplittableTask}s on a work-stealing pool. A task whose size is above the split
+ * threshold is split, its parts are executed in parallel in the same way, and their results are
+ * merged; a task at or below the threshold is executed on one thread.
+ * <p>
+ * Cancelling a task stops it from being split or executed any further, but parts that have already
+ * started executing run to completion, so the threshold also bounds how long a cancelled task keeps
+ * the pool busy.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+final class SplitTaskExecutor {
+
+  private final ForkJoinPool pool;
+  private volatile long threshold;
+
+  /**
+   * Creates a new SplitTaskExecutor.
+   * 
+   * @param parallelism The number of threads in the pool.
+   * @param threshold The largest size of a task that is executed without splitting it.
+   */
+  SplitTaskExecutor(int parallelism, long threshold) {
+    pool = new ForkJoinPool(parallelism);
+    setThreshold(threshold);
+  }
+
+  /** @return The largest size of a task that is executed without splitting it. */
+  long getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Sets the largest size of a task that is executed without splitting it. Tasks that are already
+   * executing keep the old threshold.
+   * 
+   * @param threshold The threshold.
+   */
+  void setThreshold(long threshold) {
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold must be at least 1: " + threshold);
+    }
+    this.threshold = threshold;
+  }
+
+  /**
+   * Executes the given task on the pool and waits for its result.
+   * 
+   * @param <T> The type of the results of the task.
+   * @param task The task.
+   * @return The results of the task.
+   * @throws CancellationException If the current thread was interrupted while waiting.
+   */
+  <T> T execute(SplittableTask<T> task) {
+    SplitTask<T> root = new SplitTask<>(task, threshold, null);
+    pool.execute(root);
+    try {
+      return root.get();
+    }
+    catch (InterruptedException e) {
+      root.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while waiting for task");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** Stops the threads of the pool once they are idle. */
+  void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * A fork-join task that splits a {@link SplittableTask} until its parts are small enough.
+   * 
+   * @author BJ Peter DeLaCruz
+   * 
+   * @param <T> The type of the results of the task.
+   */
+  private static final class SplitTask<T> extends RecursiveTask<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final SplittableTask<T> task;
+    private final long threshold;
+    private final SplitTask<?> root;
+
+    /**
+     * Creates a new SplitTask.
+     * 
+     * @param task The task to execute.
+     * @param threshold The largest size of a task that is executed without splitting it.
+     * @param root The task that the given task is a part of, or null if it is not a part.
+     */
+    private SplitTask(SplittableTask<T> task, long threshold, SplitTask<?> root) {
+      this.task = task;
+      this.threshold = threshold;
+      this.root = root;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected T compute() {
+      if (root != null && root.isCancelled()) {
+        throw new CancellationException("Task was cancelled");
+      }
+      if (task.getSize() > threshold) {
+        List<? extends SplittableTask<T>> parts = task.split();
+        if (!parts.isEmpty()) {
+          List<SplitTask<T>> subtasks = new ArrayList<>(parts.size());
+          for (SplittableTask<T> part : parts) {
+            subtasks.add(new SplitTask<>(part, threshold, root == null ? this : root));
+          }
+          invokeAll(subtasks);
+          List<T> results = new ArrayList<>(subtasks.size());
+          for (SplitTask<T> subtask : subtasks) {
+            results.add(subtask.join());
+          }
+          return task.merge(results);
+        }
+      }
+      return task.execute();
+    }
+
+  }
+
+}
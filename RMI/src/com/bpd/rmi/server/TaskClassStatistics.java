@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the statistics for one task class, as published through JMX.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TaskClassStatistics {
+
+  private final String taskClass;
+  private final long completedCount;
+  private final long failedCount;
+  private final int inFlightCount;
+  private final long latencyP50Micros;
+  private final long latencyP99Micros;
+  private final long latencyMaxMicros;
+  private final long meanArgumentBytes;
+  private final long meanResultBytes;
+
+  /**
+   * Creates a new TaskClassStatistics.
+   * 
+   * @param taskClass The name of the task class.
+   * @param completedCount The number of tasks that completed normally.
+   * @param failedCount The number of tasks that threw an exception.
+   * @param inFlightCount The number of tasks that are executing.
+   * @param latencyP50Micros The median latency in microseconds.
+   * @param latencyP99Micros The 99th percentile latency in microseconds.
+   * @param latencyMaxMicros The maximum latency in microseconds.
+   * @param meanArgumentBytes The mean serialized size of a sample of the tasks.
+   * @param meanResultBytes The mean serialized size of a sample of the results.
+   */
+  @ConstructorProperties({ "taskClass", "completedCount", "failedCount", "inFlightCount",
+      "latencyP50Micros", "latencyP99Micros", "latencyMaxMicros", "meanArgumentBytes",
+      "meanResultBytes" })
+  public TaskClassStatistics(String taskClass, long completedCount, long failedCount,
+      int inFlightCount, long latencyP50Micros, long latencyP99Micros, long latencyMaxMicros,
+      long meanArgumentBytes, long meanResultBytes) {
+    this.taskClass = taskClass;
+    this.completedCount = completedCount;
+    this.failedCount = failedCount;
+    this.inFlightCount = inFlightCount;
+    this.latencyP50Micros = latencyP50Micros;
+    this.latencyP99Micros = latencyP99Micros;
+    this.latencyMaxMicros = latencyMaxMicros;
+    this.meanArgumentBytes = meanArgumentBytes;
+    this.meanResultBytes = meanResultBytes;
+  }
+
+  /** @return The name of the task class. */
+  public String getTaskClass() {
+    return taskClass;
+  }
+
+  /** @return The number of tasks that completed normally. */
+  public long getCompletedCount() {
+    return completedCount;
+  }
+
+  /** @return The number of tasks that threw an exception. */
+  public long getFailedCount() {
+    return failedCount;
+  }
+
+  /** @return The number of tasks that are executing. */
+  public int getInFlightCount() {
+    return inFlightCount;
+  }
+
+  /** @return The median latency in microseconds. */
+  public long getLatencyP50Micros() {
+    return latencyP50Micros;
+  }
+
+  /** @return The 99th percentile latency in microseconds. */
+  public long getLatencyP99Micros() {
+    return latencyP99Micros;
+  }
+
+  /** @return The maximum latency in microseconds. */
+  public long getLatencyMaxMicros() {
+    return latencyMaxMicros;
+  }
+
+  /** @return The mean serialized size of a sample of the tasks, in bytes. */
+  public long getMeanArgumentBytes() {
+    return meanArgumentBytes;
+  }
+
+  /** @return The mean serialized size of a sample of the results, in bytes. */
+  public long getMeanResultBytes() {
+    return meanResultBytes;
+  }
+
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the number of tasks, their latency, and the serialized sizes of their arguments and
+ * results for one task class. Recording a task only updates a few atomic counters; the serialized
+ * sizes are measured for one task out of every {@value #SIZE_SAMPLE_INTERVAL}, and a sample is
+ * skipped if the object could not be serialized.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+class TaskStatistics {
+
+  /** Measure the serialized sizes of one task out of this many; must be a power of two. */
+  static final int SIZE_SAMPLE_INTERVAL = 64;
+
+  /** Each power of two is split into this many buckets, i.e. latencies are within 12.5%. */
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** The number of buckets needed for any latency. */
+  static final int BUCKETS = 64 * SUB_BUCKETS;
+
+  private final String taskClass;
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong sampledTasks = new AtomicLong();
+  private final AtomicLong sampledArgumentBytes = new AtomicLong();
+  private final AtomicLong sampledResults = new AtomicLong();
+  private final AtomicLong sampledResultBytes = new AtomicLong();
+
+  /**
+   * Creates a new TaskStatistics.
+   * 
+   * @param taskClass The name of the task class.
+   */
+  TaskStatistics(String taskClass) {
+    this.taskClass = taskClass;
+  }
+
+  /**
+   * Records that a task has started.
+   * 
+   * @param task The task.
+   * @return True if the serialized size of the result of this task should also be measured.
+   */
+  boolean taskStarted(Object task) {
+    inFlight.incrementAndGet();
+    if ((started.getAndIncrement() & (SIZE_SAMPLE_INTERVAL - 1)) != 0) {
+      return false;
+    }
+    long size = serializedSize(task);
+    if (size >= 0) {
+      sampledArgumentBytes.addAndGet(size);
+      sampledTasks.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Records that a task has finished.
+   * 
+   * @param elapsedNanos The number of nanoseconds that the task took.
+   * @param isFailed True if the task threw an exception.
+   * @param result The results of the task if their size should be measured, null otherwise.
+   */
+  void taskFinished(long elapsedNanos, boolean isFailed, Object result) {
+    inFlight.decrementAndGet();
+    if (isFailed) {
+      failed.incrementAndGet();
+    }
+    else {
+      completed.incrementAndGet();
+    }
+    latencyBuckets.incrementAndGet(bucketOf(elapsedNanos));
+    long max = maxNanos.get();
+    while (elapsedNanos > max && !maxNanos.compareAndSet(max, elapsedNanos)) {
+      max = maxNanos.get();
+    }
+    if (result != null) {
+      long size = serializedSize(result);
+      // Results that cannot be serialized are left out of the mean rather than counted as -1.
+      if (size >= 0) {
+        sampledResultBytes.addAndGet(size);
+        sampledResults.incrementAndGet();
+      }
+    }
+  }
+
+  /** @return A snapshot of these statistics. */
+  TaskClassStatistics snapshot() {
+    long[] counts = new long[latencyBuckets.length()];
+    long total = 0;
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = latencyBuckets.get(i);
+      total += counts[i];
+    }
+    long tasks = sampledTasks.get();
+    long results = sampledResults.get();
+    return new TaskClassStatistics(taskClass, completed.get(), failed.get(), inFlight.get(),
+        toMicros(percentile(counts, total, 0.50)), toMicros(percentile(counts, total, 0.99)),
+        toMicros(maxNanos.get()), tasks == 0 ? 0 : sampledArgumentBytes.get() / tasks,
+        results == 0 ? 0 : sampledResultBytes.get() / results);
+  }
+
+  /**
+   * Returns the index of the bucket that holds the given latency.
+   * 
+   * @param nanos The latency in nanoseconds.
+   * @return The index of the bucket.
+   */
+  static int bucketOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) Math.max(nanos, 0);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | subBucket;
+  }
+
+  /**
+   * Returns the largest latency that falls into the given bucket.
+   * 
+   * @param bucket The index of the bucket.
+   * @return The largest latency in nanoseconds.
+   */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+    long subBucket = bucket & (SUB_BUCKETS - 1);
+    return ((SUB_BUCKETS | subBucket) + 1 << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * Returns the latency below which the given fraction of the tasks fall.
+   * 
+   * @param counts The number of tasks in each bucket.
+   * @param total The total number of tasks.
+   * @param fraction The fraction, e.g. 0.99 for the 99th percentile.
+   * @return The latency in nanoseconds, or 0 if there are no tasks.
+   */
+  static long percentile(long[] counts, long total, double fraction) {
+    long rank = (long) Math.ceil(total * fraction);
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank && seen > 0) {
+        return upperBoundOf(i);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Converts nanoseconds to microseconds.
+   * 
+   * @param nanos The number of nanoseconds.
+   * @return The number of microseconds.
+   */
+  static long toMicros(long nanos) {
+    return nanos / 1000;
+  }
+
+  /**
+   * Returns the number of bytes that the given object takes up when it is serialized.
+   * 
+   * @param object The object.
+   * @return The number of bytes, or -1 if the object could not be serialized.
+   */
+  private static long serializedSize(Object object) {
+    ByteCounter counter = new ByteCounter();
+    try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+      out.writeObject(object);
+    }
+    catch (IOException e) {
+      return -1;
+    }
+    return counter.count;
+  }
+
+  /**
+   * An output stream that only counts the bytes written to it.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class ByteCounter extends OutputStream {
+
+    private long count;
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+
+  }
+
+}
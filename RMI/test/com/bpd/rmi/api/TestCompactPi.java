@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.RemoteObject;
+import java.rmi.server.RemoteObjectInvocationHandler;
+import java.rmi.server.UnicastRemoteObject;
+import org.junit.Test;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Tests the compact wire format of {@link CompactPi} and {@link CompactBigDecimal}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestCompactPi {
+
+  /**
+   * Tests that values survive the round trip and take fewer bytes than with default serialization.
+   * 
+   * @throws Exception If a value could not be serialized.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    for (int digits : new int[] { 0, 10, 1000, 20000 }) {
+      BigDecimal pi = Pi.computePi(digits);
+      for (boolean isCompressed : new boolean[] { false, true }) {
+        CompactBigDecimal compact = new CompactBigDecimal(pi, isCompressed);
+        assertEquals(pi, roundTrip(compact).getValue());
+        assertTrue(digits + " digits", serialize(compact).length < serialize(pi).length);
+      }
+      BigDecimal negative = pi.negate();
+      assertEquals(negative, roundTrip(new CompactBigDecimal(negative, false)).getValue());
+    }
+    Pi task = new Pi(123, 3, Pi.Kernel.FIXED_POINT);
+    CompactPi compactTask = roundTrip(new CompactPi(task, true));
+    assertEquals(123, compactTask.getPi().getDigits());
+    assertEquals(3, compactTask.getPi().getParallelism());
+    assertEquals(Pi.Kernel.FIXED_POINT, compactTask.getPi().getKernel());
+    assertTrue(compactTask.isCompressed());
+    assertTrue(serialize(compactTask).length < serialize(task).length);
+
+    // Tasks that are computed sequentially may carry any parallelism of 1 or less.
+    for (int parallelism : new int[] { 0, -1 }) {
+      compactTask = roundTrip(new CompactPi(new Pi(10, parallelism), false));
+      assertEquals(parallelism, compactTask.getPi().getParallelism());
+      assertEquals(Pi.computePi(10), compactTask.execute().getValue());
+    }
+  }
+
+  /**
+   * Tests that large values that compress are deflated.
+   * 
+   * @throws Exception If a value could not be serialized.
+   */
+  @Test
+  public void testCompression() throws Exception {
+    BigDecimal value = new BigDecimal(BigInteger.ONE.shiftLeft(100000), 7);
+    CompactBigDecimal compressed = new CompactBigDecimal(value, true);
+    assertEquals(value, roundTrip(compressed).getValue());
+    assertTrue(serialize(compressed).length * 10 < serialize(new CompactBigDecimal(value, false))
+        .length);
+  }
+
+  /**
+   * Tests that corrupt values, including a deflated value that asks for a preset dictionary and
+   * lengths far too large to allocate, are rejected instead of hanging or running out of memory.
+   * 
+   * @throws Exception If a value could not be written.
+   */
+  @Test(timeout = 10000)
+  public void testCorruptValues() throws Exception {
+    // A zlib header with the FDICT flag set, followed by the id of a dictionary and some data.
+    byte[] needsDictionary = { 0x78, 0x20, 0, 0, 0, 1, 0x4B, 0x4C, 0x4A, 0x06, 0, 0 };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeInt(0);
+      out.writeByte(1);
+      out.writeInt(10);
+      out.writeInt(needsDictionary.length);
+      out.write(needsDictionary);
+    }
+    assertCorrupt(bytes.toByteArray());
+
+    for (int encoding = 0; encoding <= 1; encoding++) {
+      bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeInt(0);
+        out.writeByte(encoding);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(Integer.MAX_VALUE);
+      }
+      assertCorrupt(bytes.toByteArray());
+    }
+  }
+
+  /**
+   * Asserts that the given fields of a {@link CompactBigDecimal} are rejected.
+   * 
+   * @param bytes The fields, written to an object output stream.
+   * @throws Exception If the fields could not be read.
+   */
+  private static void assertCorrupt(byte[] bytes) throws Exception {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      new CompactBigDecimal().readExternal(in);
+      fail("Corrupt value was read.");
+    }
+    catch (InvalidObjectException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Tests that a new compute engine accepts compact tasks, and that one that predates the compact
+   * wire format is detected through RMI instead of failing.
+   * 
+   * @throws Exception If the engines could not be exported.
+   */
+  @Test
+  public void testNegotiation() throws Exception {
+    ComputeEngine engine = new ComputeEngine(1, 1);
+    try {
+      assertTrue(CompactPi.isSupportedBy(engine));
+      CompactBigDecimal pi = engine.executeTask(new CompactPi(new Pi(50), false));
+      assertEquals(Pi.computePi(50), pi.getValue());
+    }
+    finally {
+      engine.shutdown();
+    }
+    OldComputeEngine oldEngine = new OldComputeEngine();
+    Remote stub = UnicastRemoteObject.exportObject(oldEngine, 0);
+    try {
+      RemoteObject handler = (RemoteObject) Proxy.getInvocationHandler(stub);
+      // A client that was compiled against the new interface but talks to an old engine.
+      Compute compute =
+          (Compute) Proxy.newProxyInstance(Compute.class.getClassLoader(),
+              new Class<?>[] { Compute.class }, new RemoteObjectInvocationHandler(handler.getRef()));
+      assertFalse(CompactPi.isSupportedBy(compute));
+      assertEquals(Pi.computePi(50), compute.executeTask(new Pi(50)));
+    }
+    finally {
+      UnicastRemoteObject.unexportObject(oldEngine, true);
+    }
+  }
+
+  /**
+   * Serializes the given object.
+   * 
+   * @param object The object to serialize.
+   * @return The serialized object.
+   * @throws IOException If the object could not be serialized.
+   */
+  private static byte[] serialize(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(object);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Serializes and deserializes the given object.
+   * 
+   * @param <T> The type of the object.
+   * @param object The object to serialize.
+   * @return The deserialized copy of the object.
+   * @throws Exception If the object could not be serialized or deserialized.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T roundTrip(T object) throws Exception {
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(serialize(object)))) {
+      return (T) in.readObject();
+    }
+  }
+
+  /**
+   * The remote interface of a compute engine that predates the compact wire format.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  interface OldCompute extends Remote {
+
+    /**
+     * Executes the given task.
+     * 
+     * @param <T> The data type of the result of this task.
+     * @param t The task to execute.
+     * @return The results of the given task.
+     * @throws RemoteException If a communication or protocol error has occurred.
+     */
+    <T> T executeTask(Task<T> t) throws RemoteException;
+
+  }
+
+  /**
+   * A compute engine that predates the compact wire format.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  static final class OldComputeEngine implements OldCompute {
+
+    /** {@inheritDoc} */
+    @Override
+    public <T> T executeTask(Task<T> t) {
+      return t.execute();
+    }
+
+  }
+
+}
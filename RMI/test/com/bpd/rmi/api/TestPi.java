@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Tests the different ways of computing PI in {@link Pi}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestPi {
+
+  private static final int[] DIGITS = { 0, 1, 2, 10, 100, 999, 1000, 2500, 5000 };
+
+  /**
+   * Tests that computing PI with a fork-join pool returns exactly the same digits as computing PI
+   * sequentially.
+   */
+  @Test
+  public void testParallelMatchesSequential() {
+    for (int digits : DIGITS) {
+      BigDecimal expected = Pi.computePi(digits);
+      for (int parallelism = 2; parallelism <= 4; parallelism++) {
+        String msg = digits + " digits, parallelism " + parallelism;
+        assertEquals(msg, expected, Pi.computePi(digits, parallelism));
+      }
+    }
+  }
+
+  /**
+   * Tests that merging the sums of the ranges returned by {@link Pi#split(int)} gives exactly the
+   * same digits as computing PI in one piece.
+   */
+  @Test
+  public void testSplitAndMerge() {
+    for (int digits : DIGITS) {
+      Pi pi = new Pi(digits);
+      BigDecimal expected = Pi.computePi(digits);
+      for (int parts : new int[] { 1, 2, 3, 7, 1000 }) {
+        List<BigDecimal> partialSums = new ArrayList<>();
+        for (PiSeriesRange range : pi.split(parts)) {
+          partialSums.add(range.execute());
+        }
+        assertEquals(digits + " digits, " + parts + " parts", expected, pi.merge(partialSums));
+      }
+    }
+  }
+
+  /**
+   * Tests that splitting a task recursively down to ranges of a few terms, as a compute engine
+   * does, and merging the results gives exactly the same digits as computing PI in one piece.
+   */
+  @Test
+  public void testSplitRecursively() {
+    for (int digits : DIGITS) {
+      for (Pi.Kernel kernel : Pi.Kernel.values()) {
+        Pi pi = new Pi(digits, 1, kernel);
+        assertEquals(digits + " digits, " + kernel, Pi.computePi(digits), splitAndMerge(pi, 16));
+      }
+    }
+    assertTrue(new Pi(Pi.CHUDNOVSKY_DIGITS).split().isEmpty());
+  }
+
+  /**
+   * Splits the given task until its parts are no larger than the threshold, executes the parts,
+   * and merges the results.
+   * 
+   * @param task The task.
+   * @param threshold The largest size of a part.
+   * @return The results of the task.
+   */
+  private static BigDecimal splitAndMerge(SplittableTask<BigDecimal> task, long threshold) {
+    if (task.getSize() <= threshold) {
+      return task.execute();
+    }
+    List<? extends SplittableTask<BigDecimal>> parts = task.split();
+    assertEquals(2, parts.size());
+    List<BigDecimal> results = new ArrayList<>();
+    long size = 0;
+    for (SplittableTask<BigDecimal> part : parts) {
+      size += part.getSize();
+      results.add(splitAndMerge(part, threshold));
+    }
+    assertEquals(task.getSize(), size);
+    return task.merge(results);
+  }
+
+  /**
+   * Tests that every way of computing PI gives up soon after the computing thread is interrupted.
+   * 
+   * @throws Exception If the test was interrupted.
+   */
+  @Test
+  public void testCancellation() throws Exception {
+    Pi[] tasks =
+        { new Pi(9000), new Pi(9000, 4), new Pi(9000, 1, Pi.Kernel.FIXED_POINT),
+            new Pi(9000, 4, Pi.Kernel.FIXED_POINT), new Pi(2000000) };
+    for (final Pi task : tasks) {
+      final AtomicReference<Throwable> thrown = new AtomicReference<>();
+      Thread thread = new Thread() {
+
+        @Override
+        public void run() {
+          try {
+            // Far more work than the test allows, so that only cancellation can end it in time.
+            for (int i = 0; i < 1000; i++) {
+              task.execute();
+            }
+          }
+          catch (CancellationException e) {
+            thrown.set(e);
+          }
+        }
+
+      };
+      thread.start();
+      Thread.sleep(100);
+      thread.interrupt();
+      thread.join(10000);
+      assertFalse(task + " still running", thread.isAlive());
+      assertTrue(task + " not cancelled", thrown.get() instanceof CancellationException);
+    }
+  }
+
+  /**
+   * Tests that the fixed-point kernel returns exactly the same digits as the BigDecimal kernel,
+   * both sequentially and in parallel.
+   */
+  @Test
+  public void testFixedPointMatchesBigDecimal() {
+    for (int digits : DIGITS) {
+      BigDecimal expected = Pi.computePi(digits);
+      assertEquals(digits + " digits", expected, Pi.computePi(digits, 1, Pi.Kernel.FIXED_POINT));
+      assertEquals(digits + " digits", expected, Pi.computePi(digits, 3, Pi.Kernel.FIXED_POINT));
+    }
+    for (int inverseX : new int[] { 2, 5, 239 }) {
+      for (int fromTerm : new int[] { 0, 1, 10 }) {
+        for (int toTerm : new int[] { fromTerm + 1, fromTerm + 50, Integer.MAX_VALUE }) {
+          assertEquals(Pi.Kernel.BIG_DECIMAL.arctan(inverseX, 777, fromTerm, toTerm),
+              Pi.Kernel.FIXED_POINT.arctan(inverseX, 777, fromTerm, toTerm));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that the Chudnovsky series returns exactly the same digits as Machin's formula.
+   */
+  @Test
+  public void testChudnovskyMatchesMachin() {
+    for (int digits : DIGITS) {
+      assertEquals(digits + " digits", Pi.computePi(digits), ChudnovskyPi.computePi(digits));
+    }
+    int digits = Pi.CHUDNOVSKY_DIGITS;
+    assertEquals(Pi.computePi(digits, 2), new Pi(digits).execute());
+  }
+
+  /**
+   * Tests the integer square root used by the Chudnovsky series.
+   */
+  @Test
+  public void testSqrt() {
+    for (long n = 0; n < 1000; n++) {
+      long root = ChudnovskyPi.sqrt(BigInteger.valueOf(n)).longValue();
+      assertTrue(root * root <= n && (root + 1) * (root + 1) > n);
+    }
+    BigInteger root = BigInteger.TEN.pow(500).add(BigInteger.valueOf(7));
+    assertEquals(root, ChudnovskyPi.sqrt(root.multiply(root)));
+    assertEquals(root, ChudnovskyPi.sqrt(root.multiply(root).add(root).add(root)));
+    assertEquals(root.subtract(BigInteger.ONE),
+        ChudnovskyPi.sqrt(root.multiply(root).subtract(BigInteger.ONE)));
+  }
+
+  /**
+   * Tests that the sum of the terms of an arctangent series split into ranges is the same as the
+   * sum of all of the terms at once.
+   */
+  @Test
+  public void testArctanRanges() {
+    int scale = 1005;
+    int terms = Pi.termCount(5, scale);
+    BigDecimal sum = Pi.arctan(5, scale, 0, terms / 3);
+    sum = sum.add(Pi.arctan(5, scale, terms / 3, Integer.MAX_VALUE));
+    assertEquals(Pi.arctan(5, scale, 0, Integer.MAX_VALUE), sum);
+  }
+
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests resuming {@link ChudnovskyPi} from a {@link PiCheckpoint}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestPiCheckpoint {
+
+  private static final int DIGITS = 20000;
+
+  /** The number of terms of the series for {@value #DIGITS} digits. */
+  private static final int TERMS = 1431;
+
+  private File directory;
+
+  /**
+   * Creates the directory for the checkpoint files.
+   * 
+   * @throws IOException If the directory could not be created.
+   */
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("checkpoints").toFile();
+  }
+
+  /** Deletes the checkpoint files. */
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      assertTrue(file.delete());
+    }
+    assertTrue(directory.delete());
+  }
+
+  /**
+   * Tests that resuming from any number of combined terms gives exactly the same digits as an
+   * uninterrupted computation, and that the checkpoint is really used.
+   * 
+   * @throws IOException If a checkpoint could not be written.
+   */
+  @Test
+  public void testResumeIsBitIdentical() throws IOException {
+    BigDecimal expected = ChudnovskyPi.computePi(DIGITS);
+    for (int terms : new int[] { 1, 700, 701, TERMS - 1 }) {
+      PiCheckpoint checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+      assertNull(checkpoint.load());
+      checkpoint.save(ChudnovskyPi.split(0, terms).toState(terms));
+      checkpoint.close();
+      checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+      assertEquals(terms + " terms", expected, ChudnovskyPi.computePi(DIGITS, checkpoint));
+      checkpoint.delete();
+    }
+    PiCheckpoint checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+    checkpoint.load();
+    PiCheckpoint.State state = ChudnovskyPi.split(0, 700).toState(700);
+    checkpoint.save(new PiCheckpoint.State(700, state.getP(), state.getQ(), state.getT().add(
+        BigInteger.ONE)));
+    checkpoint.close();
+    checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+    assertFalse(expected.equals(ChudnovskyPi.computePi(DIGITS, checkpoint)));
+    checkpoint.delete();
+  }
+
+  /**
+   * Tests that checkpoints are saved while computing, and that the last one resumes to the same
+   * digits.
+   */
+  @Test
+  public void testSavesWhileComputing() {
+    BigDecimal expected = ChudnovskyPi.computePi(DIGITS);
+    PiCheckpoint checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+    assertEquals(expected, ChudnovskyPi.computePi(DIGITS, checkpoint));
+    checkpoint.close();
+    assertNull(checkpoint.getFailure());
+    checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+    PiCheckpoint.State state = checkpoint.load();
+    assertNotNull(state);
+    assertTrue(state.getTerms() > 0 && state.getTerms() < TERMS);
+    assertEquals(expected, ChudnovskyPi.computePi(DIGITS, checkpoint));
+    checkpoint.delete();
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  /**
+   * Tests that a corrupt file is ignored in favor of the older checkpoint in the other file.
+   * 
+   * @throws IOException If a checkpoint could not be written.
+   */
+  @Test
+  public void testCorruptFileIsIgnored() throws IOException {
+    PiCheckpoint checkpoint = new PiCheckpoint(directory, DIGITS, 0);
+    checkpoint.load();
+    checkpoint.save(ChudnovskyPi.split(0, 100).toState(100));
+    checkpoint.save(ChudnovskyPi.split(0, 200).toState(200));
+    checkpoint.close();
+    assertEquals(200, new PiCheckpoint(directory, DIGITS, 0).load().getTerms());
+    corrupt(new File(directory, "pi-" + DIGITS + ".1.checkpoint"));
+    assertEquals(100, new PiCheckpoint(directory, DIGITS, 0).load().getTerms());
+    corrupt(new File(directory, "pi-" + DIGITS + ".0.checkpoint"));
+    assertNull(new PiCheckpoint(directory, DIGITS, 0).load());
+    assertNull(new PiCheckpoint(directory, DIGITS + 1, 0).load());
+  }
+
+  /**
+   * Flips the bits of the last byte of the given file.
+   * 
+   * @param file The file.
+   * @throws IOException If the file could not be changed.
+   */
+  private static void corrupt(File file) throws IOException {
+    try (RandomAccessFile contents = new RandomAccessFile(file, "rw")) {
+      contents.seek(contents.length() - 1);
+      int last = contents.read();
+      contents.seek(contents.length() - 1);
+      contents.write(~last);
+    }
+  }
+
+}
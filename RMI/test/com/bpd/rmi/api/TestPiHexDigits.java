@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests {@link PiHexDigits}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestPiHexDigits {
+
+  /**
+   * Tests that the hexadecimal digits at the first positions are the same as the ones converted
+   * from PI computed by {@link Pi}.
+   */
+  @Test
+  public void testMatchesPi() {
+    int count = 800;
+    // Each hexadecimal digit needs log10(16) decimal digits.
+    BigDecimal pi = Pi.computePi((int) Math.ceil(count * Math.log10(16)) + 10);
+    assertEquals(toHex(pi, count), PiHexDigits.range(1, count).execute());
+    assertEquals("243F6A8885A308D3", PiHexDigits.range(1, 16).execute());
+  }
+
+  /**
+   * Tests the published run of digits that starts at position one million.
+   */
+  @Test
+  public void testFarPositions() {
+    assertEquals("26C6", PiHexDigits.range(1000000, 4).execute());
+  }
+
+  /**
+   * Tests that splitting the positions and merging the digits gives the same digits in the same
+   * order.
+   */
+  @Test
+  public void testSplitAndMerge() {
+    PiHexDigits task = new PiHexDigits(500, 3, 77, 1, 4096);
+    assertEquals(500 + 3 + 77 + 1 + 4096, task.getSize());
+    List<PiHexDigits> halves = task.split();
+    assertEquals(2, halves.size());
+    assertEquals(task.getSize(), halves.get(0).getSize() + halves.get(1).getSize());
+    List<String> results = new ArrayList<>();
+    for (PiHexDigits half : halves) {
+      results.add(half.execute());
+    }
+    assertEquals(task.execute(), task.merge(results));
+    assertEquals(0, new PiHexDigits(5).split().size());
+  }
+
+  /** Tests modular exponentiation against {@link BigInteger#modPow(BigInteger, BigInteger)}. */
+  @Test
+  public void testPowMod() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1000; i++) {
+      long modulus = 1 + random.nextInt(Integer.MAX_VALUE);
+      long exponent = random.nextInt(Integer.MAX_VALUE);
+      long expected =
+          BigInteger.valueOf(16).modPow(BigInteger.valueOf(exponent), BigInteger.valueOf(modulus))
+              .longValue();
+      assertEquals(expected, PiHexDigits.powMod(16, exponent, modulus));
+    }
+    assertEquals(0, PiHexDigits.powMod(16, 0, 1));
+  }
+
+  /** Tests that positions out of range are rejected. */
+  @Test
+  public void testInvalidPositions() {
+    for (long position : new long[] { 0, -1, PiHexDigits.MAX_POSITION + 1 }) {
+      try {
+        new PiHexDigits(position);
+        fail("Position " + position + " should have been rejected.");
+      }
+      catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+
+  /**
+   * Converts the fractional part of the given number to hexadecimal digits.
+   * 
+   * @param value The number.
+   * @param count The number of digits.
+   * @return The digits in upper case.
+   */
+  private static String toHex(BigDecimal value, int count) {
+    BigDecimal fraction = value.subtract(new BigDecimal(value.toBigInteger()));
+    BigDecimal sixteen = BigDecimal.valueOf(16);
+    StringBuilder digits = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      fraction = fraction.multiply(sixteen);
+      int digit = fraction.intValue();
+      digits.append(Character.toUpperCase(Character.forDigit(digit, 16)));
+      fraction = fraction.subtract(BigDecimal.valueOf(digit));
+    }
+    return digits.toString();
+  }
+
+}
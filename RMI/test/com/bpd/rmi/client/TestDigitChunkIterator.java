@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.bpd.rmi.api.DigitStream;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Tests streaming the digits of PI through a {@link DigitChunkIterator}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestDigitChunkIterator {
+
+  private ComputeEngine engine;
+
+  /** Creates the engine used by a test. */
+  @Before
+  public void setUp() {
+    engine = new ComputeEngine(2, 10);
+  }
+
+  /** Shuts down the engine used by a test. */
+  @After
+  public void tearDown() {
+    engine.shutdown();
+  }
+
+  /**
+   * Tests that the chunks add up to the whole number and that each chunk has the requested size.
+   * 
+   * @throws Exception If the digits could not be streamed.
+   */
+  @Test
+  public void testStreamDigits() throws Exception {
+    DigitStream stream = engine.streamTask(new Pi(2000), 300);
+    assertTrue(stream.awaitReady(60000));
+    StringBuilder digits = new StringBuilder();
+    try (DigitChunkIterator chunks = new DigitChunkIterator(stream, 2)) {
+      while (chunks.hasNext()) {
+        String chunk = chunks.next();
+        assertTrue(chunk.length() == 300 || !chunks.hasNext());
+        digits.append(chunk);
+      }
+    }
+    assertEquals(Pi.computePi(2000).toPlainString(), digits.toString());
+  }
+
+  /**
+   * Tests that an exception thrown while fetching a chunk reaches the caller, even when the queue
+   * of fetched chunks is full at the time.
+   * 
+   * @throws Exception If the iterator could not be closed.
+   */
+  @Test(timeout = 10000)
+  public void testFailure() throws Exception {
+    DigitStream stream = new DigitStream() {
+
+      private int count;
+
+      @Override
+      public boolean awaitReady(long timeoutMillis) {
+        return true;
+      }
+
+      @Override
+      public String nextChunk() {
+        if (count == 2) {
+          throw new ArithmeticException("Division by zero");
+        }
+        return Integer.toString(count++);
+      }
+
+      @Override
+      public void close() {
+        // Nothing to release.
+      }
+
+    };
+    try (DigitChunkIterator chunks = new DigitChunkIterator(stream, 1)) {
+      // Let the fetcher fill the queue and fail while it is full.
+      Thread.sleep(100);
+      assertEquals("0", chunks.next());
+      assertEquals("1", chunks.next());
+      try {
+        chunks.hasNext();
+        fail("Failure of stream was not reported");
+      }
+      catch (IllegalStateException e) {
+        assertTrue(e.getCause() instanceof ArithmeticException);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.rmi.NoSuchObjectException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.api.TaskTicket;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Tests {@link LoadBalancedCompute} against several compute engines bound in a registry in the same
+ * JVM. One endpoint has nothing bound to it, so every test also exercises failover.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestLoadBalancedCompute {
+
+  private static final int ENGINE_COUNT = 3;
+
+  private final List<ComputeEngine> engines = new ArrayList<>();
+  private Registry registry;
+  private int port;
+  private LoadBalancedCompute compute;
+
+  /**
+   * Creates a registry and binds the compute engines used by a test.
+   * 
+   * @throws Exception If the engines could not be bound.
+   */
+  @Before
+  public void setUp() throws Exception {
+    port = getFreePort();
+    registry = LocateRegistry.createRegistry(port);
+    List<String> endpoints = new ArrayList<>();
+    endpoints.add("localhost:" + port + "/Missing");
+    for (int i = 1; i <= ENGINE_COUNT; i++) {
+      ComputeEngine engine = new ComputeEngine(2, 10);
+      engines.add(engine);
+      registry.rebind("Compute" + i, UnicastRemoteObject.exportObject(engine, 0));
+      endpoints.add(getEndpoint(i));
+    }
+    compute = new LoadBalancedCompute(endpoints);
+  }
+
+  /**
+   * Unexports the registry and the compute engines used by a test.
+   * 
+   * @throws Exception If the engines could not be unexported.
+   */
+  @After
+  public void tearDown() throws Exception {
+    compute.shutdown();
+    for (ComputeEngine engine : engines) {
+      try {
+        UnicastRemoteObject.unexportObject(engine, true);
+      }
+      catch (NoSuchObjectException e) {
+        // Already unexported by the test.
+      }
+      engine.shutdown();
+    }
+    UnicastRemoteObject.unexportObject(registry, true);
+  }
+
+  /**
+   * Tests that PI split over the engines has exactly the same digits as PI computed in one piece,
+   * and that every engine summed part of it.
+   * 
+   * @throws Exception If PI could not be computed.
+   */
+  @Test
+  public void testSplitPi() throws Exception {
+    assertEquals(Pi.computePi(2000), compute.executeTask(new Pi(2000)));
+    for (ComputeEngine engine : engines) {
+      assertTrue(engine.getStatistics().getCompletedCount() > 0);
+    }
+  }
+
+  /**
+   * Tests that a batch of tasks is spread over the engines and that the results are in the same
+   * order as the tasks.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testExecuteTasks() throws Exception {
+    List<Pi> tasks = new ArrayList<>();
+    List<BigDecimal> expected = new ArrayList<>();
+    for (int digits = 10; digits < 20; digits++) {
+      tasks.add(new Pi(digits));
+      expected.add(Pi.computePi(digits));
+    }
+    assertEquals(expected, compute.executeTasks(tasks));
+  }
+
+  /**
+   * Tests that a task can be submitted and its results collected later on.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testSubmitAndAwait() throws Exception {
+    TaskTicket<BigDecimal> ticket = compute.submitTask(new Pi(100));
+    assertEquals(Pi.computePi(100), compute.awaitResult(ticket, 10000));
+  }
+
+  /**
+   * Tests that a task submitted with a deadline can be cancelled through the engine it was sent to.
+   * 
+   * @throws Exception If the task could not be submitted.
+   */
+  @Test
+  public void testCancel() throws Exception {
+    TaskTicket<BigDecimal> ticket = compute.submitTask(new Pi(9500), 60000);
+    assertTrue(compute.cancelTask(ticket));
+    assertFalse(compute.cancelTask(ticket));
+  }
+
+  /**
+   * Tests that PI executed with a deadline is still split over the engines, and that
+   * {@link LoadBalancedCompute#cancelAll()} cancels a task while another thread is executing it.
+   * 
+   * @throws Exception If PI could not be computed.
+   */
+  @Test
+  public void testExecuteWithDeadlineAndCancelAll() throws Exception {
+    assertEquals(Pi.computePi(2000), compute.executeTask(new Pi(2000), 60000));
+    for (ComputeEngine engine : engines) {
+      assertTrue(engine.getStatistics().getCompletedCount() > 0);
+    }
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+
+        @Override
+        public Boolean call() throws Exception {
+          return compute.executeTask(new SleepingTask(), 0);
+        }
+
+      });
+      while (compute.cancelAll() == 0) {
+        Thread.sleep(10);
+      }
+      try {
+        result.get(10, TimeUnit.SECONDS);
+        fail("Task should have been cancelled.");
+      }
+      catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof CancellationException);
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that a task rejected by an engine whose queue is full is executed on another engine.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testRetryAfterRejection() throws Exception {
+    ComputeEngine busy = new ComputeEngine(1, 1);
+    engines.add(busy);
+    registry.rebind("Busy", UnicastRemoteObject.exportObject(busy, 0));
+    List<TaskTicket<Boolean>> tickets = new ArrayList<>();
+    LoadBalancedCompute withBusy =
+        new LoadBalancedCompute(Arrays.asList("localhost:" + port + "/Busy", getEndpoint(1)));
+    try {
+      tickets.add(busy.submitTask(new SleepingTask()));
+      while (busy.getStatistics().getInFlightCount() == 0) {
+        Thread.sleep(10);
+      }
+      tickets.add(busy.submitTask(new SleepingTask()));
+      for (int i = 0; i < 4; i++) {
+        TaskTicket<BigDecimal> ticket = withBusy.submitTask(new Pi(100));
+        assertEquals(Pi.computePi(100), withBusy.awaitResult(ticket, 10000));
+      }
+      assertEquals(0, busy.getStatistics().getCompletedCount());
+      assertEquals(0, withBusy.getOutstandingCount());
+    }
+    finally {
+      withBusy.shutdown();
+      for (TaskTicket<Boolean> ticket : tickets) {
+        busy.cancelTask(ticket);
+      }
+    }
+  }
+
+  /**
+   * Tests that a task stops counting towards the outstanding tasks of its engine once it is done,
+   * even if its results are never collected, and that it is not taken off twice.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testOutstandingCount() throws Exception {
+    TaskTicket<BigDecimal> ticket = compute.submitTask(new Pi(100));
+    assertEquals(1, compute.getOutstandingCount());
+    while (!compute.isDone(ticket)) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, compute.getOutstandingCount());
+    assertEquals(Pi.computePi(100), compute.awaitResult(ticket, 10000));
+    assertEquals(0, compute.getOutstandingCount());
+
+    ticket = compute.submitTask(new Pi(100));
+    while (!compute.isDone(ticket)) {
+      Thread.sleep(10);
+    }
+    assertFalse(compute.cancelTask(ticket));
+    assertEquals(0, compute.getOutstandingCount());
+  }
+
+  /**
+   * Tests that a task can be cancelled while another thread is waiting for its results, without
+   * waiting for that thread to time out.
+   * 
+   * @throws Exception If the task could not be submitted.
+   */
+  @Test
+  public void testCancelWhileAwaiting() throws Exception {
+    final TaskTicket<Boolean> ticket = compute.submitTask(new SleepingTask());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> result = executor.submit(new Callable<Boolean>() {
+
+        @Override
+        public Boolean call() throws Exception {
+          return compute.awaitResult(ticket, 60000);
+        }
+
+      });
+      // Gives the other thread time to start waiting.
+      Thread.sleep(500);
+      long start = System.currentTimeMillis();
+      assertTrue(compute.cancelTask(ticket));
+      assertTrue(System.currentTimeMillis() - start < 10000);
+      try {
+        result.get(10, TimeUnit.SECONDS);
+        fail("Task should have been cancelled.");
+      }
+      catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof CancellationException);
+      }
+      assertEquals(0, compute.getOutstandingCount());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Tests that a task submitted to an engine that goes away is submitted again to another engine.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testResubmitAfterFailure() throws Exception {
+    LoadBalancedCompute single =
+        new LoadBalancedCompute(Arrays.asList(getEndpoint(1), getEndpoint(2)));
+    try {
+      TaskTicket<BigDecimal> ticket = single.submitTask(new Pi(100));
+      while (!single.isDone(ticket)) {
+        Thread.sleep(10);
+      }
+      for (ComputeEngine engine : engines.subList(0, 2)) {
+        if (engine.getStatistics().getCompletedCount() > 0) {
+          UnicastRemoteObject.unexportObject(engine, true);
+        }
+      }
+      assertEquals(Pi.computePi(100), single.awaitResult(ticket, 10000));
+    }
+    finally {
+      single.shutdown();
+    }
+  }
+
+  /**
+   * Returns the endpoint of the given engine.
+   * 
+   * @param engineNumber The number of the engine, starting at 1.
+   * @return The endpoint of the engine.
+   */
+  private String getEndpoint(int engineNumber) {
+    return "localhost:" + port + "/Compute" + engineNumber;
+  }
+
+  /**
+   * Returns a port that no one is listening on.
+   * 
+   * @return A free port.
+   * @throws IOException If no port could be found.
+   */
+  private static int getFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * A task that sleeps until it is cancelled.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class SleepingTask implements Task<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public Boolean execute() {
+      try {
+        Thread.sleep(Long.MAX_VALUE);
+        return true;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.server.ComputeEngine;
+
+/**
+ * Tests {@link TaskBatcher} against a compute engine in the same JVM.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestTaskBatcher {
+
+  private ComputeEngine engine;
+
+  /** Creates the engine used by a test. */
+  @Before
+  public void setUp() {
+    engine = new ComputeEngine(2, 10);
+  }
+
+  /** Shuts down the engine used by a test. */
+  @After
+  public void tearDown() {
+    engine.shutdown();
+  }
+
+  /**
+   * Tests that full batches and a partial batch are all sent, and that each future gets the result
+   * of its own task.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testBatchesBySizeAndTime() throws Exception {
+    TaskBatcher<BigDecimal> batcher = new TaskBatcher<>(engine, 4, 20);
+    List<Future<BigDecimal>> futures = new ArrayList<>();
+    for (int digits = 0; digits < 10; digits++) {
+      futures.add(batcher.submit(new Pi(digits)));
+    }
+    // The last two tasks are only sent when the time window ends.
+    for (int digits = 0; digits < 10; digits++) {
+      assertEquals(Pi.computePi(digits), futures.get(digits).get(60, TimeUnit.SECONDS));
+    }
+    batcher.close();
+  }
+
+  /**
+   * Tests that a task that fails with an error fails only its own future, rather than every future
+   * in its batch or none of them.
+   * 
+   * @throws Exception If the tasks could not be submitted.
+   */
+  @Test
+  public void testFailedTask() throws Exception {
+    TaskBatcher<BigDecimal> batcher = new TaskBatcher<>(engine, 3, 60000);
+    Future<BigDecimal> first = batcher.submit(new Pi(10));
+    Future<BigDecimal> failed = batcher.submit(new FailingTask());
+    Future<BigDecimal> last = batcher.submit(new Pi(20));
+    assertEquals(Pi.computePi(10), first.get(60, TimeUnit.SECONDS));
+    assertEquals(Pi.computePi(20), last.get(60, TimeUnit.SECONDS));
+    try {
+      failed.get(60, TimeUnit.SECONDS);
+      fail("Task should have failed.");
+    }
+    catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof AssertionError);
+    }
+    batcher.close();
+
+    try {
+      new TaskBatcher<BigDecimal>(engine, 3, -1);
+      fail("Created a batcher with a negative delay");
+    }
+    catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * A task that fails with an error.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class FailingTask implements Task<BigDecimal> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public BigDecimal execute() {
+      throw new AssertionError("Failed on purpose");
+    }
+
+  }
+
+}
@@ -0,0 +1,495 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.bpd.rmi.api.CostedTask;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.SplittableTask;
+import com.bpd.rmi.api.Task;
+import com.bpd.rmi.api.TaskTicket;
+
+/**
+ * Tests {@link ComputeEngine} without going through RMI.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestComputeEngine {
+
+  private static CountDownLatch release;
+
+  private ComputeEngine engine;
+
+  /** Creates the latch that releases blocked tasks. */
+  @Before
+  public void setUp() {
+    release = new CountDownLatch(1);
+  }
+
+  /** Shuts down the engine used by a test. */
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (engine != null) {
+      engine.shutdown();
+    }
+  }
+
+  /**
+   * Tests that a task is executed on a worker thread.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testExecuteTask() throws Exception {
+    engine = new ComputeEngine(2, 4);
+    assertEquals(Pi.computePi(50), engine.executeTask(new Pi(50)));
+  }
+
+  /**
+   * Tests that a batch of tasks is executed and that the results are in the same order as the
+   * tasks.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testExecuteTasks() throws Exception {
+    engine = new ComputeEngine(3, 1);
+    List<Pi> tasks = new ArrayList<>();
+    for (int digits = 0; digits < 20; digits++) {
+      tasks.add(new Pi(digits));
+    }
+    List<BigDecimal> results = engine.executeTasks(tasks);
+    assertEquals(tasks.size(), results.size());
+    for (int digits = 0; digits < 20; digits++) {
+      assertEquals(Pi.computePi(digits), results.get(digits));
+    }
+    assertTrue(engine.executeTasks(new ArrayList<Pi>()).isEmpty());
+  }
+
+  /**
+   * Tests submitting a task, polling it, and then waiting for its results.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testSubmitAndAwait() throws Exception {
+    engine = new ComputeEngine(1, 4);
+    TaskTicket<BigDecimal> ticket = engine.submitTask(new Pi(100));
+    BigDecimal pi = engine.awaitResult(ticket, 60000);
+    assertEquals(Pi.computePi(100), pi);
+    try {
+      engine.isDone(ticket);
+      fail("Ticket should no longer be valid.");
+    }
+    catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Tests that waiting for a task that is not done times out, and that tasks are rejected once the
+   * queue is full.
+   * 
+   * @throws Exception If the task could not be executed.
+   */
+  @Test
+  public void testTimeoutAndRejection() throws Exception {
+    engine = new ComputeEngine(1, 1);
+    TaskTicket<Boolean> running = engine.submitTask(new BlockingTask());
+    engine.submitTask(new BlockingTask());
+    try {
+      engine.submitTask(new BlockingTask());
+      fail("Task should have been rejected.");
+    }
+    catch (RejectedExecutionException e) {
+      // Expected.
+    }
+    try {
+      engine.awaitResult(running, 10);
+      fail("Task should not be done.");
+    }
+    catch (TimeoutException e) {
+      // Expected.
+    }
+    release.countDown();
+    assertTrue(engine.awaitResult(running, 60000));
+  }
+
+  /**
+   * Tests that an engine with a thread per task accepts more tasks than it can compute at once, and
+   * that the extra tasks wait for a permit instead of being rejected.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testThreadPerTask() throws Exception {
+    engine = ComputeEngine.withVirtualThreads(1);
+    assertTrue(engine.isThreadPerTask());
+    List<TaskTicket<Boolean>> tickets = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      tickets.add(engine.submitTask(new BlockingTask()));
+    }
+    while (engine.getStatistics().getQueuedCount() < 9) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, engine.getStatistics().getInFlightCount());
+    release.countDown();
+    for (TaskTicket<Boolean> ticket : tickets) {
+      assertTrue(engine.awaitResult(ticket, 60000));
+    }
+    assertEquals(Pi.computePi(50), engine.executeTask(new Pi(50)));
+  }
+
+  /**
+   * Tests that a task is cancelled at its deadline or on request, and that the worker thread and
+   * the place in the queue that it frees go to the next task right away.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testDeadlineAndCancel() throws Exception {
+    engine = new ComputeEngine(1, 1);
+    // Takes far longer than the test allows unless it is cancelled.
+    TaskTicket<BigDecimal> expired = engine.submitTask(new Pi(9500), 100);
+    try {
+      engine.awaitResult(expired, 10000);
+      fail("Task should have been cancelled.");
+    }
+    catch (CancellationException e) {
+      // Expected.
+    }
+    awaitInFlightCount(0);
+    TaskTicket<BigDecimal> running = engine.submitTask(new Pi(9600));
+    awaitInFlightCount(1);
+    TaskTicket<BigDecimal> queued = engine.submitTask(new Pi(9700));
+    assertTrue(engine.cancelTask(queued));
+    assertEquals(0, engine.getStatistics().getQueuedCount());
+    assertFalse(engine.cancelTask(queued));
+    try {
+      engine.awaitResult(queued, 0);
+      fail("Task should have been cancelled.");
+    }
+    catch (CancellationException e) {
+      // Expected.
+    }
+    assertTrue(engine.cancelTask(running));
+    TaskTicket<BigDecimal> next = engine.submitTask(new Pi(50), 60000);
+    assertEquals(Pi.computePi(50), engine.awaitResult(next, 10000));
+  }
+
+  /**
+   * Tests that tasks that are done before their deadlines, such as values of PI that are cached,
+   * keep their results after the deadlines have passed.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testResultsOutliveDeadline() throws Exception {
+    engine = new ComputeEngine(2, 100);
+    BigDecimal pi = engine.executeTask(new Pi(100));
+    List<TaskTicket<BigDecimal>> tickets = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      tickets.add(engine.submitTask(new Pi(100), 20));
+    }
+    Thread.sleep(100);
+    for (TaskTicket<BigDecimal> ticket : tickets) {
+      assertTrue(engine.isDone(ticket));
+      assertEquals(pi, engine.awaitResult(ticket, 0));
+    }
+  }
+
+  /**
+   * Tests that the results of submitted tasks, with and without a deadline, are dropped if they are
+   * not collected in time.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testUncollectedResultsExpire() throws Exception {
+    engine = new ComputeEngine(2, 4);
+    engine.setResultTtlMillis(50);
+    List<TaskTicket<BigDecimal>> tickets =
+        Arrays.asList(engine.submitTask(new Pi(50)), engine.submitTask(new Pi(60), 60000));
+    for (TaskTicket<BigDecimal> ticket : tickets) {
+      long start = System.currentTimeMillis();
+      try {
+        while (System.currentTimeMillis() - start < 10000) {
+          engine.isDone(ticket);
+          Thread.sleep(10);
+        }
+        fail("Results of " + ticket + " were not dropped.");
+      }
+      catch (IllegalArgumentException e) {
+        // Expected.
+      }
+    }
+  }
+
+  /**
+   * Tests that queued tasks with a lower estimated cost run before an expensive task that was queued
+   * earlier, and that the wait of each task is recorded for its cost class.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testCheapTasksFirst() throws Exception {
+    engine = new ComputeEngine(1, 10, 60000, new ThreadPoolExecutor.AbortPolicy());
+    List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    TaskTicket<Boolean> blocked = engine.submitTask(new BlockingTask());
+    awaitInFlightCount(1);
+    List<TaskTicket<Integer>> tickets = new ArrayList<>();
+    tickets.add(engine.submitTask(new CostedOrderTask(0, 20000000000L, order)));
+    for (int i = 1; i <= 3; i++) {
+      tickets.add(engine.submitTask(new CostedOrderTask(i, 1000, order)));
+    }
+    release.countDown();
+    assertTrue(engine.awaitResult(blocked, 60000));
+    for (TaskTicket<Integer> ticket : tickets) {
+      engine.awaitResult(ticket, 60000);
+    }
+    assertEquals(Arrays.asList(1, 2, 3, 0), order);
+
+    List<CostClassStatistics> costClasses = engine.getStatistics().getCostClassStatistics();
+    assertEquals(CostPriorityQueue.COST_CLASSES, costClasses.size());
+    assertEquals(4, costClasses.get(0).getTaskCount());
+    assertEquals(1, costClasses.get(CostPriorityQueue.COST_CLASSES - 1).getTaskCount());
+  }
+
+  /**
+   * Tests that splittable tasks are split down to the threshold and merged, and that PI computed
+   * that way has exactly the same digits.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testSplittableTask() throws Exception {
+    engine = new ComputeEngine(4, 10);
+    engine.setSplitThreshold(10);
+    assertEquals(10, engine.getSplitThreshold());
+    List<Long> leafSizes = Collections.synchronizedList(new ArrayList<Long>());
+    assertEquals(Long.valueOf(999L * 1000 / 2), engine.executeTask(new SumTask(0, 1000,
+        leafSizes)));
+    assertTrue(leafSizes.size() >= 100);
+    for (long size : leafSizes) {
+      assertTrue(size + " <= 10", size <= 10);
+    }
+    engine.setSplitThreshold(16);
+    assertEquals(Pi.computePi(2500), engine.executeTask(new Pi(2500)));
+    assertEquals(Pi.computePi(2500), engine.executeTask(new Pi(2500, 1, Pi.Kernel.FIXED_POINT)));
+  }
+
+  /**
+   * Tests that a subclass of {@link Pi} from a client is executed as it is, without sharing its
+   * results with other tasks through the cache of PI and without splitting it.
+   * 
+   * @throws Exception If the tasks could not be executed.
+   */
+  @Test
+  public void testPiSubclassNotCached() throws Exception {
+    engine = new ComputeEngine(2, 10);
+    engine.setSplitThreshold(16);
+    assertEquals(BigDecimal.ONE, engine.executeTask(new NotPi(50)));
+    assertEquals(Pi.computePi(30), engine.executeTask(new Pi(30)));
+    assertEquals(BigDecimal.ONE, engine.executeTask(new NotPi(2500)));
+    assertEquals(Pi.computePi(50), engine.executeTask(new Pi(50)));
+    assertEquals(BigDecimal.ONE, engine.executeTask(new NotPi(50)));
+  }
+
+  /**
+   * Waits until the given number of tasks are running on the engine.
+   * 
+   * @param count The number of tasks.
+   * @throws InterruptedException If the test was interrupted.
+   */
+  private void awaitInFlightCount(int count) throws InterruptedException {
+    while (engine.getStatistics().getInFlightCount() != count) {
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * A task that claims to compute PI but does not.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class NotPi extends Pi {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new NotPi.
+     * 
+     * @param digits The number of digits.
+     */
+    private NotPi(int digits) {
+      super(digits);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public BigDecimal execute() {
+      return BigDecimal.ONE;
+    }
+
+  }
+
+  /**
+   * A task that blocks until a test releases it.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class BlockingTask implements Task<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public Boolean execute() {
+      try {
+        release.await();
+        return true;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+  }
+
+  /**
+   * A task with an estimated cost that records the order in which tasks run.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class CostedOrderTask implements Task<Integer>, CostedTask {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final long costNanos;
+    private final List<Integer> order;
+
+    /**
+     * Creates a new CostedOrderTask.
+     * 
+     * @param id The number that the task adds to the order.
+     * @param costNanos The estimated cost of the task.
+     * @param order The list to which the task adds its number when it runs.
+     */
+    private CostedOrderTask(int id, long costNanos, List<Integer> order) {
+      this.id = id;
+      this.costNanos = costNanos;
+      this.order = order;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEstimatedCostNanos() {
+      return costNanos;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Integer execute() {
+      order.add(id);
+      return id;
+    }
+
+  }
+
+  /**
+   * A task that adds up a range of numbers and records the size of each range that it adds up
+   * without splitting it.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class SumTask implements SplittableTask<Long> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long from;
+    private final long to;
+    private final List<Long> leafSizes;
+
+    /**
+     * Creates a new SumTask.
+     * 
+     * @param from The first number, inclusive.
+     * @param to The last number, exclusive.
+     * @param leafSizes The list to which the size of the range is added if it is not split.
+     */
+    private SumTask(long from, long to, List<Long> leafSizes) {
+      this.from = from;
+      this.to = to;
+      this.leafSizes = leafSizes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSize() {
+      return to - from;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<SumTask> split() {
+      long middle = (from + to) >>> 1;
+      return Arrays.asList(new SumTask(from, middle, leafSizes), new SumTask(middle, to,
+          leafSizes));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long merge(List<Long> results) {
+      long sum = 0;
+      for (long result : results) {
+        sum += result;
+      }
+      return sum;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Long execute() {
+      leafSizes.add(getSize());
+      long sum = 0;
+      for (long i = from; i < to; i++) {
+        sum += i;
+      }
+      return sum;
+    }
+
+  }
+
+}
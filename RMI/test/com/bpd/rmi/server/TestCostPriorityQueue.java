@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests {@link CostPriorityQueue}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestCostPriorityQueue {
+
+  /** Tests that estimated costs are sorted into cost classes by decade. */
+  @Test
+  public void testCostClasses() {
+    assertEquals(0, CostPriorityQueue.costClassOf(0));
+    assertEquals(0, CostPriorityQueue.costClassOf(999999));
+    assertEquals(1, CostPriorityQueue.costClassOf(1000000));
+    assertEquals(1, CostPriorityQueue.costClassOf(9999999));
+    assertEquals(2, CostPriorityQueue.costClassOf(10000000));
+    assertEquals(CostPriorityQueue.COST_CLASSES - 1, CostPriorityQueue.costClassOf(Long.MAX_VALUE));
+    assertEquals("< 1 ms", CostPriorityQueue.describe(0));
+    assertEquals("< 10000 ms", CostPriorityQueue.describe(CostPriorityQueue.COST_CLASSES - 2));
+    assertEquals(">= 10000 ms", CostPriorityQueue.describe(CostPriorityQueue.COST_CLASSES - 1));
+  }
+
+  /**
+   * Tests that cheaper tasks are taken first, and that tasks in the same cost class are taken in
+   * FIFO order.
+   * 
+   * @throws InterruptedException If the test was interrupted.
+   */
+  @Test
+  public void testCheapTasksFirst() throws InterruptedException {
+    CostPriorityQueue queue = new CostPriorityQueue(10, 60000);
+    Runnable expensive = newTask(5);
+    Runnable cheap = newTask(0);
+    Runnable medium = newTask(2);
+    Runnable plain = new Thread();
+    queue.put(expensive);
+    queue.put(cheap);
+    queue.put(medium);
+    queue.put(plain);
+    assertSame(cheap, queue.peek());
+    assertSame(cheap, queue.take());
+    assertSame(plain, queue.poll());
+    assertSame(medium, queue.poll(1, TimeUnit.SECONDS));
+    assertSame(expensive, queue.poll());
+    assertNull(queue.poll());
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * Tests that an expensive task that has waited long enough is taken before cheaper tasks that
+   * were queued after it.
+   * 
+   * @throws InterruptedException If the test was interrupted.
+   */
+  @Test
+  public void testAging() throws InterruptedException {
+    CostPriorityQueue queue = new CostPriorityQueue(10, 1);
+    Runnable expensive = newTask(2);
+    queue.put(expensive);
+    Thread.sleep(50);
+    queue.put(newTask(0));
+    assertSame(expensive, queue.take());
+
+    CostPriorityQueue fifo = new CostPriorityQueue(10, 0);
+    fifo.put(expensive);
+    fifo.put(newTask(0));
+    assertSame(expensive, fifo.take());
+  }
+
+  /**
+   * Tests that the queue holds no more tasks than its capacity, and that removing a task frees its
+   * place.
+   * 
+   * @throws InterruptedException If the test was interrupted.
+   */
+  @Test
+  public void testCapacity() throws InterruptedException {
+    CostPriorityQueue queue = new CostPriorityQueue(2, 60000);
+    Runnable expensive = newTask(3);
+    Runnable cheap = newTask(0);
+    assertTrue(queue.offer(expensive));
+    assertTrue(queue.offer(cheap));
+    assertFalse(queue.offer(newTask(0)));
+    assertFalse(queue.offer(newTask(0), 10, TimeUnit.MILLISECONDS));
+    assertEquals(0, queue.remainingCapacity());
+    assertTrue(queue.remove(expensive));
+    assertFalse(queue.remove(expensive));
+    assertEquals(1, queue.size());
+    assertTrue(queue.offer(expensive));
+
+    List<Runnable> drained = new ArrayList<>();
+    assertEquals(2, queue.drainTo(drained));
+    assertSame(cheap, drained.get(0));
+    assertSame(expensive, drained.get(1));
+    assertTrue(queue.isEmpty());
+  }
+
+  /**
+   * Returns a new task in the given cost class.
+   * 
+   * @param costClass The cost class.
+   * @return The task.
+   */
+  private static Runnable newTask(int costClass) {
+    return new ScheduledTask<Object>(new Callable<Object>() {
+
+      @Override
+      public Object call() {
+        return null;
+      }
+
+    }, costClass);
+  }
+
+}
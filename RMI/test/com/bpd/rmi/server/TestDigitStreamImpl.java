@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests {@link DigitStreamImpl}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestDigitStreamImpl {
+
+  /**
+   * Tests that the digits are handed out in chunks of the given size, and that the stream ends
+   * after the last one.
+   * 
+   * @throws Exception If the digits could not be read.
+   */
+  @Test
+  public void testChunks() throws Exception {
+    FutureTask<BigDecimal> result = newResult();
+    result.run();
+    DigitStreamImpl stream = new DigitStreamImpl(result, 3);
+    assertEquals("3.1", stream.nextChunk());
+    assertEquals("415", stream.nextChunk());
+    assertNull(stream.nextChunk());
+    assertNull(stream.nextChunk());
+  }
+
+  /**
+   * Tests that closing a stream while another thread is waiting for its number cancels the
+   * computation right away, instead of waiting for it to finish.
+   * 
+   * @throws Exception If the stream could not be closed.
+   */
+  @Test(timeout = 30000)
+  public void testCloseWhileComputing() throws Exception {
+    // Never run, so nextChunk waits until the stream is closed.
+    FutureTask<BigDecimal> result = newResult();
+    final DigitStreamImpl stream = new DigitStreamImpl(result, 1000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<String> chunk = executor.submit(new Callable<String>() {
+
+        @Override
+        public String call() throws Exception {
+          return stream.nextChunk();
+        }
+
+      });
+      // Gives nextChunk time to start waiting; the test passes either way.
+      Thread.sleep(100);
+      stream.close();
+      assertTrue(result.isCancelled());
+      assertNull(chunk.get(10, TimeUnit.SECONDS));
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** @return A computation of PI to four decimal places, which has not been run yet. */
+  private static FutureTask<BigDecimal> newResult() {
+    return new FutureTask<>(new Callable<BigDecimal>() {
+
+      @Override
+      public BigDecimal call() {
+        return new BigDecimal("3.1415");
+      }
+
+    });
+  }
+
+}
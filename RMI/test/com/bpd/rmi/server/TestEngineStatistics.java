@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+import com.bpd.rmi.api.Pi;
+import com.bpd.rmi.api.Task;
+
+/**
+ * Tests {@link EngineStatistics} and {@link TaskStatistics}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestEngineStatistics {
+
+  /**
+   * Tests that every latency falls into a bucket whose upper bound is at most 12.5% larger.
+   */
+  @Test
+  public void testLatencyBuckets() {
+    long nanos = 0;
+    while (nanos < Long.MAX_VALUE / 3) {
+      int bucket = TaskStatistics.bucketOf(nanos);
+      long upperBound = TaskStatistics.upperBoundOf(bucket);
+      assertTrue(nanos + " <= " + upperBound, nanos <= upperBound);
+      assertTrue(nanos + " ~ " + upperBound, upperBound - nanos <= nanos / 8);
+      assertEquals(bucket, TaskStatistics.bucketOf(upperBound));
+      assertEquals(bucket + 1, TaskStatistics.bucketOf(upperBound + 1));
+      nanos = nanos * 3 / 2 + 1;
+    }
+  }
+
+  /**
+   * Tests that completed and failed tasks are counted per task class, and that the statistics can
+   * be read through the platform MBean server.
+   * 
+   * @throws Exception If the tasks could not be executed or the statistics could not be read.
+   */
+  @Test
+  public void testRecordsTasks() throws Exception {
+    ComputeEngine engine = new ComputeEngine(2, 10);
+    try {
+      for (int i = 0; i < 3; i++) {
+        engine.executeTask(new Pi(10));
+      }
+      try {
+        engine.executeTask(new FailingTask());
+        fail("Task should have failed.");
+      }
+      catch (IllegalStateException e) {
+        // Expected.
+      }
+      EngineStatistics statistics = engine.getStatistics();
+      assertEquals(3, statistics.getCompletedCount());
+      assertEquals(1, statistics.getFailedCount());
+      assertEquals(0, statistics.getInFlightCount());
+
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(EngineStatistics.OBJECT_NAME + ",name=test");
+      server.registerMBean(statistics, name);
+      try {
+        CompositeData[] classes = (CompositeData[]) server.getAttribute(name,
+            "TaskClassStatistics");
+        assertEquals(2, classes.length);
+        for (CompositeData data : classes) {
+          boolean isPi = Pi.class.getName().equals(data.get("taskClass"));
+          assertEquals(isPi ? 3L : 0L, data.get("completedCount"));
+          assertEquals(isPi ? 0L : 1L, data.get("failedCount"));
+          assertTrue((Long) data.get("meanArgumentBytes") > 0);
+        }
+      }
+      finally {
+        server.unregisterMBean(name);
+      }
+    }
+    finally {
+      engine.shutdown();
+    }
+  }
+
+  /**
+   * Tests that objects that cannot be serialized are left out of the mean serialized sizes.
+   */
+  @Test
+  public void testSkipsUnknownSizes() {
+    TaskStatistics statistics = new TaskStatistics("test");
+    assertTrue(statistics.taskStarted(new Object()));
+    statistics.taskFinished(1000, false, new Object());
+    TaskClassStatistics snapshot = statistics.snapshot();
+    assertEquals(0, snapshot.getMeanArgumentBytes());
+    assertEquals(0, snapshot.getMeanResultBytes());
+
+    for (int i = 1; i < TaskStatistics.SIZE_SAMPLE_INTERVAL; i++) {
+      assertFalse(statistics.taskStarted(new Object()));
+      statistics.taskFinished(1000, false, null);
+    }
+    assertTrue(statistics.taskStarted("Task"));
+    statistics.taskFinished(1000, false, "Result");
+    snapshot = statistics.snapshot();
+    assertTrue(snapshot.getMeanArgumentBytes() > 0);
+    assertTrue(snapshot.getMeanResultBytes() > snapshot.getMeanArgumentBytes());
+  }
+
+  /**
+   * A task that always fails.
+   * 
+   * @author BJ Peter DeLaCruz
+   */
+  private static final class FailingTask implements Task<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** {@inheritDoc} */
+    @Override
+    public Object execute() {
+      throw new IllegalStateException("Failed on purpose");
+    }
+
+  }
+
+}
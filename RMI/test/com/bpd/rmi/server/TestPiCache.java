@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2012 BJ Peter DeLaCruz
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.bpd.rmi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import com.bpd.rmi.api.Pi;
+
+/**
+ * Tests {@link PiCache}.
+ * 
+ * @author BJ Peter DeLaCruz
+ */
+public class TestPiCache {
+
+  /**
+   * Tests that a request is served from a cached value with more digits, but only if the cached
+   * value has enough guard digits.
+   */
+  @Test
+  public void testRoundsLargerValues() {
+    PiCache cache = new PiCache(1024 * 1024);
+    assertEquals(Pi.computePi(500), cache.get(new Pi(500)));
+    assertEquals(1, cache.getMissCount());
+    for (int digits = 0; digits <= 500 - PiCache.GUARD_DIGITS; digits += 7) {
+      assertEquals(Pi.computePi(digits), cache.get(new Pi(digits)));
+    }
+    assertEquals(1, cache.getMissCount());
+    assertNull(cache.getCached(500 - PiCache.GUARD_DIGITS + 1));
+    assertEquals(Pi.computePi(500), cache.get(new Pi(500)));
+    assertEquals(1, cache.getMissCount());
+  }
+
+  /**
+   * Tests that the least recently used values are evicted once the cache is full.
+   */
+  @Test
+  public void testEviction() {
+    PiCache cache = new PiCache(400);
+    cache.get(new Pi(100));
+    cache.get(new Pi(200));
+    cache.get(new Pi(300));
+    cache.get(new Pi(200));
+    cache.get(new Pi(400));
+    // 100 and then 300 are evicted; 200 was used more recently than 300.
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(2, cache.size());
+    assertEquals(Pi.computePi(395), cache.getCached(395));
+  }
+
+  /**
+   * Tests that concurrent requests for the same number of digits compute PI only once.
+   * 
+   * @throws Exception If PI could not be computed.
+   */
+  @Test
+  public void testSharesComputation() throws Exception {
+    final PiCache cache = new PiCache(1024 * 1024);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Callable<BigDecimal> request = new Callable<BigDecimal>() {
+
+        @Override
+        public BigDecimal call() {
+          return cache.get(new Pi(3000));
+        }
+
+      };
+      Future<BigDecimal> first = executor.submit(request);
+      Future<BigDecimal> second = executor.submit(request);
+      assertEquals(first.get(), second.get());
+      assertEquals(1, cache.getMissCount());
+      assertEquals(1, cache.getHitCount() + cache.getSharedComputationCount());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+}